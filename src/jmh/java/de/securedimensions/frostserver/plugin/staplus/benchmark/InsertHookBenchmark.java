@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.benchmark;
+
+import static de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.HookPreInsert.Phase.POST_RELATIONS;
+
+import de.fraunhofer.iosb.ilt.frostserver.model.DefaultEntity;
+import de.fraunhofer.iosb.ilt.frostserver.model.EntityType;
+import de.fraunhofer.iosb.ilt.frostserver.model.core.Entity;
+import de.fraunhofer.iosb.ilt.frostserver.model.core.PkValue;
+import de.fraunhofer.iosb.ilt.frostserver.path.Version;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.PersistenceManagerFactory;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.HookPreInsert;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.coremodel.PluginCoreModel;
+import de.fraunhofer.iosb.ilt.frostserver.service.ServiceRequest;
+import de.fraunhofer.iosb.ilt.frostserver.service.ServiceRequestBuilder;
+import de.fraunhofer.iosb.ilt.frostserver.settings.CoreSettings;
+import de.fraunhofer.iosb.ilt.frostserver.util.user.PrincipalExtended;
+import de.securedimensions.frostserver.plugin.staplus.PluginPLUS;
+import de.securedimensions.frostserver.plugin.staplus.helper.OwnershipCache;
+import de.securedimensions.frostserver.plugin.staplus.helper.TableHelperDatastream;
+import de.securedimensions.frostserver.plugin.staplus.helper.TableHelperGroup;
+import de.securedimensions.frostserver.plugin.staplus.helper.TableHelperObservation;
+import de.securedimensions.frostserver.plugin.staplus.helper.TableHelperRelation;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the pre-insert hooks of Observations, Datastreams,
+ * ObservationGroups and Relations, with the ownership enforcement on and off.
+ * <p>
+ * The hooks are taken from table helpers that load stored entities from a
+ * map instead of the database, so only the cost of the checks themselves is
+ * measured. No database connection is opened. The ownership verdict cache is
+ * disabled and the per-request cache is cleared for each insert, so every
+ * insert that references a stored entity takes one (mocked) load.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertHookBenchmark {
+
+    private static final String USER = "21232f29-7a57-35a7-8389-4a0e4a801fc3";
+    private static final Long DATASTREAM_ID = 1L;
+
+    @Param({"true", "false"})
+    public boolean enforceOwnership;
+
+    private final Map<EntityType, Map<Object, Entity>> store = new HashMap<>();
+    private HookPreInsert observationHook;
+    private HookPreInsert datastreamHook;
+    private HookPreInsert groupHook;
+    private HookPreInsert relationHook;
+    private Entity observation;
+    private Entity datastream;
+    private Entity group;
+    private Entity relation;
+
+    @Setup
+    public void setup() {
+        final Properties properties = new Properties();
+        properties.put("plugins.plugins", PluginPLUS.class.getName());
+        properties.put("plugins.coreModel.idType", "LONG");
+        properties.put("plugins.multiDatastream.enable", "true");
+        properties.put("plugins.staplus.enable", "true");
+        properties.put("plugins.staplus.enable.enforceOwnership", Boolean.toString(enforceOwnership));
+        properties.put("plugins.staplus.ownershipCache.size", "0");
+        properties.put("plugins.staplus.idType.license", "String");
+        properties.put("persistence.persistenceManagerImplementationClass", "de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.PostgresPersistenceManager");
+        properties.put("persistence.db.driver", "org.postgresql.Driver");
+        properties.put("persistence.db.url", "jdbc:postgresql://localhost:5432/benchmark");
+        final CoreSettings settings = new CoreSettings(properties);
+        final JooqPersistenceManager ppm = (JooqPersistenceManager) PersistenceManagerFactory.getInstance(settings).create();
+        final PluginPLUS plus = settings.getPluginManager().getPlugin(PluginPLUS.class);
+        final PluginCoreModel core = settings.getPluginManager().getPlugin(PluginCoreModel.class);
+
+        final Entity party = new DefaultEntity(plus.etParty, PkValue.of(USER));
+        party.setProperty(plus.epAuthId, USER);
+        final Entity storedDatastream = new DefaultEntity(core.etDatastream, PkValue.of(DATASTREAM_ID));
+        storedDatastream.setProperty(plus.npPartyDatastream, party);
+        store.computeIfAbsent(core.etDatastream, t -> new HashMap<>()).put(DATASTREAM_ID, storedDatastream);
+
+        final MockedObservationHelper observations = new MockedObservationHelper(settings, ppm, store);
+        observations.registerPreHooks();
+        observationHook = observations.hook;
+        final MockedDatastreamHelper datastreams = new MockedDatastreamHelper(settings, ppm, store);
+        datastreams.registerPreHooks();
+        datastreamHook = datastreams.hook;
+        final MockedGroupHelper groups = new MockedGroupHelper(settings, ppm, store);
+        groups.registerPreHooks();
+        groupHook = groups.hook;
+        final MockedRelationHelper relations = new MockedRelationHelper(settings, ppm, store);
+        relations.registerPreHooks();
+        relationHook = relations.hook;
+
+        // The Observation references a stored Datastream, as sent by a sensor
+        observation = new DefaultEntity(core.etObservation);
+        observation.setProperty(core.npDatastreamObservation, new DefaultEntity(core.etDatastream, PkValue.of(DATASTREAM_ID)));
+
+        // New Datastreams and ObservationGroups reference the Party of the user
+        datastream = new DefaultEntity(core.etDatastream);
+        datastream.setProperty(plus.npPartyDatastream, new DefaultEntity(plus.etParty, PkValue.of(USER)));
+        group = new DefaultEntity(plus.etGroup);
+        group.setProperty(plus.npPartyGroup, new DefaultEntity(plus.etParty, PkValue.of(USER)));
+
+        relation = new DefaultEntity(plus.etRelation);
+        relation.setProperty(plus.npSubjectRelation, observation);
+        relation.setProperty(plus.npObjectRelation, new DefaultEntity(core.etObservation, PkValue.of(2L)));
+
+        ServiceRequest.setLocalRequest(new ServiceRequestBuilder(settings, Version.V_1_1)
+                .withUserPrincipal(new PrincipalExtended(USER, false, Set.of()))
+                .build());
+    }
+
+    @TearDown
+    public void tearDown() {
+        OwnershipCache.clearLocalCache();
+        ServiceRequest.setLocalRequest(null);
+    }
+
+    @Benchmark
+    public boolean observation() throws Exception {
+        OwnershipCache.clearLocalCache();
+        return observationHook.insertIntoDatabase(POST_RELATIONS, null, observation, null);
+    }
+
+    @Benchmark
+    public boolean datastream() throws Exception {
+        OwnershipCache.clearLocalCache();
+        return datastreamHook.insertIntoDatabase(POST_RELATIONS, null, datastream, null);
+    }
+
+    @Benchmark
+    public boolean group() throws Exception {
+        OwnershipCache.clearLocalCache();
+        return groupHook.insertIntoDatabase(POST_RELATIONS, null, group, null);
+    }
+
+    @Benchmark
+    public boolean relation() throws Exception {
+        OwnershipCache.clearLocalCache();
+        return relationHook.insertIntoDatabase(POST_RELATIONS, null, relation, null);
+    }
+
+    private static Entity load(Map<EntityType, Map<Object, Entity>> store, EntityType entityType, PkValue id) {
+        final Map<Object, Entity> entities = store.get(entityType);
+        return (entities == null) ? null : entities.get(id.get(0));
+    }
+
+    private static class MockedObservationHelper extends TableHelperObservation {
+
+        private final Map<EntityType, Map<Object, Entity>> store;
+        private HookPreInsert hook;
+
+        MockedObservationHelper(CoreSettings settings, JooqPersistenceManager ppm, Map<EntityType, Map<Object, Entity>> store) {
+            super(settings, ppm);
+            this.store = store;
+        }
+
+        @Override
+        protected Entity get(JooqPersistenceManager pm, EntityType entityType, PkValue id) {
+            return load(store, entityType, id);
+        }
+
+        @Override
+        protected HookPreInsert timedPreInsert(EntityType entityType, HookPreInsert hook) {
+            // The ownership hook is registered first
+            if (this.hook == null)
+                this.hook = hook;
+            return hook;
+        }
+    }
+
+    private static class MockedDatastreamHelper extends TableHelperDatastream {
+
+        private final Map<EntityType, Map<Object, Entity>> store;
+        private HookPreInsert hook;
+
+        MockedDatastreamHelper(CoreSettings settings, JooqPersistenceManager ppm, Map<EntityType, Map<Object, Entity>> store) {
+            super(settings, ppm);
+            this.store = store;
+        }
+
+        @Override
+        protected Entity get(JooqPersistenceManager pm, EntityType entityType, PkValue id) {
+            return load(store, entityType, id);
+        }
+
+        @Override
+        protected HookPreInsert timedPreInsert(EntityType entityType, HookPreInsert hook) {
+            if (this.hook == null)
+                this.hook = hook;
+            return hook;
+        }
+    }
+
+    private static class MockedGroupHelper extends TableHelperGroup {
+
+        private final Map<EntityType, Map<Object, Entity>> store;
+        private HookPreInsert hook;
+
+        MockedGroupHelper(CoreSettings settings, JooqPersistenceManager ppm, Map<EntityType, Map<Object, Entity>> store) {
+            super(settings, ppm);
+            this.store = store;
+        }
+
+        @Override
+        protected Entity get(JooqPersistenceManager pm, EntityType entityType, PkValue id) {
+            return load(store, entityType, id);
+        }
+
+        @Override
+        protected HookPreInsert timedPreInsert(EntityType entityType, HookPreInsert hook) {
+            if (this.hook == null)
+                this.hook = hook;
+            return hook;
+        }
+    }
+
+    private static class MockedRelationHelper extends TableHelperRelation {
+
+        private final Map<EntityType, Map<Object, Entity>> store;
+        private HookPreInsert hook;
+
+        MockedRelationHelper(CoreSettings settings, JooqPersistenceManager ppm, Map<EntityType, Map<Object, Entity>> store) {
+            super(settings, ppm);
+            this.store = store;
+        }
+
+        @Override
+        protected Entity get(JooqPersistenceManager pm, EntityType entityType, PkValue id) {
+            return load(store, entityType, id);
+        }
+
+        @Override
+        protected HookPreInsert timedPreInsert(EntityType entityType, HookPreInsert hook) {
+            if (this.hook == null)
+                this.hook = hook;
+            return hook;
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.benchmark;
+
+import static de.securedimensions.frostserver.plugin.staplus.helper.TableHelperLicense.*;
+
+import de.securedimensions.frostserver.plugin.staplus.helper.LicenseCompatibility;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the License compatibility check that runs for every Observation
+ * added to a licensed ObservationGroup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LicenseCompatibilityBenchmark {
+
+    private static final String[] IDS = {CC_PD_ID, CC_BY_ID, CC_BY_SA_ID, CC_BY_NC_ID, CC_BY_ND_ID, CC_BY_NC_SA_ID, CC_BY_NC_ND_ID};
+
+    /**
+     * Use the built-in Creative Commons rules, or the same rules in lower
+     * case from configuration, which takes the case-insensitive lookup.
+     */
+    @Param({"builtin", "configured"})
+    public String catalogue;
+
+    private LicenseCompatibility compatibility;
+
+    @Setup
+    public void setup() {
+        if ("builtin".equals(catalogue)) {
+            compatibility = LicenseCompatibility.creativeCommons();
+        } else {
+            compatibility = LicenseCompatibility.parse("cc_pd:cc_pd,cc_by,cc_by_sa,cc_by_nc,cc_by_nd,cc_by_nc_nd,cc_by_nc_sa;"
+                    + "cc_by:cc_by,cc_by_sa,cc_by_nc,cc_by_nc_sa;"
+                    + "cc_by_sa:cc_by,cc_by_sa;"
+                    + "cc_by_nc:cc_by,cc_by_nc,cc_by_nc_sa;"
+                    + "cc_by_nd:;"
+                    + "cc_by_nc_sa:cc_by,cc_by_nc,cc_by_nc_sa;"
+                    + "cc_by_nc_nd:");
+        }
+    }
+
+    @Benchmark
+    public void allPairs(Blackhole bh) {
+        for (String source : IDS) {
+            for (String target : IDS) {
+                bh.consume(compatibility.isCompatible(source, target));
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean singleCheck() {
+        return compatibility.isCompatible(CC_BY_NC_ID, CC_BY_NC_SA_ID);
+    }
+
+}
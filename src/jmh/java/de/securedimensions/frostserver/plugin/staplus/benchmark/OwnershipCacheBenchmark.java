@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.benchmark;
+
+import de.fraunhofer.iosb.ilt.frostserver.model.EntityType;
+import de.securedimensions.frostserver.plugin.staplus.helper.OwnershipCache;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the per-request ownership cache, as used by the ownership checks
+ * when many Observations of one request reference the same Datastream. This
+ * is the path taken instead of loading the Datastream and its Party from the
+ * database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OwnershipCacheBenchmark {
+
+    private static final EntityType DATASTREAM = new EntityType("Datastream", "Datastreams");
+
+    /**
+     * The number of distinct Datastreams referenced by the request.
+     */
+    @Param({"1", "100", "10000"})
+    public int datastreams;
+
+    private OwnershipCache cache;
+    private Long[] ids;
+    private int next;
+
+    @Setup
+    public void setup() {
+        cache = OwnershipCache.getLocalCache();
+        ids = new Long[datastreams];
+        for (int i = 0; i < datastreams; i++) {
+            ids[i] = (long) i;
+            cache.put(DATASTREAM, ids[i], "party-" + i);
+        }
+    }
+
+    @Benchmark
+    public String hit() {
+        next = (next + 1) % datastreams;
+        return cache.get(DATASTREAM, ids[next]);
+    }
+
+    @Benchmark
+    public String miss() {
+        return cache.get(DATASTREAM, -1L);
+    }
+
+    @Benchmark
+    public void invalidateAndPut(Blackhole bh) {
+        next = (next + 1) % datastreams;
+        cache.invalidate(DATASTREAM, ids[next]);
+        cache.put(DATASTREAM, ids[next], "party-" + next);
+        bh.consume(cache);
+    }
+
+}
@@ -19,12 +19,20 @@ package de.securedimensions.frostserver.plugin.staplus;
 
 import static de.fraunhofer.iosb.ilt.frostserver.property.SpecialNames.AT_IOT_ID;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import de.fraunhofer.iosb.ilt.frostserver.formatter.ResultFormatter;
+import de.fraunhofer.iosb.ilt.frostserver.json.serialize.JsonWriter;
+import de.fraunhofer.iosb.ilt.frostserver.messagebus.MessageBusFactory;
+import de.fraunhofer.iosb.ilt.frostserver.messagebus.MessageListener;
 import de.fraunhofer.iosb.ilt.frostserver.model.EntityType;
+import de.fraunhofer.iosb.ilt.frostserver.model.EntityValidator;
 import de.fraunhofer.iosb.ilt.frostserver.model.ModelRegistry;
 import de.fraunhofer.iosb.ilt.frostserver.model.core.Entity;
 import de.fraunhofer.iosb.ilt.frostserver.model.core.PkValue;
 import de.fraunhofer.iosb.ilt.frostserver.model.ext.TimeInstant;
+import de.fraunhofer.iosb.ilt.frostserver.path.Version;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.PersistenceManager;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.PersistenceManagerFactory;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
@@ -34,16 +42,21 @@ import de.fraunhofer.iosb.ilt.frostserver.plugin.multidatastream.PluginMultiData
 import de.fraunhofer.iosb.ilt.frostserver.property.EntityPropertyMain;
 import de.fraunhofer.iosb.ilt.frostserver.property.NavigationPropertyMain.NavigationPropertyEntity;
 import de.fraunhofer.iosb.ilt.frostserver.property.NavigationPropertyMain.NavigationPropertyEntitySet;
+import de.fraunhofer.iosb.ilt.frostserver.property.Property;
 import de.fraunhofer.iosb.ilt.frostserver.property.type.TypeComplex;
 import de.fraunhofer.iosb.ilt.frostserver.property.type.TypeEnumeration;
 import de.fraunhofer.iosb.ilt.frostserver.property.type.TypeSimplePrimitive;
 import de.fraunhofer.iosb.ilt.frostserver.service.InitResult;
 import de.fraunhofer.iosb.ilt.frostserver.service.PluginModel;
+import de.fraunhofer.iosb.ilt.frostserver.service.PluginResultFormat;
 import de.fraunhofer.iosb.ilt.frostserver.service.PluginRootDocument;
+import de.fraunhofer.iosb.ilt.frostserver.service.PluginService;
 import de.fraunhofer.iosb.ilt.frostserver.service.Service;
 import de.fraunhofer.iosb.ilt.frostserver.service.ServiceRequest;
+import de.fraunhofer.iosb.ilt.frostserver.service.ServiceResponse;
 import de.fraunhofer.iosb.ilt.frostserver.settings.CoreSettings;
 import de.fraunhofer.iosb.ilt.frostserver.settings.Settings;
+import de.fraunhofer.iosb.ilt.frostserver.util.HttpMethod;
 import de.fraunhofer.iosb.ilt.frostserver.util.LiquibaseUser;
 import de.fraunhofer.iosb.ilt.frostserver.util.exception.ForbiddenException;
 import de.fraunhofer.iosb.ilt.frostserver.util.exception.UnauthorizedException;
@@ -54,9 +67,14 @@ import java.io.IOException;
 import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
 import java.util.*;
+import javax.management.JMException;
 import org.jooq.DataType;
+import org.jooq.exception.DataAccessException;
+import org.jooq.exception.DataTypeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,13 +82,20 @@ import org.slf4j.LoggerFactory;
  * @author am
  * @author scf
  */
-public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUser {
+public class PluginPLUS implements PluginRootDocument, PluginModel, PluginService, PluginResultFormat, LiquibaseUser {
 
     public static final TypeReference<Role> TYPE_REFERENCE_ROLE = new TypeReference<Role>() {
         // Empty on purpose.
     };
     public static final TypeEnumeration propertyTypeRole = new TypeEnumeration("Plus.Role", "The Party Role", Role.class, TYPE_REFERENCE_ROLE);
     private static final String LIQUIBASE_CHANGELOG_FILENAME = "liquibase/plus/tables.xml";
+    private static final String LIQUIBASE_PARAM_FOREIGN_KEY_INDEXES = "staplus-foreignKeyIndexes";
+    private static final String LIQUIBASE_PARAM_MEMBERSHIP_STATISTICS = "staplus-membershipStatistics";
+    private static final String LIQUIBASE_PARAM_RELATIONS_CLOSURE = "staplus-relationsClosure";
+    private static final String LIQUIBASE_PARAM_GROUPS_OBSERVATIONS_PARTITIONING = "staplus-groupsObservationsPartitioning";
+    private static final String LIQUIBASE_PARAM_GROUPS_OBSERVATIONS_PARTITIONS = "staplus-groupsObservationsPartitions";
+    private static final String LIQUIBASE_PARAM_GROUPS_OBSERVATIONS_PARTITION_SIZE = "staplus-groupsObservationsPartitionSize";
+    private static final List<String> GROUPS_OBSERVATIONS_PARTITIONING = List.of("none", "hash", "range");
     private static final Logger LOGGER = LoggerFactory.getLogger(PluginPLUS.class.getName());
     private static final long serialVersionUID = 1626971234;
     private static final List<String> REQUIREMENTS_PLUS = List.of(
@@ -81,6 +106,16 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
     private static final String REQUIREMENT_ENFORCE_OWNERSHIP = "https://github.com/securedimensions/FROST-Server-PLUS#EnforceOwnership";
     private static final String REQUIREMENT_ENFORCE_LICENSING = "https://github.com/securedimensions/FROST-Server-PLUS#EnforceLicensing";
     private static final String REQUIREMENT_ENFORCE_GROUP_LICENSING = "https://github.com/securedimensions/FROST-Server-PLUS#EnforceGroupLicensing";
+    private static final String RELATION_GRAPH = "https://github.com/securedimensions/FROST-Server-PLUS#RelationGraph";
+    private static final String PATH_RELATION_GRAPH = "/RelationGraph";
+    private static final String REQUEST_TYPE_RELATION_GRAPH = "relationGraph";
+    private static final String BULK_RELATIONS = "https://github.com/securedimensions/FROST-Server-PLUS#BulkRelations";
+    private static final String PATH_BULK_RELATIONS = "/BulkRelations";
+    private static final String REQUEST_TYPE_BULK_RELATIONS = "bulkRelations";
+    private static final String EXPORT = "https://github.com/securedimensions/FROST-Server-PLUS#Export";
+    private static final String PATH_EXPORT = "/Export";
+    private static final String REQUEST_TYPE_EXPORT = "export";
+    private static final String HOOK_METRICS = "https://github.com/securedimensions/FROST-Server-PLUS#HookMetrics";
     private static final String REQUIREMENT_AUTH = "http://www.opengis.net/spec/sensorthings-staplus/1.0/conf/authentication";
 
     public static final List<String> LICENSE_IDS = Arrays.asList(
@@ -111,6 +146,10 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
     public final EntityPropertyMain<String> epGroupTermsOfUse = new EntityPropertyMain<>("termsOfUse", TypeSimplePrimitive.EDM_STRING, false, true);
     public final EntityPropertyMain<String> epGroupPrivacyPolicy = new EntityPropertyMain<>("privacyPolicy", TypeSimplePrimitive.EDM_STRING, false, true);
     public final EntityPropertyMain<Map<String, Object>> epGroupDataQuality = new EntityPropertyMain<>("dataQuality", TypeComplex.STA_MAP, false, true);
+    public final EntityPropertyMain<Long> epGroupMemberCount = new EntityPropertyMain<>("memberCount", TypeSimplePrimitive.EDM_INT64, false, false);
+    public final EntityPropertyMain<Long> epGroupDatastreamCount = new EntityPropertyMain<>("datastreamCount", TypeSimplePrimitive.EDM_INT64, false, false);
+    public final EntityPropertyMain<TimeInstant> epGroupPhenomenonTimeStart = new EntityPropertyMain<>("phenomenonTimeStart", TypeSimplePrimitive.EDM_DATETIMEOFFSET, false, true);
+    public final EntityPropertyMain<TimeInstant> epGroupPhenomenonTimeEnd = new EntityPropertyMain<>("phenomenonTimeEnd", TypeSimplePrimitive.EDM_DATETIMEOFFSET, false, true);
     public final NavigationPropertyEntitySet npObservationGroups = new NavigationPropertyEntitySet("ObservationGroups");
     public final NavigationPropertyEntitySet npObservationsGroup = new NavigationPropertyEntitySet("Observations", npObservationGroups);
     public final NavigationPropertyEntitySet npRelationGroups = new NavigationPropertyEntitySet("ObservationGroups");
@@ -127,6 +166,8 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
     public final NavigationPropertyEntitySet npObjectsObservation = new NavigationPropertyEntitySet("Objects", npSubjectRelation);
     public final NavigationPropertyEntity npObjectRelation = new NavigationPropertyEntity("Object", false);
     public final NavigationPropertyEntitySet npSubjectsObservation = new NavigationPropertyEntitySet("Subjects", npObjectRelation);
+    public final NavigationPropertyEntitySet npTransitiveObjectsObservation = new NavigationPropertyEntitySet("TransitiveObjects");
+    public final NavigationPropertyEntitySet npTransitiveSubjectsObservation = new NavigationPropertyEntitySet("TransitiveSubjects", npTransitiveObjectsObservation);
     public final EntityType etRelation = new EntityType("Relation", "Relations");
     public final EntityPropertyMain<String> epPartyDescription = new EntityPropertyMain<>("description", TypeSimplePrimitive.EDM_STRING, false, true);
     public final EntityPropertyMain<Role> epPartyRole = new EntityPropertyMain<>("role", propertyTypeRole, true, false);
@@ -151,6 +192,10 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
     public final EntityPropertyMain<TimeInstant> epCampaignStartTime = new EntityPropertyMain<>("startTime", TypeSimplePrimitive.EDM_DATETIMEOFFSET, false, true);
     public final EntityPropertyMain<TimeInstant> epCampaignEndTime = new EntityPropertyMain<>("endTime", TypeSimplePrimitive.EDM_DATETIMEOFFSET, false, true);
     public final EntityPropertyMain<String> epUrl = new EntityPropertyMain<>("url", TypeSimplePrimitive.EDM_STRING, false, true);
+    public final EntityPropertyMain<Long> epCampaignDatastreamCount = new EntityPropertyMain<>("datastreamCount", TypeSimplePrimitive.EDM_INT64, false, false);
+    public final EntityPropertyMain<Long> epCampaignMultiDatastreamCount = new EntityPropertyMain<>("multiDatastreamCount", TypeSimplePrimitive.EDM_INT64, false, false);
+    public final EntityPropertyMain<TimeInstant> epCampaignPhenomenonTimeStart = new EntityPropertyMain<>("phenomenonTimeStart", TypeSimplePrimitive.EDM_DATETIMEOFFSET, false, true);
+    public final EntityPropertyMain<TimeInstant> epCampaignPhenomenonTimeEnd = new EntityPropertyMain<>("phenomenonTimeEnd", TypeSimplePrimitive.EDM_DATETIMEOFFSET, false, true);
     public final NavigationPropertyEntitySet npCampaignDatastreams = new NavigationPropertyEntitySet("Campaigns");
     public final NavigationPropertyEntitySet npDatastreamsCampaign = new NavigationPropertyEntitySet("Datastreams", npCampaignDatastreams);
     public final NavigationPropertyEntitySet npCampaignMultiDatastreams = new NavigationPropertyEntitySet("Campaigns");
@@ -176,8 +221,35 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
     private boolean enforceOwnership;
     private boolean enforceLicensing;
     private boolean enforceGroupLicensing;
+    private boolean enforceReadOwnership;
+    private boolean foreignKeyIndexes;
+    private boolean membershipStatistics;
+    private boolean relationsClosureEnabled;
+    private boolean relationsClosureRebuild;
+    private RelationClosure relationClosure;
+    private String groupsObservationsPartitioning = "none";
+    private int groupsObservationsPartitions;
+    private int groupsObservationsPartitionSize;
+    private PartitionExtender partitionExtender;
+    private int groupMembershipBatchSize;
+    private HookMetrics hookMetrics;
+    private AuditTrail auditTrail;
+    private OwnershipVerdictCache ownershipVerdictCache;
+    private CampaignLifecycle campaignLifecycle;
+    private LicenseCatalogue licenseCatalogue;
+    private boolean relationGraphEnabled;
+    private int relationTraversalMaxDepth;
+    private RelationGraph relationGraph;
+    private boolean bulkRelationsEnabled;
+    private int bulkRelationsBatchSize;
+    private RelationImporter relationImporter;
+    private boolean exportEnabled;
+    private int exportFetchSize;
+    private NdjsonExporter exporter;
+    private TableHelperRelation tableHelperRelation;
     private boolean fullyInitialised;
     private URL licenseDomain;
+    private LicenseCompatibility licenseCompatibility = LicenseCompatibility.creativeCommons();
 
     private boolean authEnabled;
 
@@ -196,6 +268,58 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
         enforceOwnership = pluginSettings.getBoolean(PluginPlusSettings.TAG_ENABLE_ENFORCE_OWNERSHIP, PluginPlusSettings.class);
         enforceLicensing = pluginSettings.getBoolean(PluginPlusSettings.TAG_ENABLE_ENFORCE_LICENSING, PluginPlusSettings.class);
         enforceGroupLicensing = pluginSettings.getBoolean(PluginPlusSettings.TAG_ENABLE_ENFORCE_GROUP_LICENSING, PluginPlusSettings.class);
+        enforceReadOwnership = pluginSettings.getBoolean(PluginPlusSettings.TAG_ENABLE_ENFORCE_READ_OWNERSHIP, PluginPlusSettings.class);
+        foreignKeyIndexes = pluginSettings.getBoolean(PluginPlusSettings.TAG_ENABLE_FOREIGN_KEY_INDEXES, PluginPlusSettings.class);
+        membershipStatistics = pluginSettings.getBoolean(PluginPlusSettings.TAG_ENABLE_MEMBERSHIP_STATISTICS, PluginPlusSettings.class);
+        relationsClosureEnabled = pluginSettings.getBoolean(PluginPlusSettings.TAG_ENABLE_RELATIONS_CLOSURE, PluginPlusSettings.class);
+        relationsClosureRebuild = pluginSettings.getBoolean(PluginPlusSettings.TAG_RELATIONS_CLOSURE_REBUILD, PluginPlusSettings.class);
+        groupsObservationsPartitioning = pluginSettings.get(PluginPlusSettings.TAG_GROUPS_OBSERVATIONS_PARTITIONING, PluginPlusSettings.class).toLowerCase();
+        if (!GROUPS_OBSERVATIONS_PARTITIONING.contains(groupsObservationsPartitioning)) {
+            LOGGER.error("value for '" + PluginPlusSettings.TAG_GROUPS_OBSERVATIONS_PARTITIONING + "' must be one of " + GROUPS_OBSERVATIONS_PARTITIONING + ", using 'none'");
+            groupsObservationsPartitioning = "none";
+        }
+        groupsObservationsPartitions = pluginSettings.getInt(PluginPlusSettings.TAG_GROUPS_OBSERVATIONS_PARTITIONS, PluginPlusSettings.class);
+        groupsObservationsPartitionSize = pluginSettings.getInt(PluginPlusSettings.TAG_GROUPS_OBSERVATIONS_PARTITION_SIZE, PluginPlusSettings.class);
+        if ("range".equals(groupsObservationsPartitioning)) {
+            partitionExtender = new PartitionExtender(settings,
+                    pluginSettings.getInt(PluginPlusSettings.TAG_GROUPS_OBSERVATIONS_EXTEND_INTERVAL, PluginPlusSettings.class));
+        }
+        groupMembershipBatchSize = pluginSettings.getInt(PluginPlusSettings.TAG_GROUP_MEMBERSHIP_BATCH_SIZE, PluginPlusSettings.class);
+        relationGraphEnabled = pluginSettings.getBoolean(PluginPlusSettings.TAG_ENABLE_RELATION_GRAPH, PluginPlusSettings.class);
+        relationTraversalMaxDepth = pluginSettings.getInt(PluginPlusSettings.TAG_RELATION_TRAVERSAL_MAX_DEPTH, PluginPlusSettings.class);
+        bulkRelationsEnabled = pluginSettings.getBoolean(PluginPlusSettings.TAG_ENABLE_BULK_RELATIONS, PluginPlusSettings.class);
+        bulkRelationsBatchSize = pluginSettings.getInt(PluginPlusSettings.TAG_BULK_RELATIONS_BATCH_SIZE, PluginPlusSettings.class);
+        exportEnabled = pluginSettings.getBoolean(PluginPlusSettings.TAG_ENABLE_EXPORT, PluginPlusSettings.class);
+        exportFetchSize = pluginSettings.getInt(PluginPlusSettings.TAG_EXPORT_FETCH_SIZE, PluginPlusSettings.class);
+        if (pluginSettings.getBoolean(PluginPlusSettings.TAG_ENABLE_HOOK_METRICS, PluginPlusSettings.class)) {
+            hookMetrics = new HookMetrics();
+            hookMetrics.registerCounter("ownershipCache.hits", OwnershipCache::getTotalHits);
+            hookMetrics.registerCounter("ownershipCache.misses", OwnershipCache::getTotalMisses);
+            try {
+                hookMetrics.registerMBean();
+            } catch (JMException e) {
+                LOGGER.warn("Failed to register hook metrics with JMX: " + e.getMessage());
+            }
+        }
+
+        if (pluginSettings.getBoolean(PluginPlusSettings.TAG_ENABLE_AUDIT, PluginPlusSettings.class)) {
+            auditTrail = new AuditTrail(settings,
+                    pluginSettings.getInt(PluginPlusSettings.TAG_AUDIT_BUFFER_SIZE, PluginPlusSettings.class),
+                    pluginSettings.getInt(PluginPlusSettings.TAG_AUDIT_FLUSH_INTERVAL, PluginPlusSettings.class));
+        }
+
+        final int ownershipCacheSize = pluginSettings.getInt(PluginPlusSettings.TAG_OWNERSHIP_CACHE_SIZE, PluginPlusSettings.class);
+        if (enforceOwnership && ownershipCacheSize > 0) {
+            ownershipVerdictCache = new OwnershipVerdictCache(ownershipCacheSize,
+                    pluginSettings.getInt(PluginPlusSettings.TAG_OWNERSHIP_CACHE_TTL, PluginPlusSettings.class));
+        }
+
+        if (pluginSettings.getBoolean(PluginPlusSettings.TAG_ENABLE_CAMPAIGN_LIFECYCLE, PluginPlusSettings.class)) {
+            campaignLifecycle = new CampaignLifecycle(this,
+                    pluginSettings.getInt(PluginPlusSettings.TAG_CAMPAIGN_LIFECYCLE_TICK, PluginPlusSettings.class));
+            if (auditTrail != null)
+                campaignLifecycle.addListener(auditTrail.campaignClosed(etCampaign));
+        }
 
         if (enforceLicensing || enforceGroupLicensing) {
             LOGGER.info("Setting plugins.plus.idType.license, using value 'String'.");
@@ -205,6 +329,11 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
             } catch (MalformedURLException e) {
                 LOGGER.error("value for '" + PluginPlusSettings.TAG_ENABLE_LICENSE_DOMAIN + "' not a valid URL");
             }
+            try {
+                licenseCompatibility = LicenseCompatibility.parse(pluginSettings.get(PluginPlusSettings.TAG_LICENSE_COMPATIBILITY, PluginPlusSettings.class));
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("value for '" + PluginPlusSettings.TAG_LICENSE_COMPATIBILITY + "' not valid, using Creative Commons compatibility: " + e.getMessage());
+            }
         }
 
         Settings authSettings = settings.getAuthSettings();
@@ -235,22 +364,22 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
                 .registerProperty(npDatastreamsLicense)
                 .registerProperty(npGroupsLicense)
                 .registerProperty(npCampaignsLicense)
-                .addCreateValidator(etLicense.entityName + ".createValidator", (entity) -> {
+                .addCreateValidator(etLicense.entityName + ".createValidator", timed(etLicense, HookMetrics.HOOK_CREATE_VALIDATOR, (entity) -> {
 
                     if (!enforceLicensing)
                         return;
 
                     if ((entity.getPrimaryKeyValues().get(0) != null) && LICENSE_IDS.contains(entity.getPrimaryKeyValues().get(0).toString()))
                         throw new ForbiddenException("License with this `id` cannot be created.");
-                })
-                .addUpdateValidator(etParty.entityName + ".updateValidator", (entity) -> {
+                }))
+                .addUpdateValidator(etParty.entityName + ".updateValidator", timed(etLicense, HookMetrics.HOOK_UPDATE_VALIDATOR, (entity) -> {
 
                     if (!enforceLicensing)
                         return;
 
                     if ((entity.getPrimaryKeyValues().get(0) != null) && LICENSE_IDS.contains(entity.getPrimaryKeyValues().get(0).toString()))
                         throw new ForbiddenException("License with this `id` cannot be updated.");
-                });
+                }));
 
         npLicenseDatastream.setEntityType(etLicense);
         pluginCoreModel.etDatastream.registerProperty(npLicenseDatastream);
@@ -273,7 +402,7 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
                 .registerProperty(npGroupsParty)
                 .registerProperty(npCampaignsParty)
                 .registerProperty(npDatastreamsParty)
-                .addCreateValidator(etParty.entityName + ".createValidator", (entity) -> {
+                .addCreateValidator(etParty.entityName + ".createValidator", timed(etParty, HookMetrics.HOOK_CREATE_VALIDATOR, (entity) -> {
 
                     if (!enforceOwnership)
                         return;
@@ -286,25 +415,12 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
                     if (isAdmin(principal))
                         return;
 
-                    String userId = principal.getName();
-
                     // Make sure userId is in UUID format
-                    try {
-                        // This throws exception if userId is not in UUID format
-                        UUID.fromString(userId);
-                    } catch (IllegalArgumentException exception) {
-                        userId = UUID.nameUUIDFromBytes(userId.getBytes()).toString();
-                    }
+                    String userId = AuthIds.normalise(principal);
 
                     if (entity.isSetProperty(epAuthId)) {
-                        String authId = entity.getProperty(epAuthId);
                         // Make sure Party.authId is in UUID format
-                        try {
-                            // This throws exception if authId is not in UUID format
-                            UUID.fromString(authId);
-                        } catch (IllegalArgumentException exception) {
-                            entity.setProperty(epAuthId, UUID.nameUUIDFromBytes(authId.getBytes()).toString());
-                        }
+                        entity.setProperty(epAuthId, AuthIds.normalise(entity.getProperty(epAuthId)));
                     }
 
                     if ((entity.isSetProperty(epAuthId)) && (!userId.equalsIgnoreCase(entity.getProperty(epAuthId)))) {
@@ -312,8 +428,8 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
                         throw new IllegalArgumentException("Party property 'authId' must represent the acting user or be omitted");
                     }
 
-                })
-                .addUpdateValidator(etParty.entityName + ".updateValidator", (entity) -> {
+                }))
+                .addUpdateValidator(etParty.entityName + ".updateValidator", timed(etParty, HookMetrics.HOOK_UPDATE_VALIDATOR, (entity) -> {
 
                     if (!enforceOwnership)
                         return;
@@ -326,18 +442,18 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
                         if (authId == null)
                             return;
 
-                        // This throws exception if POSTed authId is not in UUID format
-                        UUID.fromString(authId);
+                        if (!AuthIds.isUuid(authId))
+                            throw new IllegalArgumentException("Party property 'authId' must be in UUID format");
                         return;
                     }
 
-                    String userId = principal.getName();
+                    String userId = AuthIds.normalise(principal);
                     if ((entity.isSetProperty(epAuthId)) && (!userId.equalsIgnoreCase(entity.getProperty(epAuthId)))) {
                         // The authId is set by the plugin - it cannot be changed via a PATCH
                         throw new ForbiddenException("Party property 'authId' cannot be changed");
                     }
 
-                });
+                }));
 
         /**
          * Class Thing
@@ -345,7 +461,7 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
         npPartyThing.setEntityType(etParty);
         pluginCoreModel.etThing
                 .registerProperty(npPartyThing)
-                .addCreateValidator(pluginCoreModel.etThing.entityName + ".createValidator", (entity) -> {
+                .addCreateValidator(pluginCoreModel.etThing.entityName + ".createValidator", timed(pluginCoreModel.etThing, HookMetrics.HOOK_CREATE_VALIDATOR, (entity) -> {
 
                     if (!enforceOwnership)
                         return;
@@ -359,8 +475,8 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
                     if (party != null)
                         assertOwnership(entity, party, principal);
 
-                })
-                .addUpdateValidator(pluginCoreModel.etThing.entityName + ".updateValidator", (entity) -> {
+                }))
+                .addUpdateValidator(pluginCoreModel.etThing.entityName + ".updateValidator", timed(pluginCoreModel.etThing, HookMetrics.HOOK_UPDATE_VALIDATOR, (entity) -> {
 
                     if (!enforceOwnership)
                         return;
@@ -376,7 +492,7 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
                     else
                         assertPrincipal(principal);
 
-                });
+                }));
 
         /**
          * Class Datastream
@@ -384,7 +500,7 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
         npPartyDatastream.setEntityType(etParty);
         pluginCoreModel.etDatastream
                 .registerProperty(npPartyDatastream)
-                .addCreateValidator(pluginCoreModel.etDatastream.entityName + ".createValidator", (entity) -> {
+                .addCreateValidator(pluginCoreModel.etDatastream.entityName + ".createValidator", timed(pluginCoreModel.etDatastream, HookMetrics.HOOK_CREATE_VALIDATOR, (entity) -> {
 
                     if (!enforceOwnership)
                         return;
@@ -398,8 +514,8 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
                     if (party != null)
                         assertOwnership(entity, party, principal);
 
-                })
-                .addUpdateValidator(pluginCoreModel.etDatastream.entityName + "updateValidator", (entity) -> {
+                }))
+                .addUpdateValidator(pluginCoreModel.etDatastream.entityName + "updateValidator", timed(pluginCoreModel.etDatastream, HookMetrics.HOOK_UPDATE_VALIDATOR, (entity) -> {
 
                     if (!enforceOwnership)
                         return;
@@ -415,7 +531,7 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
                     else
                         assertPrincipal(principal);
 
-                });
+                }));
 
         /**
          * Class Campaign
@@ -441,7 +557,9 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
                 .registerProperty(npPartyCampaign)
                 .registerProperty(npDatastreamsCampaign)
                 .registerProperty(npGroupsCampaign)
-                .addCreateValidator(etCampaign.entityName + ".createValidator", (entity) -> {
+                .addCreateValidator(etCampaign.entityName + ".createValidator", timed(etCampaign, HookMetrics.HOOK_CREATE_VALIDATOR, (entity) -> {
+
+                    assertReadOnly(entity, epCampaignDatastreamCount, epCampaignMultiDatastreamCount, epCampaignPhenomenonTimeStart, epCampaignPhenomenonTimeEnd);
 
                     if (!enforceOwnership)
                         return;
@@ -453,8 +571,10 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
 
                     assertOwnership(entity, entity.getProperty(npPartyCampaign), principal);
 
-                })
-                .addUpdateValidator(etCampaign.entityName + ".updateValidator", (entity) -> {
+                }))
+                .addUpdateValidator(etCampaign.entityName + ".updateValidator", timed(etCampaign, HookMetrics.HOOK_UPDATE_VALIDATOR, (entity) -> {
+
+                    assertReadOnly(entity, epCampaignDatastreamCount, epCampaignMultiDatastreamCount, epCampaignPhenomenonTimeStart, epCampaignPhenomenonTimeEnd);
 
                     if (!enforceOwnership)
                         return;
@@ -466,7 +586,15 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
 
                     assertOwnership(entity, entity.getProperty(npPartyCampaign), principal);
 
-                });
+                }));
+
+        if (membershipStatistics) {
+            etCampaign
+                    .registerProperty(epCampaignDatastreamCount)
+                    .registerProperty(epCampaignMultiDatastreamCount)
+                    .registerProperty(epCampaignPhenomenonTimeStart)
+                    .registerProperty(epCampaignPhenomenonTimeEnd);
+        }
 
         npCampaignDatastreams.setEntityType(etCampaign);
         pluginCoreModel.etDatastream.registerProperty(npCampaignDatastreams);
@@ -501,7 +629,9 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
                 .registerProperty(npLicenseGroup)
                 .registerProperty(npPartyGroup)
                 .registerProperty(npCampaignsGroup)
-                .addCreateValidator(etGroup.entityName + ".createValidator", (entity) -> {
+                .addCreateValidator(etGroup.entityName + ".createValidator", timed(etGroup, HookMetrics.HOOK_CREATE_VALIDATOR, (entity) -> {
+
+                    assertReadOnly(entity, epGroupMemberCount, epGroupDatastreamCount, epGroupPhenomenonTimeStart, epGroupPhenomenonTimeEnd);
 
                     if (!enforceOwnership)
                         return;
@@ -513,8 +643,10 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
 
                     assertOwnership(entity, entity.getProperty(npPartyGroup), principal);
 
-                })
-                .addUpdateValidator(etGroup.entityName + ".updateValidator", (entity) -> {
+                }))
+                .addUpdateValidator(etGroup.entityName + ".updateValidator", timed(etGroup, HookMetrics.HOOK_UPDATE_VALIDATOR, (entity) -> {
+
+                    assertReadOnly(entity, epGroupMemberCount, epGroupDatastreamCount, epGroupPhenomenonTimeStart, epGroupPhenomenonTimeEnd);
 
                     if (!enforceOwnership)
                         return;
@@ -526,7 +658,15 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
 
                     assertOwnership(entity, entity.getProperty(npPartyGroup), principal);
 
-                });
+                }));
+
+        if (membershipStatistics) {
+            etGroup
+                    .registerProperty(epGroupMemberCount)
+                    .registerProperty(epGroupDatastreamCount)
+                    .registerProperty(epGroupPhenomenonTimeStart)
+                    .registerProperty(epGroupPhenomenonTimeEnd);
+        }
 
         npObservationGroups.setEntityType(etGroup);
         pluginCoreModel.etObservation.registerProperty(npObservationGroups);
@@ -556,7 +696,7 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
         pluginCoreModel.etObservation
                 .registerProperty(npObjectsObservation)
                 .registerProperty(npSubjectsObservation)
-                .addUpdateValidator(pluginCoreModel.etObservation.entityName + ".createValidator", (entity) -> {
+                .addUpdateValidator(pluginCoreModel.etObservation.entityName + ".createValidator", timed(pluginCoreModel.etObservation, HookMetrics.HOOK_UPDATE_VALIDATOR, (entity) -> {
 
                     if (!enforceOwnership)
                         return;
@@ -576,7 +716,18 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
                             assertOwnership(entity, multiDatastream.getProperty(npPartyDatastream), principal);
                     }
 
-                });
+                }));
+
+        if (relationsClosureEnabled) {
+            // Observations reachable through chains of Relations, read from RELATIONS_CLOSURE
+            npTransitiveObjectsObservation.setEntityType(pluginCoreModel.etObservation);
+            npTransitiveSubjectsObservation.setEntityType(pluginCoreModel.etObservation);
+            pluginCoreModel.etObservation
+                    .registerProperty(npTransitiveObjectsObservation)
+                    .registerProperty(npTransitiveSubjectsObservation)
+                    .addCreateValidator(pluginCoreModel.etObservation.entityName + ".closureValidator", (entity) -> assertReadOnly(entity, npTransitiveObjectsObservation, npTransitiveSubjectsObservation))
+                    .addUpdateValidator(pluginCoreModel.etObservation.entityName + ".closureValidator", (entity) -> assertReadOnly(entity, npTransitiveObjectsObservation, npTransitiveSubjectsObservation));
+        }
 
         if ((pluginMultiDatastream != null)) {
             /**
@@ -595,7 +746,7 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
             npMultiDatastreamsParty.setEntityType(pluginMultiDatastream.etMultiDatastream);
             pluginMultiDatastream.etMultiDatastream
                     .registerProperty(npPartyMultiDatastream)
-                    .addCreateValidator(pluginMultiDatastream.etMultiDatastream.entityName + ".createValidator", (entity) -> {
+                    .addCreateValidator(pluginMultiDatastream.etMultiDatastream.entityName + ".createValidator", timed(pluginMultiDatastream.etMultiDatastream, HookMetrics.HOOK_CREATE_VALIDATOR, (entity) -> {
 
                         if (!enforceOwnership)
                             return;
@@ -607,8 +758,8 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
 
                         assertOwnership(entity, entity.getProperty(npPartyMultiDatastream), principal);
 
-                    })
-                    .addUpdateValidator(pluginMultiDatastream.etMultiDatastream.entityName + ".createValidator", (entity) -> {
+                    }))
+                    .addUpdateValidator(pluginMultiDatastream.etMultiDatastream.entityName + ".createValidator", timed(pluginMultiDatastream.etMultiDatastream, HookMetrics.HOOK_UPDATE_VALIDATOR, (entity) -> {
 
                         if (!enforceOwnership)
                             return;
@@ -620,7 +771,7 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
 
                         assertOwnership(entity, entity.getProperty(npPartyMultiDatastream), principal);
 
-                    });
+                    }));
 
             etParty.registerProperty(npMultiDatastreamsParty);
 
@@ -669,6 +820,270 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
 
         if (this.authEnabled)
             extensionList.add(REQUIREMENT_AUTH);
+
+        if (this.hookMetrics != null)
+            serverSettings.put(HOOK_METRICS, hookMetrics.getSummary());
+
+        if (this.relationGraphEnabled) {
+            extensionList.add(RELATION_GRAPH);
+            serverSettings.put(RELATION_GRAPH, new HashMap<>(Map.of(
+                    "path", PATH_RELATION_GRAPH,
+                    "maxDepth", relationTraversalMaxDepth)));
+        }
+
+        if (this.bulkRelationsEnabled) {
+            extensionList.add(BULK_RELATIONS);
+            serverSettings.put(BULK_RELATIONS, new HashMap<>(Map.of(
+                    "path", PATH_BULK_RELATIONS,
+                    "batchSize", bulkRelationsBatchSize)));
+        }
+
+        if (this.exportEnabled) {
+            extensionList.add(EXPORT);
+            serverSettings.put(EXPORT, new HashMap<>(Map.of(
+                    "path", PATH_EXPORT,
+                    "fetchSize", exportFetchSize)));
+        }
+    }
+
+    @Override
+    public Collection<String> getVersionUrlPaths() {
+        final List<String> paths = new ArrayList<>();
+        if (relationGraphEnabled)
+            paths.add(PATH_RELATION_GRAPH);
+        if (bulkRelationsEnabled)
+            paths.add(PATH_BULK_RELATIONS);
+        if (exportEnabled)
+            paths.add(PATH_EXPORT);
+        return paths;
+    }
+
+    @Override
+    public Collection<String> getRequestTypes() {
+        final List<String> requestTypes = new ArrayList<>();
+        if (relationGraphEnabled)
+            requestTypes.add(REQUEST_TYPE_RELATION_GRAPH);
+        if (bulkRelationsEnabled)
+            requestTypes.add(REQUEST_TYPE_BULK_RELATIONS);
+        if (exportEnabled)
+            requestTypes.add(REQUEST_TYPE_EXPORT);
+        return requestTypes;
+    }
+
+    @Override
+    public String getRequestTypeFor(Version version, String path, HttpMethod method, String contentType) {
+        if (relationGraphEnabled && PATH_RELATION_GRAPH.equals(path) && method == HttpMethod.GET) {
+            return REQUEST_TYPE_RELATION_GRAPH;
+        }
+        if (bulkRelationsEnabled && PATH_BULK_RELATIONS.equals(path) && method == HttpMethod.POST) {
+            return REQUEST_TYPE_BULK_RELATIONS;
+        }
+        if (exportEnabled && PATH_EXPORT.equals(path) && method == HttpMethod.GET) {
+            return REQUEST_TYPE_EXPORT;
+        }
+        throw new IllegalArgumentException("Method " + method + " not valid for path " + path);
+    }
+
+    /**
+     * Dispatches the requests to the endpoints of the plugin. The
+     * {@link OwnershipCache} of the request is dropped when it ends.
+     */
+    @Override
+    public ServiceResponse execute(Service mainService, ServiceRequest request, ServiceResponse response) {
+        try {
+            if (REQUEST_TYPE_BULK_RELATIONS.equals(request.getRequestType())) {
+                return executeBulkRelations(request, response);
+            }
+            if (REQUEST_TYPE_EXPORT.equals(request.getRequestType())) {
+                return executeExport(request, response);
+            }
+            return executeRelationGraph(request, response);
+        } finally {
+            OwnershipCache.clearLocalCache();
+        }
+    }
+
+    /**
+     * Returns the Relations reachable from an Observation, e.g.
+     * {@code GET /v1.1/RelationGraph?observation=42&direction=Subjects&depth=10&role=derivedFrom}.
+     * The parameter {@code direction} is one of {@code Objects} (default) or
+     * {@code Subjects}, {@code depth} defaults to
+     * {@code plugins.staplus.relationTraversal.maxDepth}, {@code role} is
+     * optional.
+     */
+    private ServiceResponse executeRelationGraph(ServiceRequest request, ServiceResponse response) {
+        final Map<String, String> params = parseQuery(request.getUrlQuery());
+        final String observationId = params.get("observation");
+        if (observationId == null || observationId.isEmpty()) {
+            return Service.errorResponse(response, 400, "Parameter 'observation' is required.");
+        }
+
+        PersistenceManager pm = PersistenceManagerFactory.getInstance(settings).create();
+        try {
+            if (!(pm instanceof JooqPersistenceManager ppm)) {
+                return Service.errorResponse(response, 500, "Unknown persistence manager class");
+            }
+            final int depth = params.containsKey("depth") ? Integer.parseInt(params.get("depth")) : relationTraversalMaxDepth;
+            final RelationGraph.Direction direction = RelationGraph.Direction.parse(params.get("direction"));
+
+            final List<Map<String, Object>> value = new ArrayList<>();
+            for (RelationGraph.Edge edge : relationGraph.traverse(ppm, observationId, direction, depth, params.get("role"))) {
+                final Map<String, Object> item = new LinkedHashMap<>();
+                item.put(AT_IOT_ID, edge.id());
+                item.put("role", edge.role());
+                item.put("Subject", edge.subjectId());
+                item.put("Object", edge.objectId());
+                item.put("depth", edge.depth());
+                value.add(item);
+            }
+
+            response.setContentType("application/json");
+            JsonWriter.getObjectMapper().writeValue(response.getWriter(), Map.of("value", value));
+            response.setStatus(200, "OK");
+            return response;
+        } catch (IllegalArgumentException e) {
+            return Service.errorResponse(response, 400, e.getMessage());
+        } catch (IOException e) {
+            LOGGER.error("Failed to write the Relation graph", e);
+            return Service.errorResponse(response, 500, "Failed to write the Relation graph");
+        } finally {
+            pm.close();
+        }
+    }
+
+    /**
+     * Creates many Relations in one transaction, e.g.
+     * {@code POST /v1.1/BulkRelations} with
+     * {@code [{"Subject": 1, "Object": 2, "role": "derivedFrom", "Groups": [3]}, ...]}.
+     * The ownership of all Subjects and Groups is checked up front with one
+     * query each, then the Relations are inserted in batches of
+     * {@code plugins.staplus.bulkRelations.batchSize}. Returns the ids of the
+     * new Relations, in the order given.
+     */
+    private ServiceResponse executeBulkRelations(ServiceRequest request, ServiceResponse response) {
+        PersistenceManager pm = PersistenceManagerFactory.getInstance(settings).create();
+        if (!(pm instanceof JooqPersistenceManager ppm)) {
+            pm.close();
+            return Service.errorResponse(response, 500, "Unknown persistence manager class");
+        }
+        boolean committed = false;
+        try {
+            final List<RelationImporter.RelationTuple> tuples = relationImporter.parse(JsonWriter.getObjectMapper().readTree(request.getContentReader()));
+            tableHelperRelation.assertOwnershipRelations(ppm, tuples, request.getUserPrincipal());
+            final List<Object> ids = relationImporter.insert(ppm, tuples);
+            ppm.commitAndClose();
+            committed = true;
+
+            response.setContentType("application/json");
+            JsonWriter.getObjectMapper().writeValue(response.getWriter(), Map.of("value", ids));
+            response.setStatus(201, "Created");
+            return response;
+        } catch (UnauthorizedException e) {
+            return Service.errorResponse(response, 401, e.getMessage());
+        } catch (ForbiddenException e) {
+            return Service.errorResponse(response, 403, e.getMessage());
+        } catch (IllegalArgumentException | DataTypeException | JsonProcessingException e) {
+            return Service.errorResponse(response, 400, e.getMessage());
+        } catch (DataAccessException e) {
+            LOGGER.debug("Failed to create the Relations", e);
+            return Service.errorResponse(response, 400, "Failed to create the Relations, does every Object and Group exist?");
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to create the Relations", e);
+            return Service.errorResponse(response, 500, "Failed to create the Relations");
+        } finally {
+            if (!committed)
+                ppm.rollbackAndClose();
+        }
+    }
+
+    /**
+     * Streams a Campaign or an ObservationGroup with all its Observations as
+     * newline delimited JSON, e.g. {@code GET /v1.1/Export?campaign=7} or
+     * {@code GET /v1.1/Export?group=3}. The rows are read with server side
+     * cursors of {@code plugins.staplus.export.fetchSize} rows in primary key
+     * order, so no paging with {@code $skip} is needed.
+     */
+    private ServiceResponse executeExport(ServiceRequest request, ServiceResponse response) {
+        final Map<String, String> params = parseQuery(request.getUrlQuery());
+        final String campaignId = params.get("campaign");
+        final String groupId = params.get("group");
+        if ((campaignId == null) == (groupId == null)) {
+            return Service.errorResponse(response, 400, "Exactly one of the parameters 'campaign' or 'group' is required.");
+        }
+
+        PersistenceManager pm = PersistenceManagerFactory.getInstance(settings).create();
+        if (!(pm instanceof JooqPersistenceManager ppm)) {
+            pm.close();
+            return Service.errorResponse(response, 500, "Unknown persistence manager class");
+        }
+        int written = 0;
+        try (JsonGenerator out = JsonWriter.getObjectMapper().getFactory().createGenerator(response.getWriter())) {
+            // The writer belongs to the response, closing the generator only flushes it
+            out.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            out.setRootValueSeparator(null);
+            try {
+                response.setContentType("application/x-ndjson");
+                final boolean found = (campaignId != null)
+                        ? exporter.exportCampaign(ppm, campaignId, request.getUserPrincipal(), out)
+                        : exporter.exportGroup(ppm, groupId, request.getUserPrincipal(), out);
+                if (!found) {
+                    return Service.errorResponse(response, 404, (campaignId != null) ? "Campaign not found" : "ObservationGroup not found");
+                }
+                out.flush();
+                response.setStatus(200, "OK");
+                return response;
+            } finally {
+                written = out.getOutputContext().getEntryCount();
+            }
+        } catch (IllegalArgumentException | DataTypeException e) {
+            if (written > 0) {
+                return abortExport(response, written, e);
+            }
+            return Service.errorResponse(response, 400, e.getMessage());
+        } catch (IOException | DataAccessException e) {
+            if (written > 0) {
+                return abortExport(response, written, e);
+            }
+            LOGGER.error("Failed to export", e);
+            return Service.errorResponse(response, 500, "Failed to export");
+        } finally {
+            ppm.rollbackAndClose();
+        }
+    }
+
+    /**
+     * Ends an export that failed after records were written. These may
+     * already have been sent with status 200, so no error document is
+     * appended to them and the client sees a truncated export.
+     */
+    private static ServiceResponse abortExport(ServiceResponse response, int written, Exception e) {
+        LOGGER.error("Failed to export, aborting after {} records", written, e);
+        response.setStatus(500, "Export aborted");
+        return response;
+    }
+
+    @Override
+    public Collection<String> getFormatNames() {
+        return Arrays.asList(AttributionResultFormatter.FORMAT_NAME);
+    }
+
+    @Override
+    public ResultFormatter getResultFormatter() {
+        return new AttributionResultFormatter(settings, this, pluginCoreModel, pluginMultiDatastream);
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        final Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String param : query.split("&")) {
+            final int idx = param.indexOf('=');
+            if (idx > 0) {
+                params.put(URLDecoder.decode(param.substring(0, idx), StandardCharsets.UTF_8), URLDecoder.decode(param.substring(idx + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
     }
 
     @Override
@@ -707,7 +1122,8 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
             /**
              * Class Group
              */
-            tableCollection.registerTable(etGroup, new TableImpGroup(dataTypeGroup, dataTypeParty, dataTypeLicense, this, pluginCoreModel, pluginMultiDatastream));
+            final TableImpGroup tableGroups = new TableImpGroup(dataTypeGroup, dataTypeParty, dataTypeLicense, this, pluginCoreModel, pluginMultiDatastream);
+            tableCollection.registerTable(etGroup, tableGroups);
             tableCollection.registerTable(new TableImpGroupsObservations(dataTypeGroup, dataTypeObservation));
             tableCollection.registerTable(new TableImpGroupsRelations(dataTypeGroup, dataTypeRelation));
             tableCollection.registerTable(new TableImpGroupsCampaigns(dataTypeGroup, dataTypeCampaign));
@@ -715,7 +1131,10 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
             /**
              * Class Relation
              */
-            tableCollection.registerTable(etRelation, new TableImpRelation(dataTypeRelation, dataTypeObservation, dataTypeGroup, this, pluginCoreModel));
+            final TableImpRelation tableRelations = new TableImpRelation(dataTypeRelation, dataTypeObservation, dataTypeGroup, this, pluginCoreModel);
+            tableCollection.registerTable(etRelation, tableRelations);
+            if (relationsClosureEnabled)
+                tableCollection.registerTable(new TableImpRelationsClosure(dataTypeObservation));
 
             /**
              * Class Party
@@ -725,13 +1144,29 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
             /**
              * Class Campaign
              */
-            tableCollection.registerTable(etCampaign, new TableImpCampaign(dataTypeCampaign, dataTypeParty, dataTypeLicense, this, pluginCoreModel, pluginMultiDatastream));
+            final TableImpCampaign tableCampaigns = new TableImpCampaign(dataTypeCampaign, dataTypeParty, dataTypeLicense, this, pluginCoreModel, pluginMultiDatastream);
+            tableCollection.registerTable(etCampaign, tableCampaigns);
             tableCollection.registerTable(new TableImpCampaignsDatastreams(dataTypeCampaign, dataTypeDatastream));
             if (pluginMultiDatastream != null) {
                 final DataType dataTypeMultiDatastream = tableCollection.getTableForType(pluginMultiDatastream.etMultiDatastream).getPkFields().get(0).getDataType();
                 tableCollection.registerTable(new TableImpCampaignsMultiDatastreams(dataTypeCampaign, dataTypeMultiDatastream));
             }
 
+            OwnershipSecurityWrapper relationsVisibility = null;
+            if (enforceReadOwnership) {
+                final OwnershipSecurityWrapper partyWrapper = new OwnershipSecurityWrapper(OwnershipSecurityWrapper.Target.PARTY, pluginMultiDatastream);
+                tableGroups.setSecurityWrapper(partyWrapper);
+                tableCampaigns.setSecurityWrapper(partyWrapper);
+                relationsVisibility = new OwnershipSecurityWrapper(OwnershipSecurityWrapper.Target.RELATION, pluginMultiDatastream);
+                tableRelations.setSecurityWrapper(relationsVisibility);
+            }
+
+            licenseCatalogue = new LicenseCatalogue(etLicense, LICENSE_IDS);
+            if (relationGraphEnabled)
+                relationGraph = new RelationGraph(tableCollection, relationTraversalMaxDepth, relationsVisibility);
+            if (relationsClosureEnabled)
+                relationClosure = new RelationClosure(tableCollection, relationTraversalMaxDepth);
+
             /*
              * Table Helpers
              */
@@ -746,12 +1181,48 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
             new TableHelperFeatureOfInterest(settings, ppm).registerPreHooks();
             new TableHelperLicense(settings, ppm).registerPreHooks();
             new TableHelperCampaign(settings, ppm).registerPreHooks();
-            new TableHelperRelation(settings, ppm).registerPreHooks();
+            tableHelperRelation = new TableHelperRelation(settings, ppm);
+            tableHelperRelation.registerPreHooks();
+            if (bulkRelationsEnabled)
+                relationImporter = new RelationImporter(tableCollection, relationClosure, bulkRelationsBatchSize);
+            if (exportEnabled)
+                exporter = new NdjsonExporter(tableCollection, pluginMultiDatastream, enforceReadOwnership, exportFetchSize);
+
+            if (ownershipVerdictCache != null) {
+                final Set<EntityType> ownedTypes = new HashSet<>(List.of(pluginCoreModel.etThing, pluginCoreModel.etDatastream, etGroup, etCampaign));
+                if (pluginMultiDatastream != null)
+                    ownedTypes.add(pluginMultiDatastream.etMultiDatastream);
+                addMessageListener(new OwnershipVerdictInvalidator(ownershipVerdictCache, ownedTypes, etParty));
+            }
+
+            try {
+                licenseCatalogue.preload(ppm);
+            } catch (DataAccessException | IllegalArgumentException e) {
+                LOGGER.warn("Failed to preload the Licenses, database not up to date? " + e.getMessage());
+            }
+            addMessageListener(licenseCatalogue);
+
+            if (campaignLifecycle != null) {
+                try {
+                    campaignLifecycle.load(ppm, tableCampaigns);
+                } catch (DataAccessException e) {
+                    LOGGER.warn("Failed to load the end times of the Campaigns, database not up to date? " + e.getMessage());
+                }
+                addMessageListener(campaignLifecycle);
+            }
         }
         fullyInitialised = true;
         return true;
     }
 
+    private void addMessageListener(MessageListener listener) {
+        try {
+            MessageBusFactory.getMessageBus().addMessageListener(listener);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Message bus not available, changes made on other nodes are not seen by " + listener.getClass().getSimpleName());
+        }
+    }
+
     public Map<String, Object> createLiqibaseParams(JooqPersistenceManager ppm, Map<String, Object> target) {
         if (target == null) {
             target = new LinkedHashMap<>();
@@ -768,6 +1239,15 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
         ppm.generateLiquibaseVariables(target, "Party", plusSettings.idTypeParty);
         ppm.generateLiquibaseVariables(target, "Campaign", plusSettings.idTypeCampaign);
         ppm.generateLiquibaseVariables(target, "Relation", plusSettings.idTypeRelation);
+        // The optional indexes in indexes.xml are only created if this is "true"
+        target.put(LIQUIBASE_PARAM_FOREIGN_KEY_INDEXES, Boolean.toString(foreignKeyIndexes));
+        // The triggers in statistics.xml are only installed if this is "true"
+        target.put(LIQUIBASE_PARAM_MEMBERSHIP_STATISTICS, Boolean.toString(membershipStatistics));
+        target.put(LIQUIBASE_PARAM_RELATIONS_CLOSURE, Boolean.toString(relationsClosureEnabled));
+        // Selects the optional variant in tableGroupsObservationsPartitioned.xml
+        target.put(LIQUIBASE_PARAM_GROUPS_OBSERVATIONS_PARTITIONING, groupsObservationsPartitioning);
+        target.put(LIQUIBASE_PARAM_GROUPS_OBSERVATIONS_PARTITIONS, Integer.toString(groupsObservationsPartitions));
+        target.put(LIQUIBASE_PARAM_GROUPS_OBSERVATIONS_PARTITION_SIZE, Integer.toString(groupsObservationsPartitionSize));
 
         return target;
     }
@@ -776,21 +1256,76 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
     public String checkForUpgrades() {
         PersistenceManager pm = PersistenceManagerFactory.getInstance(settings).create();
         if (pm instanceof JooqPersistenceManager ppm) {
-            return ppm.checkForUpgrades(LIQUIBASE_CHANGELOG_FILENAME, createLiqibaseParams(ppm, null));
+            final String upgrades = ppm.checkForUpgrades(LIQUIBASE_CHANGELOG_FILENAME, createLiqibaseParams(ppm, null));
+            if (isRelationClosureRebuildDue())
+                return upgrades + "\nRELATIONS_CLOSURE will be rebuilt from the Relations.";
+            return upgrades;
         }
         return "Unknown persistence manager class";
     }
 
     @Override
     public boolean doUpgrades(Writer out) throws UpgradeFailedException, IOException {
+        // Decided before the upgrade, which may create the table
+        final boolean rebuildRelationClosure = isRelationClosureRebuildDue();
         PersistenceManager pm = PersistenceManagerFactory.getInstance(settings).create();
         if (pm instanceof JooqPersistenceManager ppm) {
-            return ppm.doUpgrades(LIQUIBASE_CHANGELOG_FILENAME, createLiqibaseParams(ppm, null), out);
+            if (!ppm.doUpgrades(LIQUIBASE_CHANGELOG_FILENAME, createLiqibaseParams(ppm, null), out))
+                return false;
+            if (rebuildRelationClosure)
+                return rebuildRelationClosure(ppm, out);
+            return true;
         }
         out.append("Unknown persistence manager class");
         return false;
     }
 
+    /**
+     * RELATIONS_CLOSURE is backfilled when the upgrade creates it, and
+     * repaired on request with plugins.staplus.relationsClosure.rebuild, for
+     * instance after Observations were deleted by a cascade.
+     */
+    private boolean isRelationClosureRebuildDue() {
+        if (!relationsClosureEnabled || relationClosure == null)
+            return false;
+        if (relationsClosureRebuild)
+            return true;
+
+        PersistenceManager pm = PersistenceManagerFactory.getInstance(settings).create();
+        try {
+            return (pm instanceof JooqPersistenceManager ppm) && !relationClosure.tableExists(ppm);
+        } finally {
+            pm.close();
+        }
+    }
+
+    /**
+     * Backfills RELATIONS_CLOSURE from the Relations.
+     */
+    private boolean rebuildRelationClosure(JooqPersistenceManager ppm, Writer out) throws IOException {
+        try {
+            final int rows = relationClosure.rebuild(ppm);
+            ppm.commitAndClose();
+            out.append("Rebuilt RELATIONS_CLOSURE with ").append(Integer.toString(rows)).append(" rows.\n");
+            return true;
+        } catch (DataAccessException e) {
+            ppm.rollbackAndClose();
+            LOGGER.error("Failed to rebuild RELATIONS_CLOSURE", e);
+            out.append("Failed to rebuild RELATIONS_CLOSURE: ").append(e.getMessage()).append('\n');
+            return false;
+        }
+    }
+
+    /**
+     * @return true if GROUPS_OBSERVATIONS uses the "hash" partitioning, where
+     * large Groups can have a dedicated partition and all other Groups are
+     * hash partitioned, so that deleting a Group can drop its dedicated
+     * partition.
+     */
+    public boolean isGroupsObservationsHashPartitioned() {
+        return "hash".equals(groupsObservationsPartitioning);
+    }
+
     public boolean isEnforceOwnershipEnabled() {
         return enforceOwnership;
     }
@@ -803,10 +1338,90 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
         return enforceGroupLicensing;
     }
 
+    /**
+     * @return true if the member counters of ObservationGroups and Campaigns
+     * are maintained by the database.
+     */
+    public boolean isMembershipStatisticsEnabled() {
+        return membershipStatistics;
+    }
+
     public URL getLicenseDomain() {
         return licenseDomain;
     }
 
+    /**
+     * @return the hook metrics, or null if not enabled.
+     */
+    public HookMetrics getHookMetrics() {
+        return hookMetrics;
+    }
+
+    /**
+     * @return the audit trail, or null if not enabled.
+     */
+    public AuditTrail getAuditTrail() {
+        return auditTrail;
+    }
+
+    /**
+     * @return the Campaign lifecycle service, or null if disabled.
+     */
+    public CampaignLifecycle getCampaignLifecycle() {
+        return campaignLifecycle;
+    }
+
+    /**
+     * Stops the background services of the plugin: the extension of the
+     * GROUPS_OBSERVATIONS partitions, the Campaign lifecycle and, last, the
+     * audit trail, which writes its remaining records. Called by
+     * {@link PluginPlusContextListener} when the web application is stopped.
+     */
+    public void close() {
+        if (partitionExtender != null)
+            partitionExtender.close();
+        if (campaignLifecycle != null)
+            campaignLifecycle.close();
+        if (auditTrail != null)
+            auditTrail.close();
+    }
+
+    public boolean isRelationsClosureEnabled() {
+        return relationsClosureEnabled;
+    }
+
+    /**
+     * @return the maintainer of RELATIONS_CLOSURE, or null if the closure is
+     * not enabled.
+     */
+    public RelationClosure getRelationClosure() {
+        return relationClosure;
+    }
+
+    /**
+     * @return the node-wide cache of ownership verdicts, or null if disabled.
+     */
+    public OwnershipVerdictCache getOwnershipVerdictCache() {
+        return ownershipVerdictCache;
+    }
+
+    private EntityValidator timed(EntityType entityType, String hookName, EntityValidator validator) {
+        final EntityValidator audited = (auditTrail == null) ? validator : auditTrail.validator(entityType, hookName, validator);
+        return (hookMetrics == null) ? audited : hookMetrics.validator(entityType, hookName, audited);
+    }
+
+    public int getGroupMembershipBatchSize() {
+        return groupMembershipBatchSize;
+    }
+
+    public LicenseCatalogue getLicenseCatalogue() {
+        return licenseCatalogue;
+    }
+
+    public LicenseCompatibility getLicenseCompatibility() {
+        return licenseCompatibility;
+    }
+
     private boolean isAdmin(Principal principal) {
         if (principal == null)
             return false;
@@ -815,6 +1430,13 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
 
     }
 
+    private void assertReadOnly(Entity entity, Property<?>... properties) {
+        for (Property<?> property : properties) {
+            if (entity.isSetProperty(property))
+                throw new IllegalArgumentException("Property '" + property.getName() + "' is read-only.");
+        }
+    }
+
     private void assertPrincipal(Principal principal) {
         if (principal == null)
             throw new UnauthorizedException("No Principal");
@@ -829,7 +1451,7 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
 
     private void assertOwnership(Entity entity, Entity party, Principal principal) {
         assertPrincipal(principal);
-        String principalId = principal.getName();
+        String principalId = AuthIds.normalise(principal);
 
         if (party != null) {
             PkValue partyId = party.getPrimaryKeyValues();
@@ -850,7 +1472,7 @@ public class PluginPLUS implements PluginRootDocument, PluginModel, LiquibaseUse
             if (authId != null)
                 party.setPrimaryKeyValues(PkValue.of(authId));
 
-            String userId = principal.getName();
+            String userId = principalId;
             if (!userId.equalsIgnoreCase(party.getPrimaryKeyValues().get(0).toString())) {
                 // The Id of the Party must match the userId
                 // Entity can only be associated to the Party identifying the acting user
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus;
+
+import de.fraunhofer.iosb.ilt.frostserver.settings.CoreSettings;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+import java.util.Collections;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops the background services of the STAplus plugin when the web
+ * application is stopped, while the database is still available. The plugin
+ * is found through the CoreSettings that FROST-Server keeps in the servlet
+ * context. Registered with the servlet container by annotation; an embedding
+ * application that does not scan the annotations registers it after the
+ * FROST-Server context listener.
+ */
+@WebListener
+public class PluginPlusContextListener implements ServletContextListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PluginPlusContextListener.class.getName());
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        // The plugin is initialised by FROST-Server.
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        final ServletContext context = sce.getServletContext();
+        for (String name : Collections.list(context.getAttributeNames())) {
+            if (context.getAttribute(name) instanceof CoreSettings settings) {
+                final PluginPLUS plugin = settings.getPluginManager().getPlugin(PluginPLUS.class);
+                if (plugin != null && plugin.isEnabled()) {
+                    LOGGER.info("Stopping the STAplus background services.");
+                    plugin.close();
+                }
+            }
+        }
+    }
+
+}
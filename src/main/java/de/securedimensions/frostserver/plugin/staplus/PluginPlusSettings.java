@@ -23,6 +23,7 @@ import de.fraunhofer.iosb.ilt.frostserver.settings.CoreSettings;
 import de.fraunhofer.iosb.ilt.frostserver.settings.Settings;
 import de.fraunhofer.iosb.ilt.frostserver.settings.annotation.DefaultValue;
 import de.fraunhofer.iosb.ilt.frostserver.settings.annotation.DefaultValueBoolean;
+import de.fraunhofer.iosb.ilt.frostserver.settings.annotation.DefaultValueInt;
 
 /**
  * @author hylke
@@ -37,9 +38,59 @@ public final class PluginPlusSettings implements ConfigDefaults {
     public static final String TAG_ENABLE_ENFORCE_LICENSING = "staplus.enable.enforceLicensing";
     @DefaultValueBoolean(false)
     public static final String TAG_ENABLE_ENFORCE_GROUP_LICENSING = "staplus.enable.enforceObservationGroupLicensing";
+    @DefaultValueBoolean(false)
+    public static final String TAG_ENABLE_ENFORCE_READ_OWNERSHIP = "staplus.enable.enforceReadOwnership";
+    @DefaultValueBoolean(false)
+    public static final String TAG_ENABLE_AUDIT = "staplus.enable.audit";
+    @DefaultValueInt(65536)
+    public static final String TAG_AUDIT_BUFFER_SIZE = "staplus.audit.bufferSize";
+    @DefaultValueInt(1000)
+    public static final String TAG_AUDIT_FLUSH_INTERVAL = "staplus.audit.flushInterval";
+    @DefaultValueInt(10000)
+    public static final String TAG_OWNERSHIP_CACHE_SIZE = "staplus.ownershipCache.size";
+    @DefaultValueInt(300)
+    public static final String TAG_OWNERSHIP_CACHE_TTL = "staplus.ownershipCache.ttl";
+    @DefaultValueBoolean(false)
+    public static final String TAG_ENABLE_CAMPAIGN_LIFECYCLE = "staplus.enable.campaignLifecycle";
+    @DefaultValueInt(1000)
+    public static final String TAG_CAMPAIGN_LIFECYCLE_TICK = "staplus.campaignLifecycle.tick";
+    @DefaultValueBoolean(false)
+    public static final String TAG_ENABLE_HOOK_METRICS = "staplus.enable.hookMetrics";
+    @DefaultValueBoolean(false)
+    public static final String TAG_ENABLE_FOREIGN_KEY_INDEXES = "staplus.enable.foreignKeyIndexes";
+    @DefaultValueBoolean(false)
+    public static final String TAG_ENABLE_MEMBERSHIP_STATISTICS = "staplus.enable.membershipStatistics";
+    @DefaultValueInt(1000)
+    public static final String TAG_GROUP_MEMBERSHIP_BATCH_SIZE = "staplus.groupMembership.batchSize";
+    @DefaultValueBoolean(false)
+    public static final String TAG_ENABLE_BULK_RELATIONS = "staplus.enable.bulkRelations";
+    @DefaultValueInt(1000)
+    public static final String TAG_BULK_RELATIONS_BATCH_SIZE = "staplus.bulkRelations.batchSize";
+    @DefaultValueBoolean(false)
+    public static final String TAG_ENABLE_EXPORT = "staplus.enable.export";
+    @DefaultValueInt(10000)
+    public static final String TAG_EXPORT_FETCH_SIZE = "staplus.export.fetchSize";
+    @DefaultValueBoolean(false)
+    public static final String TAG_ENABLE_RELATION_GRAPH = "staplus.enable.relationGraph";
+    @DefaultValueInt(50)
+    public static final String TAG_RELATION_TRAVERSAL_MAX_DEPTH = "staplus.relationTraversal.maxDepth";
+    @DefaultValueBoolean(false)
+    public static final String TAG_ENABLE_RELATIONS_CLOSURE = "staplus.enable.relationsClosure";
+    @DefaultValueBoolean(false)
+    public static final String TAG_RELATIONS_CLOSURE_REBUILD = "staplus.relationsClosure.rebuild";
+    @DefaultValue("none")
+    public static final String TAG_GROUPS_OBSERVATIONS_PARTITIONING = "staplus.groupsObservations.partitioning";
+    @DefaultValueInt(16)
+    public static final String TAG_GROUPS_OBSERVATIONS_PARTITIONS = "staplus.groupsObservations.partitions";
+    @DefaultValueInt(10000000)
+    public static final String TAG_GROUPS_OBSERVATIONS_PARTITION_SIZE = "staplus.groupsObservations.partitionSize";
+    @DefaultValueInt(600000)
+    public static final String TAG_GROUPS_OBSERVATIONS_EXTEND_INTERVAL = "staplus.groupsObservations.extendInterval";
     @DefaultValue("https://creativecommons.org")
     public static final String TAG_ENABLE_LICENSE_DOMAIN = "staplus.licenseDomain";
     @DefaultValue("")
+    public static final String TAG_LICENSE_COMPATIBILITY = "staplus.licenseCompatibility";
+    @DefaultValue("")
     public static final String TAG_ID_TYPE_GROUP = "staplus.idType.observation_group";
     @DefaultValue("")
     public static final String TAG_ID_TYPE_LICENSE = "staplus.idType.license";
@@ -101,6 +101,30 @@ public class TableImpCampaign extends StaTableAbstract<TableImpCampaign> {
      */
     public final TableField<Record, Moment> colCreationTime = createField(DSL.name("CREATION_TIME"), SQLDataType.TIMESTAMP, this, "", MomentBinding.instance());
 
+    /**
+     * The column <code>public.CAMPAIGN.DATASTREAM_COUNT</code>, maintained by
+     * the database.
+     */
+    public final TableField<Record, Long> colDatastreamCount = createField(DSL.name("DATASTREAM_COUNT"), SQLDataType.BIGINT, this);
+
+    /**
+     * The column <code>public.CAMPAIGN.MULTI_DATASTREAM_COUNT</code>,
+     * maintained by the database.
+     */
+    public final TableField<Record, Long> colMultiDatastreamCount = createField(DSL.name("MULTI_DATASTREAM_COUNT"), SQLDataType.BIGINT, this);
+
+    /**
+     * The column <code>public.CAMPAIGN.PHENOMENON_TIME_START</code>,
+     * maintained by the database.
+     */
+    public final TableField<Record, Moment> colPhenomenonTimeStart = createField(DSL.name("PHENOMENON_TIME_START"), SQLDataType.TIMESTAMP, this, "", MomentBinding.instance());
+
+    /**
+     * The column <code>public.CAMPAIGN.PHENOMENON_TIME_END</code>, maintained
+     * by the database.
+     */
+    public final TableField<Record, Moment> colPhenomenonTimeEnd = createField(DSL.name("PHENOMENON_TIME_END"), SQLDataType.TIMESTAMP, this, "", MomentBinding.instance());
+
     /**
      * The column <code>public.CAMPAIGN.EP_ID</code>.
      */
@@ -218,6 +242,13 @@ public class TableImpCampaign extends StaTableAbstract<TableImpCampaign> {
         pfReg.addEntry(pluginPLUS.epCampaignEndTime, table -> table.colEndTime,
                 new ConverterTimeInstant<>(pluginPLUS.epCampaignEndTime, table -> table.colEndTime));
 
+        pfReg.addEntrySimple(pluginPLUS.epCampaignDatastreamCount, table -> table.colDatastreamCount);
+        pfReg.addEntrySimple(pluginPLUS.epCampaignMultiDatastreamCount, table -> table.colMultiDatastreamCount);
+        pfReg.addEntry(pluginPLUS.epCampaignPhenomenonTimeStart, table -> table.colPhenomenonTimeStart,
+                new ConverterTimeInstant<>(pluginPLUS.epCampaignPhenomenonTimeStart, table -> table.colPhenomenonTimeStart));
+        pfReg.addEntry(pluginPLUS.epCampaignPhenomenonTimeEnd, table -> table.colPhenomenonTimeEnd,
+                new ConverterTimeInstant<>(pluginPLUS.epCampaignPhenomenonTimeEnd, table -> table.colPhenomenonTimeEnd));
+
         pfReg.addEntry(pluginPLUS.npDatastreamsCampaign, TableImpCampaign::getId);
         TableImpDatastreams tableDatastreams = tables.getTableForClass(TableImpDatastreams.class);
         tableDatastreams.getPropertyFieldRegistry()
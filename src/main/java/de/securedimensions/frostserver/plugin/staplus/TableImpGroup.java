@@ -94,6 +94,30 @@ public class TableImpGroup extends StaTableAbstract<TableImpGroup> {
      */
     public final TableField<Record, String> colPrivacyPolicy = createField(DSL.name("PRIVACY_POLICY"), SQLDataType.CLOB, this);
 
+    /**
+     * The column <code>public.GROUPS.MEMBER_COUNT</code>, maintained by the
+     * database.
+     */
+    public final TableField<Record, Long> colMemberCount = createField(DSL.name("MEMBER_COUNT"), SQLDataType.BIGINT, this);
+
+    /**
+     * The column <code>public.GROUPS.DATASTREAM_COUNT</code>, maintained by
+     * the database.
+     */
+    public final TableField<Record, Long> colDatastreamCount = createField(DSL.name("DATASTREAM_COUNT"), SQLDataType.BIGINT, this);
+
+    /**
+     * The column <code>public.GROUPS.PHENOMENON_TIME_START</code>, maintained
+     * by the database.
+     */
+    public final TableField<Record, Moment> colPhenomenonTimeStart = createField(DSL.name("PHENOMENON_TIME_START"), SQLDataType.TIMESTAMP, this, "", MomentBinding.instance());
+
+    /**
+     * The column <code>public.GROUPS.PHENOMENON_TIME_END</code>, maintained
+     * by the database.
+     */
+    public final TableField<Record, Moment> colPhenomenonTimeEnd = createField(DSL.name("PHENOMENON_TIME_END"), SQLDataType.TIMESTAMP, this, "", MomentBinding.instance());
+
     /**
      * The column <code>public.GROUPS.EP_ID</code>.
      */
@@ -228,6 +252,13 @@ public class TableImpGroup extends StaTableAbstract<TableImpGroup> {
         pfReg.addEntry(pluginPLUS.epGroupEndTime, table -> table.colEndTime,
                 new ConverterTimeInstant<>(pluginPLUS.epGroupEndTime, table -> table.colEndTime));
 
+        pfReg.addEntrySimple(pluginPLUS.epGroupMemberCount, table -> table.colMemberCount);
+        pfReg.addEntrySimple(pluginPLUS.epGroupDatastreamCount, table -> table.colDatastreamCount);
+        pfReg.addEntry(pluginPLUS.epGroupPhenomenonTimeStart, table -> table.colPhenomenonTimeStart,
+                new ConverterTimeInstant<>(pluginPLUS.epGroupPhenomenonTimeStart, table -> table.colPhenomenonTimeStart));
+        pfReg.addEntry(pluginPLUS.epGroupPhenomenonTimeEnd, table -> table.colPhenomenonTimeEnd,
+                new ConverterTimeInstant<>(pluginPLUS.epGroupPhenomenonTimeEnd, table -> table.colPhenomenonTimeEnd));
+
         // Register with Observations
         pfReg.addEntry(pluginPLUS.npObservationsGroup, TableImpGroup::getId);
 
@@ -25,6 +25,7 @@ import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceMana
 import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.bindings.JsonBinding;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.bindings.JsonValue;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.EntityFactories;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.relations.RelationManyToMany;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.relations.RelationOneToMany;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.tables.StaMainTable;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.tables.StaTableAbstract;
@@ -141,6 +142,20 @@ public class TableImpRelation extends StaTableAbstract<TableImpRelation> {
                 .setSourceFieldAccessor(TableImpObservations::getId)
                 .setTargetFieldAccessor(TableImpRelation::getObjectId));
 
+        if (pluginPLUS.isRelationsClosureEnabled()) {
+            final TableImpRelationsClosure tableClosure = tables.getTableForClass(TableImpRelationsClosure.class);
+            tableObservations.registerRelation(new RelationManyToMany<>(pluginPLUS.npTransitiveObjectsObservation, tableObservations, tableClosure, tableObservations)
+                    .setSourceFieldAcc(TableImpObservations::getId)
+                    .setSourceLinkFieldAcc(TableImpRelationsClosure::getAncestorId)
+                    .setTargetLinkFieldAcc(TableImpRelationsClosure::getDescendantId)
+                    .setTargetFieldAcc(TableImpObservations::getId));
+            tableObservations.registerRelation(new RelationManyToMany<>(pluginPLUS.npTransitiveSubjectsObservation, tableObservations, tableClosure, tableObservations)
+                    .setSourceFieldAcc(TableImpObservations::getId)
+                    .setSourceLinkFieldAcc(TableImpRelationsClosure::getDescendantId)
+                    .setTargetLinkFieldAcc(TableImpRelationsClosure::getAncestorId)
+                    .setTargetFieldAcc(TableImpObservations::getId));
+        }
+
     }
 
     @Override
@@ -166,6 +181,13 @@ public class TableImpRelation extends StaTableAbstract<TableImpRelation> {
         tableObservations.getPropertyFieldRegistry()
                 .addEntry(pluginPLUS.npObjectsObservation, TableImpObservations::getId);
 
+        if (pluginPLUS.isRelationsClosureEnabled()) {
+            tableObservations.getPropertyFieldRegistry()
+                    .addEntry(pluginPLUS.npTransitiveObjectsObservation, TableImpObservations::getId);
+            tableObservations.getPropertyFieldRegistry()
+                    .addEntry(pluginPLUS.npTransitiveSubjectsObservation, TableImpObservations::getId);
+        }
+
     }
 
     @Override
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus;
+
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.tables.StaLinkTable;
+import org.jooq.DataType;
+import org.jooq.Name;
+import org.jooq.Record;
+import org.jooq.TableField;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+
+public class TableImpRelationsClosure extends StaLinkTable<TableImpRelationsClosure> {
+
+    public static final String NAME_TABLE = "RELATIONS_CLOSURE";
+    public static final String NAME_COL_ANCESTOR_ID = "ANCESTOR_ID";
+    public static final String NAME_COL_DESCENDANT_ID = "DESCENDANT_ID";
+    public static final String NAME_COL_DEPTH = "DEPTH";
+
+    private static final long serialVersionUID = 1626971276;
+
+    /**
+     * The column <code>public.RELATIONS_CLOSURE.ANCESTOR_ID</code>, the
+     * Observation at the Subject end of the chain of Relations.
+     */
+    public final TableField<Record, ?> colAncestorId;
+
+    /**
+     * The column <code>public.RELATIONS_CLOSURE.DESCENDANT_ID</code>, the
+     * Observation at the Object end of the chain of Relations.
+     */
+    public final TableField<Record, ?> colDescendantId;
+
+    /**
+     * The column <code>public.RELATIONS_CLOSURE.DEPTH</code>, the number of
+     * Relations in the shortest chain.
+     */
+    public final TableField<Record, Integer> colDepth = createField(DSL.name(NAME_COL_DEPTH), SQLDataType.INTEGER);
+
+    /**
+     * Create a <code>public.RELATIONS_CLOSURE</code> table reference.
+     *
+     * @param idTypeObs The (SQL)DataType of the Observation id columns used in
+     * the actual database.
+     */
+    public TableImpRelationsClosure(DataType<?> idTypeObs) {
+        super(DSL.name(NAME_TABLE), null);
+        colAncestorId = createField(DSL.name(NAME_COL_ANCESTOR_ID), idTypeObs);
+        colDescendantId = createField(DSL.name(NAME_COL_DESCENDANT_ID), idTypeObs);
+    }
+
+    private TableImpRelationsClosure(Name alias, TableImpRelationsClosure aliased) {
+        super(alias, aliased);
+        colAncestorId = createField(DSL.name(NAME_COL_ANCESTOR_ID), aliased.colAncestorId.getDataType());
+        colDescendantId = createField(DSL.name(NAME_COL_DESCENDANT_ID), aliased.colDescendantId.getDataType());
+    }
+
+    public TableField<Record, ?> getAncestorId() {
+        return colAncestorId;
+    }
+
+    public TableField<Record, ?> getDescendantId() {
+        return colDescendantId;
+    }
+
+    @Override
+    public TableImpRelationsClosure as(Name alias) {
+        return new TableImpRelationsClosure(alias, this).initCustomFields();
+    }
+
+    @Override
+    public TableImpRelationsClosure getThis() {
+        return this;
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import de.fraunhofer.iosb.ilt.frostserver.formatter.DefaultResultFormater;
+import de.fraunhofer.iosb.ilt.frostserver.formatter.FormatWrapper;
+import de.fraunhofer.iosb.ilt.frostserver.formatter.ResultFormatter;
+import de.fraunhofer.iosb.ilt.frostserver.json.serialize.JsonWriter;
+import de.fraunhofer.iosb.ilt.frostserver.model.EntityType;
+import de.fraunhofer.iosb.ilt.frostserver.model.core.Entity;
+import de.fraunhofer.iosb.ilt.frostserver.model.core.EntitySet;
+import de.fraunhofer.iosb.ilt.frostserver.model.core.PkValue;
+import de.fraunhofer.iosb.ilt.frostserver.path.ResourcePath;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.PersistenceManager;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.PersistenceManagerFactory;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.coremodel.PluginCoreModel;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.multidatastream.PluginMultiDatastream;
+import de.fraunhofer.iosb.ilt.frostserver.query.Query;
+import de.fraunhofer.iosb.ilt.frostserver.settings.CoreSettings;
+import de.fraunhofer.iosb.ilt.frostserver.util.exception.IncorrectRequestException;
+import de.securedimensions.frostserver.plugin.staplus.PluginPLUS;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The result format {@value #FORMAT_NAME}: the default JSON format, with the
+ * Licenses of all Observations in the response summarised in the top-level
+ * property {@value #KEY_ATTRIBUTION}. The Licenses are resolved with one
+ * query per (Multi)Datastream type for the distinct (Multi)Datastreams of the
+ * page, and read from the License catalogue, so the Observations do not need
+ * to expand their License. The queries use a short-lived PersistenceManager
+ * of their own, as the formatter runs after the request has read the
+ * Observations.
+ */
+public class AttributionResultFormatter implements ResultFormatter {
+
+    public static final String FORMAT_NAME = "attributed";
+    public static final String KEY_ATTRIBUTION = "@staplus.attribution";
+
+    private final CoreSettings settings;
+    private final PluginPLUS pluginPlus;
+    private final PluginCoreModel pluginCoreModel;
+    private final PluginMultiDatastream pluginMultiDatastream;
+    private final ResultFormatter delegate;
+
+    public AttributionResultFormatter(CoreSettings settings, PluginPLUS pluginPlus, PluginCoreModel pluginCoreModel, PluginMultiDatastream pluginMultiDatastream) {
+        this.settings = settings;
+        this.pluginPlus = pluginPlus;
+        this.pluginCoreModel = pluginCoreModel;
+        this.pluginMultiDatastream = pluginMultiDatastream;
+        this.delegate = new DefaultResultFormater(settings);
+    }
+
+    @Override
+    public void preProcessRequest(ResourcePath path, Query query) throws IncorrectRequestException {
+        delegate.preProcessRequest(path, query);
+    }
+
+    @Override
+    public FormatWrapper format(ResourcePath path, Query query, Object result, boolean useAbsoluteNavigationLinks) {
+        final FormatWrapper formatted = delegate.format(path, query, result, useAbsoluteNavigationLinks);
+        final List<Entity> observations = getObservations(result);
+        if (observations.isEmpty())
+            return formatted;
+
+        final String prefix;
+        try {
+            prefix = "{\"" + KEY_ATTRIBUTION + "\":" + JsonWriter.getObjectMapper().writeValueAsString(getAttribution(observations)) + ",";
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialise the License attribution", e);
+        }
+
+        return new FormatWrapper() {
+            @Override
+            public String getFormatted() {
+                final String json = formatted.getFormatted();
+                return prefix + json.substring(json.indexOf('{') + 1);
+            }
+
+            @Override
+            public void writeFormatted(Writer target) throws IOException {
+                target.write(prefix);
+                formatted.writeFormatted(new SkipOpeningBrace(target));
+            }
+        };
+    }
+
+    @Override
+    public String getContentType() {
+        return delegate.getContentType();
+    }
+
+    private List<Entity> getObservations(Object result) {
+        final List<Entity> observations = new ArrayList<>();
+        if (result instanceof EntitySet entitySet) {
+            for (Entity entity : entitySet) {
+                if (entity.getEntityType().equals(pluginCoreModel.etObservation))
+                    observations.add(entity);
+            }
+        } else if ((result instanceof Entity entity) && entity.getEntityType().equals(pluginCoreModel.etObservation)) {
+            observations.add(entity);
+        }
+        return observations;
+    }
+
+    private List<Map<String, Object>> getAttribution(List<Entity> observations) {
+        final Map<String, Object> datastreamIds = new HashMap<>();
+        final Map<String, Object> multiDatastreamIds = new HashMap<>();
+        for (Entity observation : observations) {
+            addId(datastreamIds, observation.getProperty(pluginCoreModel.npDatastreamObservation));
+            if (pluginMultiDatastream != null)
+                addId(multiDatastreamIds, observation.getProperty(pluginMultiDatastream.npMultiDatastreamObservation));
+        }
+
+        final PersistenceManager pm = PersistenceManagerFactory.getInstance(settings).create();
+        try {
+            if (!(pm instanceof JooqPersistenceManager ppm))
+                throw new IllegalStateException("Unknown persistence manager class");
+            return getAttribution(ppm, datastreamIds.values(), multiDatastreamIds.values());
+        } finally {
+            pm.close();
+        }
+    }
+
+    private List<Map<String, Object>> getAttribution(JooqPersistenceManager ppm, Collection<Object> datastreamIds, Collection<Object> multiDatastreamIds) {
+        final OwnershipResolver resolver = new OwnershipResolver(ppm.getTableCollection(), pluginPlus, pluginCoreModel, pluginMultiDatastream);
+        final Map<String, Object> licenseIds = new TreeMap<>();
+        addLicenses(licenseIds, resolver, ppm, pluginCoreModel.etDatastream, datastreamIds);
+        if (pluginMultiDatastream != null)
+            addLicenses(licenseIds, resolver, ppm, pluginMultiDatastream.etMultiDatastream, multiDatastreamIds);
+
+        final List<Map<String, Object>> attribution = new ArrayList<>(licenseIds.size());
+        for (Object licenseId : licenseIds.values()) {
+            final Entity license = pluginPlus.getLicenseCatalogue().get(ppm, PkValue.of(licenseId));
+            if (license == null)
+                continue;
+            final Map<String, Object> item = new LinkedHashMap<>();
+            item.put("@iot.id", licenseId);
+            item.put("name", license.getProperty(pluginCoreModel.epName));
+            item.put("attributionText", license.getProperty(pluginPlus.epLicenseAttributionText));
+            attribution.add(item);
+        }
+        return attribution;
+    }
+
+    private static void addId(Map<String, Object> ids, Entity entity) {
+        if ((entity == null) || (entity.getPrimaryKeyValues() == null))
+            return;
+        final Object id = entity.getPrimaryKeyValues().get(0);
+        if (id != null)
+            ids.putIfAbsent(id.toString(), id);
+    }
+
+    private static void addLicenses(Map<String, Object> licenseIds, OwnershipResolver resolver, JooqPersistenceManager pm, EntityType entityType, Collection<Object> ids) {
+        if (ids.isEmpty())
+            return;
+        for (Object licenseId : resolver.resolveLicenses(pm, entityType, ids).values()) {
+            if (licenseId != null)
+                licenseIds.putIfAbsent(licenseId.toString(), licenseId);
+        }
+    }
+
+    /**
+     * Drops the opening brace of the JSON object written by the default
+     * format, since the attribution already opened it.
+     */
+    private static class SkipOpeningBrace extends FilterWriter {
+
+        private boolean skipped;
+
+        SkipOpeningBrace(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            if (!skipped && c == '{') {
+                skipped = true;
+                return;
+            }
+            super.write(c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if (!skipped) {
+                final int end = off + len;
+                for (int i = off; i < end; i++) {
+                    if (cbuf[i] == '{') {
+                        skipped = true;
+                        super.write(cbuf, off, i - off);
+                        super.write(cbuf, i + 1, end - i - 1);
+                        return;
+                    }
+                }
+            }
+            super.write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            write(str.toCharArray(), off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // The target is closed by the caller
+            flush();
+        }
+    }
+
+}
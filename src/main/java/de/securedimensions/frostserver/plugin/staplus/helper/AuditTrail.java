@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import static de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.HookPreInsert.Phase.PRE_RELATIONS;
+
+import de.fraunhofer.iosb.ilt.frostserver.model.EntityType;
+import de.fraunhofer.iosb.ilt.frostserver.model.EntityValidator;
+import de.fraunhofer.iosb.ilt.frostserver.model.core.PkValue;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.PersistenceManager;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.PersistenceManagerFactory;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.HookPreDelete;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.HookPreInsert;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.HookPreUpdate;
+import de.fraunhofer.iosb.ilt.frostserver.service.ServiceRequest;
+import de.fraunhofer.iosb.ilt.frostserver.settings.CoreSettings;
+import de.fraunhofer.iosb.ilt.frostserver.util.exception.ForbiddenException;
+import de.fraunhofer.iosb.ilt.frostserver.util.exception.UnauthorizedException;
+import java.security.Principal;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.jooq.Field;
+import org.jooq.InsertValuesStep7;
+import org.jooq.Record;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Audit trail of the ownership and licensing decisions taken by the STAplus
+ * hooks and validators. Each decision is put into a lock-free ring buffer on
+ * the request thread; a background thread drains the buffer and writes the
+ * records to the AUDIT table in batches. If the buffer is full, records are
+ * dropped and counted instead of blocking the request.
+ */
+public class AuditTrail {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuditTrail.class.getName());
+    private static final int BATCH_SIZE = 1000;
+
+    private static final Table<Record> TABLE_AUDIT = DSL.table(DSL.name("AUDIT"));
+    private static final Field<OffsetDateTime> COL_TIME = DSL.field(DSL.name("TIME"), SQLDataType.TIMESTAMPWITHTIMEZONE);
+    private static final Field<String> COL_PRINCIPAL = DSL.field(DSL.name("PRINCIPAL"), SQLDataType.CLOB);
+    private static final Field<String> COL_ENTITY_TYPE = DSL.field(DSL.name("ENTITY_TYPE"), SQLDataType.CLOB);
+    private static final Field<String> COL_ENTITY_ID = DSL.field(DSL.name("ENTITY_ID"), SQLDataType.CLOB);
+    private static final Field<String> COL_HOOK = DSL.field(DSL.name("HOOK"), SQLDataType.CLOB);
+    private static final Field<String> COL_OUTCOME = DSL.field(DSL.name("OUTCOME"), SQLDataType.CLOB);
+    private static final Field<String> COL_MESSAGE = DSL.field(DSL.name("MESSAGE"), SQLDataType.CLOB);
+
+    private final CoreSettings settings;
+    private final RingBuffer buffer;
+    private final ScheduledExecutorService writer;
+    private final LongAdder written = new LongAdder();
+
+    public AuditTrail(CoreSettings settings, int bufferSize, long flushIntervalMillis) {
+        if (flushIntervalMillis < 1)
+            throw new IllegalArgumentException("Flush interval must be positive");
+        this.settings = settings;
+        this.buffer = new RingBuffer(bufferSize);
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "STAplus-AuditWriter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public HookPreInsert preInsert(EntityType entityType, HookPreInsert hook) {
+        return (phase, pm, entity, insertFields) -> {
+            try {
+                final boolean result = hook.insertIntoDatabase(phase, pm, entity, insertFields);
+                if (phase != PRE_RELATIONS)
+                    record(entityType, entity.getPrimaryKeyValues(), HookMetrics.HOOK_PRE_INSERT, Outcome.ALLOWED, null);
+                return result;
+            } catch (RuntimeException e) {
+                record(entityType, entity.getPrimaryKeyValues(), HookMetrics.HOOK_PRE_INSERT, Outcome.of(e), e.getMessage());
+                throw e;
+            }
+        };
+    }
+
+    public HookPreUpdate preUpdate(EntityType entityType, HookPreUpdate hook) {
+        return (pm, entity, entityId, updateMode) -> {
+            try {
+                hook.updateInDatabase(pm, entity, entityId, updateMode);
+                record(entityType, entityId, HookMetrics.HOOK_PRE_UPDATE, Outcome.ALLOWED, null);
+            } catch (RuntimeException e) {
+                record(entityType, entityId, HookMetrics.HOOK_PRE_UPDATE, Outcome.of(e), e.getMessage());
+                throw e;
+            }
+        };
+    }
+
+    public HookPreDelete preDelete(EntityType entityType, HookPreDelete hook) {
+        return (pm, entityId) -> {
+            try {
+                hook.delete(pm, entityId);
+                record(entityType, entityId, HookMetrics.HOOK_PRE_DELETE, Outcome.ALLOWED, null);
+            } catch (RuntimeException e) {
+                record(entityType, entityId, HookMetrics.HOOK_PRE_DELETE, Outcome.of(e), e.getMessage());
+                throw e;
+            }
+        };
+    }
+
+    public EntityValidator validator(EntityType entityType, String hookName, EntityValidator validator) {
+        return entity -> {
+            try {
+                validator.validate(entity);
+                record(entityType, entity.getPrimaryKeyValues(), hookName, Outcome.ALLOWED, null);
+            } catch (RuntimeException e) {
+                record(entityType, entity.getPrimaryKeyValues(), hookName, Outcome.of(e), e.getMessage());
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Returns a Campaign lifecycle listener that records the Campaigns closed
+     * by this node. The record has no principal, the Campaign is closed by
+     * the server.
+     *
+     * @param etCampaign the Campaign entity type.
+     * @return the listener.
+     */
+    public CampaignLifecycle.Listener campaignClosed(EntityType etCampaign) {
+        return (campaignId, endTime) -> buffer.offer(new AuditRecord(
+                Instant.now(),
+                null,
+                etCampaign.entityName,
+                Objects.toString(campaignId, null),
+                "campaignClosed",
+                Outcome.CLOSED,
+                "endTime " + endTime + " reached"));
+    }
+
+    /**
+     * @return the number of records that were dropped because the buffer was
+     * full.
+     */
+    public long getDropped() {
+        return buffer.getDropped();
+    }
+
+    /**
+     * @return the number of records written to the database.
+     */
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * Stops the background writer and writes the remaining records.
+     */
+    public void close() {
+        writer.shutdown();
+        try {
+            if (writer.awaitTermination(5, TimeUnit.SECONDS))
+                flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void record(EntityType entityType, PkValue entityId, String hook, Outcome outcome, String message) {
+        final ServiceRequest request = ServiceRequest.getLocalRequest();
+        final Principal principal = (request == null) ? null : request.getUserPrincipal();
+        final Object id = (entityId == null) ? null : entityId.get(0);
+        buffer.offer(new AuditRecord(
+                Instant.now(),
+                (principal == null) ? null : AuthIds.normalise(principal),
+                entityType.entityName,
+                Objects.toString(id, null),
+                hook,
+                outcome,
+                message));
+    }
+
+    private synchronized void flush() {
+        final List<AuditRecord> batch = new ArrayList<>(BATCH_SIZE);
+        if (buffer.drain(batch, BATCH_SIZE) == 0)
+            return;
+
+        final PersistenceManager pm = PersistenceManagerFactory.getInstance(settings).create();
+        if (!(pm instanceof JooqPersistenceManager ppm)) {
+            LOGGER.error("Audit trail requires a JooqPersistenceManager, dropping {} records", batch.size());
+            pm.close();
+            return;
+        }
+        try {
+            do {
+                insert(ppm, batch);
+                batch.clear();
+            } while (buffer.drain(batch, BATCH_SIZE) > 0);
+            pm.commitAndClose();
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to write the audit trail", e);
+            pm.rollbackAndClose();
+        }
+    }
+
+    private void insert(JooqPersistenceManager pm, List<AuditRecord> batch) {
+        InsertValuesStep7<Record, OffsetDateTime, String, String, String, String, String, String> insert = pm.getDslContext()
+                .insertInto(TABLE_AUDIT, COL_TIME, COL_PRINCIPAL, COL_ENTITY_TYPE, COL_ENTITY_ID, COL_HOOK, COL_OUTCOME, COL_MESSAGE);
+        for (AuditRecord r : batch) {
+            insert = insert.values(OffsetDateTime.ofInstant(r.time(), ZoneOffset.UTC), r.principal(), r.entityType(), r.entityId(), r.hook(), r.outcome().name(), r.message());
+        }
+        insert.execute();
+        written.add(batch.size());
+    }
+
+    /**
+     * The outcome of a decision.
+     */
+    public enum Outcome {
+        ALLOWED,
+        /**
+         * The request was rejected with a ForbiddenException.
+         */
+        FORBIDDEN,
+        /**
+         * The request was rejected with an UnauthorizedException.
+         */
+        UNAUTHORIZED,
+        /**
+         * The request was rejected for another reason, for example an
+         * incompatible License.
+         */
+        REJECTED,
+        /**
+         * A Campaign was closed because its endTime is reached.
+         */
+        CLOSED;
+
+        public static Outcome of(RuntimeException e) {
+            if (e instanceof ForbiddenException)
+                return FORBIDDEN;
+            if (e instanceof UnauthorizedException)
+                return UNAUTHORIZED;
+            return REJECTED;
+        }
+    }
+
+    /**
+     * One decision. The entityId is null for entities that do not have an id
+     * yet.
+     */
+    public static record AuditRecord(Instant time, String principal, String entityType, String entityId, String hook, Outcome outcome, String message) {
+    }
+
+    /**
+     * A bounded multi-producer, single-consumer ring buffer. Producers claim a
+     * slot with a CAS on the head sequence and publish the record into it; the
+     * consumer takes published records in sequence order and frees their
+     * slots before advancing the tail.
+     */
+    static class RingBuffer {
+
+        private final AtomicReferenceArray<AuditRecord> slots;
+        private final int mask;
+        private final AtomicLong head = new AtomicLong();
+        private final LongAdder dropped = new LongAdder();
+        private volatile long tail;
+
+        RingBuffer(int size) {
+            if (size < 2)
+                throw new IllegalArgumentException("Buffer size must be at least 2");
+            final int capacity = Integer.highestOneBit(size - 1) << 1;
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+
+        boolean offer(AuditRecord auditRecord) {
+            long seq;
+            do {
+                seq = head.get();
+                if (seq - tail > mask) {
+                    dropped.increment();
+                    return false;
+                }
+            } while (!head.compareAndSet(seq, seq + 1));
+            slots.set((int) (seq & mask), auditRecord);
+            return true;
+        }
+
+        int drain(List<AuditRecord> target, int max) {
+            long next = tail;
+            int count = 0;
+            while (count < max) {
+                final int idx = (int) (next & mask);
+                final AuditRecord auditRecord = slots.get(idx);
+                if (auditRecord == null)
+                    // Not yet published
+                    break;
+                slots.set(idx, null);
+                target.add(auditRecord);
+                next++;
+                count++;
+            }
+            tail = next;
+            return count;
+        }
+
+        long getDropped() {
+            return dropped.sum();
+        }
+    }
+
+}
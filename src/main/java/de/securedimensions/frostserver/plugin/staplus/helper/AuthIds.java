@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Normalises user names to the UUID format of Party.authId. A name that is a
+ * UUID is used as is, any other name is mapped to the name based UUID of its
+ * bytes. The results are kept in a bounded cache, so the MD5 hash is computed
+ * once per user name rather than on every request.
+ */
+public final class AuthIds {
+
+    /**
+     * The maximum number of cached user names. When reached, the cache is
+     * cleared.
+     */
+    public static final int MAX_CACHE_SIZE = 10_000;
+
+    private static final Map<String, String> CACHE = new ConcurrentHashMap<>();
+
+    private AuthIds() {
+        // Utility class.
+    }
+
+    /**
+     * Returns the authId of the acting user.
+     *
+     * @param principal the acting user.
+     * @return the authId of the user, or null if the principal has no name.
+     */
+    public static String normalise(Principal principal) {
+        return normalise(principal.getName());
+    }
+
+    /**
+     * Returns the authId for the user name.
+     *
+     * @param name the user name or authId.
+     * @return the name if it is a UUID, the name based UUID of the name
+     * otherwise. null if the name is null.
+     */
+    public static String normalise(String name) {
+        if (name == null)
+            return null;
+
+        String authId = CACHE.get(name);
+        if (authId == null) {
+            authId = isUuid(name) ? name : UUID.nameUUIDFromBytes(name.getBytes()).toString();
+            if (CACHE.size() >= MAX_CACHE_SIZE)
+                CACHE.clear();
+            CACHE.put(name, authId);
+        }
+        return authId;
+    }
+
+    /**
+     * Checks if the value is accepted by {@link UUID#fromString(String)},
+     * without throwing an exception for the common case of a plain user name.
+     *
+     * @param value the value to check.
+     * @return true if the value is a UUID.
+     */
+    public static boolean isUuid(String value) {
+        if (isCanonicalUuid(value))
+            return true;
+
+        // Only values with four dashes can be parsed as a UUID
+        if ((value.length() > 36) || (countDashes(value) != 4))
+            return false;
+
+        try {
+            UUID.fromString(value);
+            return true;
+        } catch (IllegalArgumentException exception) {
+            return false;
+        }
+    }
+
+    private static boolean isCanonicalUuid(String value) {
+        if (value.length() != 36)
+            return false;
+
+        for (int i = 0; i < 36; i++) {
+            char c = value.charAt(i);
+            if ((i == 8) || (i == 13) || (i == 18) || (i == 23)) {
+                if (c != '-')
+                    return false;
+            } else if (Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int countDashes(String value) {
+        int count = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '-')
+                count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import de.fraunhofer.iosb.ilt.frostserver.messagebus.EntityChangedMessage;
+import de.fraunhofer.iosb.ilt.frostserver.messagebus.MessageListener;
+import de.fraunhofer.iosb.ilt.frostserver.model.core.Entity;
+import de.fraunhofer.iosb.ilt.frostserver.model.ext.TimeInstant;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
+import de.securedimensions.frostserver.plugin.staplus.PluginPLUS;
+import de.securedimensions.frostserver.plugin.staplus.TableImpCampaign;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import net.time4j.Moment;
+import net.time4j.SystemClock;
+import org.jooq.Field;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Closes Campaigns once their endTime is reached. The upcoming end times are
+ * kept in memory, ordered by time, and a background thread moves the
+ * Campaigns that are due to the closed set. Write hooks test the closed set
+ * in constant time instead of loading the Campaign.
+ *
+ * The end times are loaded from the CAMPAIGNS table at startup and maintained
+ * from the entity change events of the message bus. The events are sent after
+ * the transaction is committed, so a rolled back update never changes the
+ * schedule, and they cover Campaigns created with a generated id and changes
+ * made on other nodes. The closed state is not persisted; every node derives
+ * it from the end times.
+ *
+ * The listeners are notified when a Campaign is closed while the server is
+ * running, not for the Campaigns that are already closed at startup. As every
+ * node closes the Campaigns itself, every node notifies its listeners.
+ */
+public class CampaignLifecycle implements MessageListener {
+
+    /**
+     * Notified when a Campaign is closed.
+     */
+    public interface Listener {
+
+        void campaignClosed(Object campaignId, Moment endTime);
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CampaignLifecycle.class.getName());
+
+    private final PluginPLUS pluginPlus;
+    private final TreeMap<Moment, Set<Object>> upcoming = new TreeMap<>();
+    private final Map<Object, Moment> endTimes = new HashMap<>();
+    private final Set<Object> closed = ConcurrentHashMap.newKeySet();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService timer;
+
+    public CampaignLifecycle(PluginPLUS pluginPlus, long tickMillis) {
+        if (tickMillis < 1)
+            throw new IllegalArgumentException("Tick interval must be positive");
+        this.pluginPlus = pluginPlus;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "STAplus-CampaignLifecycle");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::closeDue, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Loads the end times of all Campaigns that have one.
+     *
+     * @param pm the persistence manager to run the query with.
+     * @param table the Campaigns table.
+     */
+    public void load(JooqPersistenceManager pm, TableImpCampaign table) {
+        final Field<?> id = table.getPkFields().get(0);
+        HookMetrics.countDbCall();
+        pm.getDslContext()
+                .select(id, table.colEndTime)
+                .from(table)
+                .where(table.colEndTime.isNotNull())
+                .forEach(r -> schedule(r.value1(), r.value2(), false));
+        LOGGER.info("Loaded the end times of {} Campaigns, {} are closed", endTimes.size(), closed.size());
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param campaignId the primary key of the Campaign.
+     * @return true if the endTime of the Campaign is reached.
+     */
+    public boolean isClosed(Object campaignId) {
+        return closed.contains(campaignId);
+    }
+
+    /**
+     * Sets the end time of a Campaign, replacing the previous one. A Campaign
+     * whose end time is in the past is closed immediately, one whose end time
+     * is removed or moved to the future is open again.
+     *
+     * @param campaignId the primary key of the Campaign.
+     * @param endTime the new end time, or null if the Campaign has none.
+     */
+    public void schedule(Object campaignId, Moment endTime) {
+        schedule(campaignId, endTime, true);
+    }
+
+    private synchronized void schedule(Object campaignId, Moment endTime, boolean notify) {
+        // A Campaign that stays closed is not announced again
+        final boolean wasClosed = closed.contains(campaignId);
+        forget(campaignId);
+        if (endTime == null)
+            return;
+
+        endTimes.put(campaignId, endTime);
+        if (endTime.isAfter(SystemClock.currentMoment()))
+            upcoming.computeIfAbsent(endTime, k -> new HashSet<>()).add(campaignId);
+        else
+            close(campaignId, endTime, notify && !wasClosed);
+    }
+
+    /**
+     * Removes a Campaign, for instance because it is deleted.
+     *
+     * @param campaignId the primary key of the Campaign.
+     */
+    public synchronized void forget(Object campaignId) {
+        final Moment endTime = endTimes.remove(campaignId);
+        if (endTime != null) {
+            final Set<Object> due = upcoming.get(endTime);
+            if (due != null && due.remove(campaignId) && due.isEmpty())
+                upcoming.remove(endTime);
+        }
+        closed.remove(campaignId);
+    }
+
+    @Override
+    public void messageReceived(EntityChangedMessage message) {
+        final Entity entity = message.getEntity();
+        if (entity == null || !entity.getEntityType().equals(pluginPlus.etCampaign))
+            return;
+
+        final Object id = entity.getPrimaryKeyValues().get(0);
+        if (message.getEventType() == EntityChangedMessage.Type.DELETE) {
+            forget(id);
+        } else if (entity.isSetProperty(pluginPlus.epCampaignEndTime)) {
+            final TimeInstant endTime = entity.getProperty(pluginPlus.epCampaignEndTime);
+            schedule(id, (endTime == null) ? null : endTime.getDateTime());
+        }
+    }
+
+    /**
+     * Stops the background thread.
+     */
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private synchronized void closeDue() {
+        final Moment now = SystemClock.currentMoment();
+        Map.Entry<Moment, Set<Object>> due;
+        while ((due = upcoming.firstEntry()) != null && !due.getKey().isAfter(now)) {
+            upcoming.remove(due.getKey());
+            for (Object campaignId : due.getValue())
+                close(campaignId, due.getKey(), true);
+        }
+    }
+
+    private void close(Object campaignId, Moment endTime, boolean notify) {
+        if (!closed.add(campaignId) || !notify)
+            return;
+
+        LOGGER.info("Campaign {} closed, endTime {} reached", campaignId, endTime);
+        for (Listener listener : listeners) {
+            try {
+                listener.campaignClosed(campaignId, endTime);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Campaign lifecycle listener failed", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.tables.TableCollection;
+import de.securedimensions.frostserver.plugin.staplus.TableImpGroupsObservations;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.jooq.Field;
+import org.jooq.InsertValuesStep2;
+
+/**
+ * Links many Observations to an ObservationGroup at once. The rows of
+ * GROUPS_OBSERVATIONS are written with multi-row
+ * {@code INSERT ... ON CONFLICT DO NOTHING} statements of up to
+ * {@link #getBatchSize()} rows, so Observations that are already members of
+ * the Group are skipped.
+ */
+public class GroupMembershipLoader {
+
+    private final TableImpGroupsObservations tableGroupsObservations;
+    private final int batchSize;
+
+    public GroupMembershipLoader(TableCollection tables, int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive");
+        this.tableGroupsObservations = tables.getTableForClass(TableImpGroupsObservations.class);
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Adds the Observations to the Group. The caller is responsible for
+     * checking ownership and License compatibility.
+     *
+     * @param pm the persistence manager to run the statements with.
+     * @param groupId the primary key of the Group.
+     * @param observationIds the primary keys of the Observations.
+     * @return the number of new members.
+     */
+    public int addObservations(JooqPersistenceManager pm, Object groupId, Collection<?> observationIds) {
+        final Field groupField = tableGroupsObservations.getGroupId();
+        final Field observationField = tableGroupsObservations.getObservationId();
+
+        int inserted = 0;
+        final List<Object> batch = new ArrayList<>(Math.min(batchSize, observationIds.size()));
+        for (Object observationId : observationIds) {
+            batch.add(observationId);
+            if (batch.size() == batchSize) {
+                inserted += insert(pm, groupField, observationField, groupId, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty())
+            inserted += insert(pm, groupField, observationField, groupId, batch);
+        return inserted;
+    }
+
+    private int insert(JooqPersistenceManager pm, Field groupField, Field observationField, Object groupId, List<Object> observationIds) {
+        HookMetrics.countDbCall();
+        InsertValuesStep2 insert = pm.getDslContext().insertInto(tableGroupsObservations, groupField, observationField);
+        for (Object observationId : observationIds) {
+            insert = insert.values(groupId, observationId);
+        }
+        return insert.onConflictDoNothing().execute();
+    }
+}
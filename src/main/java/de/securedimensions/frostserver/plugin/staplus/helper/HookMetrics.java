@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import de.fraunhofer.iosb.ilt.frostserver.model.EntityType;
+import de.fraunhofer.iosb.ilt.frostserver.model.EntityValidator;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.HookPreDelete;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.HookPreInsert;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.HookPreUpdate;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Latency and database call metrics of the STAplus hooks and validators. A
+ * timer is kept per entity type and hook; each records the number of
+ * invocations, a latency histogram and the number of database calls issued
+ * during the invocation, as counted by {@link #countDbCall()}.
+ * <p>
+ * The metrics are exposed via JMX under {@link #OBJECT_NAME}, and as
+ * {@link Snapshot}s that a metrics registry can poll, using the meter name
+ * and the entityType and hook tags.
+ * <p>
+ * In addition, named counters of other components, like the hits and misses
+ * of the {@link OwnershipCache}, can be registered and are published with the
+ * metrics.
+ */
+public class HookMetrics implements HookMetricsMXBean {
+
+    public static final String OBJECT_NAME = "de.securedimensions.frostserver.plugin.staplus:type=HookMetrics";
+    public static final String METER_NAME = "staplus.hook";
+    public static final String HOOK_PRE_INSERT = "preInsert";
+    public static final String HOOK_PRE_UPDATE = "preUpdate";
+    public static final String HOOK_PRE_DELETE = "preDelete";
+    public static final String HOOK_CREATE_VALIDATOR = "createValidator";
+    public static final String HOOK_UPDATE_VALIDATOR = "updateValidator";
+
+    /**
+     * The upper bounds of the latency histogram buckets, in nanoseconds. The
+     * last bucket counts everything above the last bound.
+     */
+    private static final long[] BUCKET_BOUNDS_NANOS = {
+        100_000L, 250_000L, 500_000L,
+        1_000_000L, 2_500_000L, 5_000_000L,
+        10_000_000L, 25_000_000L, 50_000_000L,
+        100_000_000L, 250_000_000L, 500_000_000L,
+        1_000_000_000L};
+
+    /**
+     * The number of database calls issued on the current thread. Only the
+     * difference between the start and the end of an invocation is used, so
+     * nested invocations count correctly.
+     */
+    private static final ThreadLocal<long[]> DB_CALLS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongSupplier> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Counts a database call issued by the current thread.
+     */
+    public static void countDbCall() {
+        DB_CALLS.get()[0]++;
+    }
+
+    public static long[] getBucketBoundsNanos() {
+        return BUCKET_BOUNDS_NANOS.clone();
+    }
+
+    public HookPreInsert preInsert(EntityType entityType, HookPreInsert hook) {
+        final Timer timer = timer(entityType, HOOK_PRE_INSERT);
+        return (phase, pm, entity, insertFields) -> {
+            final long[] dbCalls = DB_CALLS.get();
+            final long startCalls = dbCalls[0];
+            final long start = System.nanoTime();
+            try {
+                return hook.insertIntoDatabase(phase, pm, entity, insertFields);
+            } finally {
+                timer.record(System.nanoTime() - start, dbCalls[0] - startCalls);
+            }
+        };
+    }
+
+    public HookPreUpdate preUpdate(EntityType entityType, HookPreUpdate hook) {
+        final Timer timer = timer(entityType, HOOK_PRE_UPDATE);
+        return (pm, entity, entityId, updateMode) -> {
+            final long[] dbCalls = DB_CALLS.get();
+            final long startCalls = dbCalls[0];
+            final long start = System.nanoTime();
+            try {
+                hook.updateInDatabase(pm, entity, entityId, updateMode);
+            } finally {
+                timer.record(System.nanoTime() - start, dbCalls[0] - startCalls);
+            }
+        };
+    }
+
+    public HookPreDelete preDelete(EntityType entityType, HookPreDelete hook) {
+        final Timer timer = timer(entityType, HOOK_PRE_DELETE);
+        return (pm, entityId) -> {
+            final long[] dbCalls = DB_CALLS.get();
+            final long startCalls = dbCalls[0];
+            final long start = System.nanoTime();
+            try {
+                hook.delete(pm, entityId);
+            } finally {
+                timer.record(System.nanoTime() - start, dbCalls[0] - startCalls);
+            }
+        };
+    }
+
+    public EntityValidator validator(EntityType entityType, String hookName, EntityValidator validator) {
+        final Timer timer = timer(entityType, hookName);
+        return entity -> {
+            final long[] dbCalls = DB_CALLS.get();
+            final long startCalls = dbCalls[0];
+            final long start = System.nanoTime();
+            try {
+                validator.validate(entity);
+            } finally {
+                timer.record(System.nanoTime() - start, dbCalls[0] - startCalls);
+            }
+        };
+    }
+
+    /**
+     * Registers a counter that is published with the metrics. The counter is
+     * owned by the caller, {@link #reset()} does not reset it.
+     *
+     * @param name the name of the counter, e.g. {@code ownershipCache.hits}.
+     * @param counter the supplier of the current value.
+     */
+    public void registerCounter(String name, LongSupplier counter) {
+        counters.put(name, counter);
+    }
+
+    /**
+     * Registers the metrics with the platform MBeanServer, replacing metrics
+     * registered by an earlier instance.
+     *
+     * @throws JMException if the registration fails.
+     */
+    public void registerMBean() throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name))
+            server.unregisterMBean(name);
+        server.registerMBean(this, name);
+    }
+
+    /**
+     * Returns the current values of all timers, keyed by
+     * {@code <EntityType>.<hook>}.
+     *
+     * @return a sorted map of the snapshots.
+     */
+    public Map<String, Snapshot> getSnapshots() {
+        final Map<String, Snapshot> result = new TreeMap<>();
+        timers.forEach((key, timer) -> result.put(key, timer.snapshot()));
+        return result;
+    }
+
+    /**
+     * Summarises the metrics for the serverSettings of the service document.
+     *
+     * @return per {@code <EntityType>.<hook>} the invocation count, the mean
+     * and max latency in ms and the mean number of database calls.
+     */
+    public Map<String, Object> getSummary() {
+        final Map<String, Object> result = new TreeMap<>();
+        getSnapshots().forEach((key, s) -> result.put(key, Map.of(
+                "count", s.count(),
+                "meanMs", s.meanMillis(),
+                "maxMs", s.maxMillis(),
+                "meanDbCalls", s.meanDbCalls())));
+        if (!counters.isEmpty())
+            result.put("counters", getCounters());
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        final Map<String, Long> result = new TreeMap<>();
+        counters.forEach((name, counter) -> result.put(name, counter.getAsLong()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getInvocations() {
+        return collectLong(Snapshot::count);
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencyMillis() {
+        return collectDouble(Snapshot::meanMillis);
+    }
+
+    @Override
+    public Map<String, Double> getMaxLatencyMillis() {
+        return collectDouble(Snapshot::maxMillis);
+    }
+
+    @Override
+    public Map<String, Double> getMeanDbCalls() {
+        return collectDouble(Snapshot::meanDbCalls);
+    }
+
+    @Override
+    public void reset() {
+        timers.values().forEach(Timer::reset);
+    }
+
+    private Map<String, Long> collectLong(ToLongFunction<Snapshot> value) {
+        final Map<String, Long> result = new TreeMap<>();
+        getSnapshots().forEach((key, s) -> result.put(key, value.applyAsLong(s)));
+        return result;
+    }
+
+    private Map<String, Double> collectDouble(ToDoubleFunction<Snapshot> value) {
+        final Map<String, Double> result = new TreeMap<>();
+        getSnapshots().forEach((key, s) -> result.put(key, value.applyAsDouble(s)));
+        return result;
+    }
+
+    private Timer timer(EntityType entityType, String hookName) {
+        return timers.computeIfAbsent(entityType.entityName + "." + hookName, k -> new Timer(entityType.entityName, hookName));
+    }
+
+    /**
+     * The values of one timer at the time the snapshot was taken.
+     *
+     * @param entityType the name of the entity type, used as tag.
+     * @param hook the name of the hook, used as tag.
+     * @param count the number of invocations.
+     * @param totalNanos the total latency of all invocations.
+     * @param maxNanos the highest latency of a single invocation.
+     * @param dbCalls the total number of database calls.
+     * @param buckets the number of invocations per latency bucket, see
+     * {@link HookMetrics#getBucketBoundsNanos()}.
+     */
+    public static record Snapshot(String entityType, String hook, long count, long totalNanos, long maxNanos, long dbCalls, long[] buckets) {
+
+        public double meanMillis() {
+            return count == 0 ? 0 : totalNanos / 1e6 / count;
+        }
+
+        public double maxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        public double meanDbCalls() {
+            return count == 0 ? 0 : (double) dbCalls / count;
+        }
+    }
+
+    private static class Timer {
+
+        private final String entityType;
+        private final String hook;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder dbCalls = new LongAdder();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_NANOS.length + 1);
+
+        Timer(String entityType, String hook) {
+            this.entityType = entityType;
+            this.hook = hook;
+        }
+
+        void record(long nanos, long calls) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            dbCalls.add(calls);
+            int bucket = Arrays.binarySearch(BUCKET_BOUNDS_NANOS, nanos);
+            buckets.incrementAndGet(bucket < 0 ? -bucket - 1 : bucket);
+        }
+
+        Snapshot snapshot() {
+            final long[] values = new long[buckets.length()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = buckets.get(i);
+            }
+            return new Snapshot(entityType, hook, count.sum(), totalNanos.sum(), maxNanos.get(), dbCalls.sum(), values);
+        }
+
+        void reset() {
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+            dbCalls.reset();
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+        }
+    }
+}
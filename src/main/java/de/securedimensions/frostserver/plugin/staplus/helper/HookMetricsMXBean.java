@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link HookMetrics}. The timer maps are keyed by
+ * {@code <EntityType>.<hook>}, e.g. {@code Datastream.preInsert}.
+ */
+public interface HookMetricsMXBean {
+
+    Map<String, Long> getInvocations();
+
+    Map<String, Double> getMeanLatencyMillis();
+
+    Map<String, Double> getMaxLatencyMillis();
+
+    Map<String, Double> getMeanDbCalls();
+
+    /**
+     * @return the registered counters, keyed by their name.
+     */
+    Map<String, Long> getCounters();
+
+    void reset();
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import de.fraunhofer.iosb.ilt.frostserver.messagebus.EntityChangedMessage;
+import de.fraunhofer.iosb.ilt.frostserver.messagebus.MessageListener;
+import de.fraunhofer.iosb.ilt.frostserver.model.DefaultEntity;
+import de.fraunhofer.iosb.ilt.frostserver.model.EntityType;
+import de.fraunhofer.iosb.ilt.frostserver.model.core.Entity;
+import de.fraunhofer.iosb.ilt.frostserver.model.core.PkValue;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
+import de.fraunhofer.iosb.ilt.frostserver.property.EntityPropertyMain;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory catalogue of the built-in Creative Commons Licenses. These are
+ * loaded when the plugin is initialised; all other Licenses are loaded from
+ * the database with each lookup, so the catalogue never holds more than the
+ * built-in Licenses.
+ *
+ * Each lookup returns a copy, so callers may modify the returned License. The
+ * License hooks invalidate an entry when the License is inserted, updated or
+ * deleted, and the entity change events of the message bus invalidate it
+ * again once the change is committed, also when it is made on another node.
+ */
+public class LicenseCatalogue implements MessageListener {
+
+    private final EntityType etLicense;
+    private final Set<String> builtInIds;
+    private final Map<String, Entity> licenses = new ConcurrentHashMap<>();
+
+    public LicenseCatalogue(EntityType etLicense, Collection<String> builtInIds) {
+        this.etLicense = etLicense;
+        this.builtInIds = Set.copyOf(builtInIds);
+    }
+
+    /**
+     * Loads the built-in Licenses that exist in the database.
+     *
+     * @param pm the persistence manager to load the Licenses with.
+     */
+    public void preload(JooqPersistenceManager pm) {
+        for (String id : builtInIds) {
+            load(pm, PkValue.of(id));
+        }
+    }
+
+    /**
+     * Returns a copy of the License with the given id.
+     *
+     * @param pm the persistence manager to load the License with, if it is
+     * not in the catalogue.
+     * @param id the id of the License.
+     * @return the License, or null if it does not exist.
+     */
+    public Entity get(JooqPersistenceManager pm, PkValue id) {
+        final Object key = id.get(0);
+        if (key == null)
+            return null;
+
+        Entity license = licenses.get(key.toString());
+        if (license == null) {
+            license = load(pm, id);
+        }
+        return (license == null) ? null : copy(license);
+    }
+
+    /**
+     * Removes the License from the catalogue, to be reloaded with the next
+     * lookup.
+     *
+     * @param id the id of the License.
+     */
+    public void invalidate(PkValue id) {
+        if ((id != null) && (id.get(0) != null))
+            licenses.remove(id.get(0).toString());
+    }
+
+    @Override
+    public void messageReceived(EntityChangedMessage message) {
+        final Entity entity = message.getEntity();
+        if (entity == null || !etLicense.equals(entity.getEntityType()))
+            return;
+
+        invalidate(entity.getPrimaryKeyValues());
+    }
+
+    private Entity load(JooqPersistenceManager pm, PkValue id) {
+        HookMetrics.countDbCall();
+        final Entity license = pm.get(etLicense, id);
+        final String key = id.get(0).toString();
+        if ((license != null) && builtInIds.contains(key))
+            licenses.put(key, license);
+        return license;
+    }
+
+    private Entity copy(Entity license) {
+        final Entity copy = new DefaultEntity(etLicense, license.getPrimaryKeyValues());
+        for (EntityPropertyMain property : etLicense.getEntityProperties()) {
+            if (license.isSetProperty(property))
+                copy.setProperty(property, license.getProperty(property));
+        }
+        return copy;
+    }
+}
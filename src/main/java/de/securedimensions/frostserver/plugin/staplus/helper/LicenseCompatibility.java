@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import static de.securedimensions.frostserver.plugin.staplus.helper.TableHelperLicense.*;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * License compatibility matrix. Each License id is interned to an index and
+ * the Licenses compatible with a (source) License are kept as a bitmask, so
+ * that each check is one map lookup and one bit test.
+ * <p>
+ * The rules can be given as configuration: a semicolon separated list of
+ * {@code SOURCE:TARGET,TARGET,...} entries, e.g.
+ * {@code CC_BY:CC_BY,CC_BY_SA;CC_BY_SA:CC_BY_SA}. If no rules are configured,
+ * the Creative Commons v3 compatibility chart is used. License ids are case
+ * insensitive. A License that does not appear as a source is compatible with
+ * nothing.
+ */
+public final class LicenseCompatibility {
+
+    /**
+     * A bitmask holds one bit per License.
+     */
+    public static final int MAX_LICENSES = Long.SIZE;
+
+    private static final LicenseCompatibility CREATIVE_COMMONS = createCreativeCommons();
+
+    private final Map<String, Integer> index;
+    private final long[] compatible;
+
+    private LicenseCompatibility(Map<String, List<String>> rules) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (Map.Entry<String, List<String>> rule : rules.entrySet()) {
+            intern(ids, rule.getKey());
+            for (String target : rule.getValue()) {
+                intern(ids, target);
+            }
+        }
+        this.index = Map.copyOf(ids);
+        this.compatible = new long[ids.size()];
+        for (Map.Entry<String, List<String>> rule : rules.entrySet()) {
+            int source = ids.get(normalise(rule.getKey()));
+            for (String target : rule.getValue()) {
+                compatible[source] |= 1L << ids.get(normalise(target));
+            }
+        }
+    }
+
+    /**
+     * Returns the Creative Commons v3 compatibility matrix.
+     *
+     * @return the matrix for the Creative Commons Licenses.
+     */
+    public static LicenseCompatibility creativeCommons() {
+        return CREATIVE_COMMONS;
+    }
+
+    /**
+     * Compiles the compatibility matrix from the configuration value.
+     *
+     * @param config the rules, or an empty String for the Creative Commons
+     * matrix.
+     * @return the compiled matrix.
+     * @throws IllegalArgumentException if the configuration is malformed or
+     * has more than {@link #MAX_LICENSES} Licenses.
+     */
+    public static LicenseCompatibility parse(String config) {
+        if ((config == null) || config.isBlank())
+            return CREATIVE_COMMONS;
+
+        Map<String, List<String>> rules = new LinkedHashMap<>();
+        for (String entry : config.split(";")) {
+            if (entry.isBlank())
+                continue;
+
+            String[] rule = entry.split(":", -1);
+            if ((rule.length != 2) || rule[0].isBlank())
+                throw new IllegalArgumentException("License compatibility rule '" + entry.trim() + "' not of the form SOURCE:TARGET,TARGET,...");
+
+            String source = normalise(rule[0]);
+            List<String> targets = rule[1].isBlank() ? List.of() : List.of(rule[1].split(","));
+            if (rules.put(source, targets) != null)
+                throw new IllegalArgumentException("License compatibility rule for '" + source + "' given more than once");
+        }
+        return new LicenseCompatibility(rules);
+    }
+
+    /**
+     * Checks if content with the source License can be added to a resource
+     * with the target License.
+     *
+     * @param sourceId the id of the License of the content.
+     * @param targetId the id of the License of the resource.
+     * @return true if the Licenses are compatible.
+     */
+    public boolean isCompatible(String sourceId, String targetId) {
+        int source = indexOf(sourceId);
+        int target = indexOf(targetId);
+        if ((source < 0) || (target < 0))
+            return false;
+
+        return (compatible[source] & (1L << target)) != 0;
+    }
+
+    private int indexOf(String licenseId) {
+        if (licenseId == null)
+            return -1;
+
+        Integer i = index.get(licenseId);
+        if (i == null)
+            i = index.get(normalise(licenseId));
+        return (i == null) ? -1 : i;
+    }
+
+    private static void intern(Map<String, Integer> ids, String licenseId) {
+        String id = normalise(licenseId);
+        if (id.isEmpty())
+            throw new IllegalArgumentException("License compatibility rules contain an empty License id");
+
+        if (!ids.containsKey(id)) {
+            if (ids.size() == MAX_LICENSES)
+                throw new IllegalArgumentException("License compatibility rules support at most " + MAX_LICENSES + " Licenses");
+            ids.put(id, ids.size());
+        }
+    }
+
+    private static String normalise(String licenseId) {
+        return licenseId.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private static LicenseCompatibility createCreativeCommons() {
+        Map<String, List<String>> rules = new LinkedHashMap<>();
+        rules.put(CC_PD_ID, List.of(CC_PD));
+        rules.put(CC_BY_ID, List.of(CC_BY));
+        rules.put(CC_BY_NC_ID, List.of(CC_BY_NC));
+        rules.put(CC_BY_SA_ID, List.of(CC_BY_SA));
+        rules.put(CC_BY_ND_ID, List.of(CC_BY_ND));
+        rules.put(CC_BY_NC_SA_ID, List.of(CC_BY_NC_SA));
+        rules.put(CC_BY_NC_ND_ID, List.of(CC_BY_NC_ND_SA));
+        return new LicenseCompatibility(rules);
+    }
+
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import static de.fraunhofer.iosb.ilt.frostserver.property.SpecialNames.AT_IOT_ID;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.tables.TableCollection;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.coremodel.TableImpDatastreams;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.coremodel.TableImpObservations;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.multidatastream.PluginMultiDatastream;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.multidatastream.TableImpMultiDatastreams;
+import de.fraunhofer.iosb.ilt.frostserver.util.user.PrincipalExtended;
+import de.securedimensions.frostserver.plugin.staplus.TableImpCampaign;
+import de.securedimensions.frostserver.plugin.staplus.TableImpCampaignsDatastreams;
+import de.securedimensions.frostserver.plugin.staplus.TableImpCampaignsMultiDatastreams;
+import de.securedimensions.frostserver.plugin.staplus.TableImpGroup;
+import de.securedimensions.frostserver.plugin.staplus.TableImpGroupsObservations;
+import java.io.IOException;
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.function.Function;
+import net.time4j.Moment;
+import org.jooq.Condition;
+import org.jooq.Cursor;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record3;
+import org.jooq.ResultQuery;
+import org.jooq.SelectJoinStep;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+
+/**
+ * Streams a Campaign or an ObservationGroup with all its Observations as
+ * newline delimited JSON, one record per line. The first record is the
+ * Campaign or ObservationGroup itself. A Campaign is followed by each of its
+ * (Multi)Datastreams and the Observations of that (Multi)Datastream, an
+ * ObservationGroup by its member Observations. Every record has the id of the
+ * License it is published under.
+ * <p>
+ * All rows are read through server side cursors in primary key order, that
+ * fetch {@link #getFetchSize()} rows at a time, so the memory used does not
+ * depend on the size of the export.
+ */
+public class NdjsonExporter {
+
+    private static final String TYPE = "type";
+    private static final String LICENSE = "License";
+    private static final String COL_LICENSE_ID = "LICENSE_ID";
+    private static final String COL_MULTI_DATASTREAM_ID = "MULTI_DATASTREAM_ID";
+    private static final String LICENSE_ID_ALIAS = "EXPORT_LICENSE_ID";
+    private static final String RESULT_JSON_ALIAS = "EXPORT_RESULT_JSON";
+
+    private final TableCollection tables;
+    private final PluginMultiDatastream pluginMultiDatastream;
+    private final boolean enforceReadOwnership;
+    private final int fetchSize;
+
+    public NdjsonExporter(TableCollection tables, PluginMultiDatastream pluginMultiDatastream, boolean enforceReadOwnership, int fetchSize) {
+        if (fetchSize < 1)
+            throw new IllegalArgumentException("Fetch size must be positive");
+        this.tables = tables;
+        this.pluginMultiDatastream = pluginMultiDatastream;
+        this.enforceReadOwnership = enforceReadOwnership;
+        this.fetchSize = fetchSize;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Writes the Campaign with the given id, its (Multi)Datastreams and their
+     * Observations.
+     *
+     * @param pm the persistence manager to run the queries with. The cursors
+     * need a transaction, so it must not be in auto-commit mode.
+     * @param campaignId the primary key of the Campaign.
+     * @param principal the acting user, used to check that the Campaign can
+     * be read.
+     * @param out the generator to write the records to.
+     * @return false if the Campaign does not exist or cannot be read, in which
+     * case nothing was written.
+     * @throws IOException if writing fails.
+     */
+    public boolean exportCampaign(JooqPersistenceManager pm, Object campaignId, Principal principal, JsonGenerator out) throws IOException {
+        final TableImpCampaign tableCampaigns = tables.getTableForClass(TableImpCampaign.class);
+        final Object id = tableCampaigns.getId().getDataType().convert(campaignId);
+
+        HookMetrics.countDbCall();
+        final Record3<?, String, ?> campaign = pm.getDslContext()
+                .select(tableCampaigns.getId(), tableCampaigns.colName, tableCampaigns.getLicenseId())
+                .from(tableCampaigns)
+                .where(((Field) tableCampaigns.getId()).eq(id))
+                .and(readable(tableCampaigns.getLicenseId(), tableCampaigns.getPartyId(), principal))
+                .fetchOne();
+        if (campaign == null)
+            return false;
+        writeHeader(out, "Campaign", campaign);
+
+        final TableImpDatastreams tableDatastreams = tables.getTableForClass(TableImpDatastreams.class);
+        final TableImpCampaignsDatastreams tableCampaignsDatastreams = tables.getTableForClass(TableImpCampaignsDatastreams.class);
+        final Field<?> dsId = tableDatastreams.getId();
+        exportStreams(pm, out, "Datastream", TableImpObservations::getDatastreamId,
+                pm.getDslContext()
+                        .select(dsId, tableDatastreams.colName, tableDatastreams.field(tableDatastreams.indexOf(COL_LICENSE_ID)))
+                        .from(tableCampaignsDatastreams)
+                        .join(tableDatastreams).on(((Field) dsId).eq(tableCampaignsDatastreams.getDatastreamId()))
+                        .where(((Field) tableCampaignsDatastreams.getCampaignId()).eq(id))
+                        .orderBy(dsId));
+
+        if (pluginMultiDatastream != null) {
+            final TableImpMultiDatastreams tableMultiDatastreams = tables.getTableForClass(TableImpMultiDatastreams.class);
+            final TableImpCampaignsMultiDatastreams tableCampaignsMultiDatastreams = tables.getTableForClass(TableImpCampaignsMultiDatastreams.class);
+            final Field<?> mdsId = tableMultiDatastreams.getId();
+            exportStreams(pm, out, "MultiDatastream", tableObs -> tableObs.field(tableObs.indexOf(COL_MULTI_DATASTREAM_ID)),
+                    pm.getDslContext()
+                            .select(mdsId, tableMultiDatastreams.colName, tableMultiDatastreams.field(tableMultiDatastreams.indexOf(COL_LICENSE_ID)))
+                            .from(tableCampaignsMultiDatastreams)
+                            .join(tableMultiDatastreams).on(((Field) mdsId).eq(tableCampaignsMultiDatastreams.getMultiDatastreamId()))
+                            .where(((Field) tableCampaignsMultiDatastreams.getCampaignId()).eq(id))
+                            .orderBy(mdsId));
+        }
+        return true;
+    }
+
+    /**
+     * Writes the ObservationGroup with the given id and its member
+     * Observations. Each Observation carries the License of its
+     * (Multi)Datastream.
+     *
+     * @param pm the persistence manager to run the queries with. The cursors
+     * need a transaction, so it must not be in auto-commit mode.
+     * @param groupId the primary key of the ObservationGroup.
+     * @param principal the acting user, used to check that the
+     * ObservationGroup can be read.
+     * @param out the generator to write the records to.
+     * @return false if the ObservationGroup does not exist or cannot be read,
+     * in which case nothing was written.
+     * @throws IOException if writing fails.
+     */
+    public boolean exportGroup(JooqPersistenceManager pm, Object groupId, Principal principal, JsonGenerator out) throws IOException {
+        final TableImpGroup tableGroups = tables.getTableForClass(TableImpGroup.class);
+        final Object id = tableGroups.getId().getDataType().convert(groupId);
+
+        HookMetrics.countDbCall();
+        final Record3<?, String, ?> group = pm.getDslContext()
+                .select(tableGroups.getId(), tableGroups.colName, tableGroups.getLicenseId())
+                .from(tableGroups)
+                .where(((Field) tableGroups.getId()).eq(id))
+                .and(readable(tableGroups.getLicenseId(), tableGroups.getPartyId(), principal))
+                .fetchOne();
+        if (group == null)
+            return false;
+        writeHeader(out, "ObservationGroup", group);
+
+        final TableImpObservations tableObservations = tables.getTableForClass(TableImpObservations.class);
+        final TableImpDatastreams tableDatastreams = tables.getTableForClass(TableImpDatastreams.class);
+        final TableImpGroupsObservations tableGroupsObservations = tables.getTableForClass(TableImpGroupsObservations.class);
+
+        final TableImpMultiDatastreams tableMultiDatastreams = (pluginMultiDatastream == null) ? null : tables.getTableForClass(TableImpMultiDatastreams.class);
+        Field<?> licenseId = tableDatastreams.field(tableDatastreams.indexOf(COL_LICENSE_ID));
+        if (tableMultiDatastreams != null)
+            licenseId = DSL.coalesce(licenseId, tableMultiDatastreams.field(tableMultiDatastreams.indexOf(COL_LICENSE_ID)));
+
+        SelectJoinStep<Record> query = pm.getDslContext()
+                .select(observationFields(tableObservations, licenseId.as(LICENSE_ID_ALIAS)))
+                .from(tableGroupsObservations)
+                .join(tableObservations).on(((Field) tableObservations.getId()).eq(tableGroupsObservations.getObservationId()))
+                .leftJoin(tableDatastreams).on(((Field) tableDatastreams.getId()).eq(tableObservations.getDatastreamId()));
+        if (tableMultiDatastreams != null)
+            query = query.leftJoin(tableMultiDatastreams).on(((Field) tableMultiDatastreams.getId()).eq(tableObservations.field(tableObservations.indexOf(COL_MULTI_DATASTREAM_ID))));
+
+        HookMetrics.countDbCall();
+        try (Cursor<Record> observations = query
+                .where(((Field) tableGroupsObservations.getGroupId()).eq(id))
+                .orderBy(tableGroupsObservations.getObservationId())
+                .fetchSize(fetchSize)
+                .fetchLazy()) {
+            for (Record observation : observations) {
+                writeObservation(out, tableObservations, observation, observation.get(LICENSE_ID_ALIAS));
+            }
+        }
+        return true;
+    }
+
+    private void exportStreams(JooqPersistenceManager pm, JsonGenerator out, String type, Function<TableImpObservations, Field<?>> streamIdOfObservation, ResultQuery<? extends Record3<?, String, ?>> streamsQuery) throws IOException {
+        final TableImpObservations tableObservations = tables.getTableForClass(TableImpObservations.class);
+        final Field<?> streamId = streamIdOfObservation.apply(tableObservations);
+
+        HookMetrics.countDbCall();
+        try (Cursor<? extends Record3<?, String, ?>> streams = streamsQuery.fetchSize(fetchSize).fetchLazy()) {
+            for (Record3<?, String, ?> stream : streams) {
+                writeHeader(out, type, stream);
+
+                HookMetrics.countDbCall();
+                try (Cursor<Record> observations = pm.getDslContext()
+                        .select(observationFields(tableObservations))
+                        .from(tableObservations)
+                        .where(((Field) streamId).eq(stream.value1()))
+                        .orderBy(tableObservations.getId())
+                        .fetchSize(fetchSize)
+                        .fetchLazy()) {
+                    for (Record observation : observations) {
+                        writeObservation(out, tableObservations, observation, stream.value3());
+                    }
+                }
+            }
+        }
+    }
+
+    private Condition readable(Field<?> licenseId, Field<?> partyId, Principal principal) {
+        if (!enforceReadOwnership)
+            return DSL.noCondition();
+        if ((principal instanceof PrincipalExtended) && ((PrincipalExtended) principal).isAdmin())
+            return DSL.noCondition();
+        return OwnershipSecurityWrapper.isVisible(tables, licenseId, partyId, principal);
+    }
+
+    private static Field<?>[] observationFields(TableImpObservations table, Field<?>... extra) {
+        final Field<?>[] fields = {
+            table.getId(),
+            table.getDatastreamId(),
+            table.getFeatureId(),
+            table.colPhenomenonTimeStart,
+            table.colPhenomenonTimeEnd,
+            table.colResultTime,
+            table.colResultNumber,
+            table.colResultString,
+            table.colResultBoolean,
+            table.colResultJson.cast(SQLDataType.VARCHAR).as(RESULT_JSON_ALIAS)
+        };
+        final Field<?>[] all = Arrays.copyOf(fields, fields.length + extra.length);
+        System.arraycopy(extra, 0, all, fields.length, extra.length);
+        return all;
+    }
+
+    private static void writeHeader(JsonGenerator out, String type, Record3<?, String, ?> record) throws IOException {
+        out.writeStartObject();
+        out.writeStringField(TYPE, type);
+        out.writeObjectField(AT_IOT_ID, record.value1());
+        out.writeStringField("name", record.value2());
+        out.writeObjectField(LICENSE, record.value3());
+        out.writeEndObject();
+        out.writeRaw('\n');
+    }
+
+    private static void writeObservation(JsonGenerator out, TableImpObservations table, Record record, Object licenseId) throws IOException {
+        final Moment phenomenonTimeStart = record.get(table.colPhenomenonTimeStart);
+        final Moment phenomenonTimeEnd = record.get(table.colPhenomenonTimeEnd);
+        final Moment resultTime = record.get(table.colResultTime);
+
+        out.writeStartObject();
+        out.writeStringField(TYPE, "Observation");
+        out.writeObjectField(AT_IOT_ID, record.get(table.getId()));
+        if (phenomenonTimeStart != null) {
+            out.writeStringField("phenomenonTime", (phenomenonTimeEnd == null || phenomenonTimeEnd.equals(phenomenonTimeStart))
+                    ? phenomenonTimeStart.toString()
+                    : phenomenonTimeStart + "/" + phenomenonTimeEnd);
+        }
+        if (resultTime != null)
+            out.writeStringField("resultTime", resultTime.toString());
+        out.writeFieldName("result");
+        writeResult(out, table, record);
+        out.writeObjectField("Datastream", record.get(table.getDatastreamId()));
+        out.writeObjectField("FeatureOfInterest", record.get(table.getFeatureId()));
+        out.writeObjectField(LICENSE, licenseId);
+        out.writeEndObject();
+        out.writeRaw('\n');
+    }
+
+    private static void writeResult(JsonGenerator out, TableImpObservations table, Record record) throws IOException {
+        final String json = record.get(RESULT_JSON_ALIAS, String.class);
+        final Boolean bool = record.get(table.colResultBoolean);
+        final Object number = record.get(table.colResultNumber);
+        final String string = record.get(table.colResultString);
+        if (json != null) {
+            out.writeRawValue(json);
+        } else if (bool != null) {
+            out.writeBoolean(bool);
+        } else if (number != null) {
+            // The string column holds the number as it was posted
+            out.writeNumber((string == null) ? number.toString() : string);
+        } else if (string != null) {
+            out.writeString(string);
+        } else {
+            out.writeNull();
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import de.fraunhofer.iosb.ilt.frostserver.model.EntityType;
+import de.fraunhofer.iosb.ilt.frostserver.service.ServiceRequest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the id of the Party owning an entity for the duration of a single
+ * ServiceRequest. All TableHelper instances share the cache of the request
+ * that is executed on the current thread, so a Datastream referenced by many
+ * Observations of one request is only loaded once.
+ *
+ * The cache is kept in a ThreadLocal together with the request returned by
+ * {@link ServiceRequest#getLocalRequest()} it was created for, and replaced
+ * as soon as the thread executes another request. Request handlers of the
+ * plugin drop it explicitly with {@link #clearLocalCache()} when they are
+ * done.
+ * <p>
+ * The hit and miss counts over all requests are published through the
+ * {@link HookMetrics}.
+ */
+public final class OwnershipCache {
+
+    private static final ThreadLocal<OwnershipCache> LOCAL_CACHE = new ThreadLocal<>();
+    private static final AtomicLong TOTAL_HITS = new AtomicLong();
+    private static final AtomicLong TOTAL_MISSES = new AtomicLong();
+
+    private final ServiceRequest serviceRequest;
+    private final Map<Key, String> owners = new HashMap<>();
+
+    private OwnershipCache(ServiceRequest serviceRequest) {
+        this.serviceRequest = serviceRequest;
+    }
+
+    /**
+     * Returns the cache for the ServiceRequest executed on the current thread.
+     *
+     * @return the cache for the current request.
+     */
+    public static OwnershipCache getLocalCache() {
+        final ServiceRequest serviceRequest = ServiceRequest.getLocalRequest();
+        if (serviceRequest == null) {
+            // Without a request there is no scope, hand out a throw-away cache.
+            return new OwnershipCache(null);
+        }
+        OwnershipCache cache = LOCAL_CACHE.get();
+        if (cache == null || cache.serviceRequest != serviceRequest) {
+            cache = new OwnershipCache(serviceRequest);
+            LOCAL_CACHE.set(cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Drops the cache of the current thread. To be called when a request
+     * ends.
+     */
+    public static void clearLocalCache() {
+        LOCAL_CACHE.remove();
+    }
+
+    public static long getTotalHits() {
+        return TOTAL_HITS.get();
+    }
+
+    public static long getTotalMisses() {
+        return TOTAL_MISSES.get();
+    }
+
+    /**
+     * Returns the cached id of the Party owning the given entity.
+     *
+     * @param entityType the type of the entity.
+     * @param id the primary key of the entity.
+     * @return the id of the owning Party, or null if not cached.
+     */
+    public String get(EntityType entityType, Object id) {
+        final String partyId = owners.get(new Key(entityType, id));
+        if (partyId == null) {
+            TOTAL_MISSES.incrementAndGet();
+        } else {
+            TOTAL_HITS.incrementAndGet();
+        }
+        return partyId;
+    }
+
+    public void put(EntityType entityType, Object id, String partyId) {
+        owners.put(new Key(entityType, id), partyId);
+    }
+
+    /**
+     * Removes the cached owner of the given entity, for instance because the
+     * Party of the entity is changed by the current request.
+     *
+     * @param entityType the type of the entity.
+     * @param id the primary key of the entity.
+     */
+    public void invalidate(EntityType entityType, Object id) {
+        owners.remove(new Key(entityType, id));
+    }
+
+    private static record Key(EntityType entityType, Object id) {
+    }
+
+}
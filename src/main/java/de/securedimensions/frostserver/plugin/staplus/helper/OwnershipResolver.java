@@ -0,0 +1,464 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import de.fraunhofer.iosb.ilt.frostserver.model.EntityType;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.tables.StaTableAbstract;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.tables.TableCollection;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.coremodel.PluginCoreModel;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.coremodel.TableImpDatastreams;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.coremodel.TableImpObservations;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.coremodel.TableImpThingsLocations;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.multidatastream.PluginMultiDatastream;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.multidatastream.TableImpMultiDatastreams;
+import de.securedimensions.frostserver.plugin.staplus.PluginPLUS;
+import de.securedimensions.frostserver.plugin.staplus.TableImpCampaign;
+import de.securedimensions.frostserver.plugin.staplus.TableImpCampaignsDatastreams;
+import de.securedimensions.frostserver.plugin.staplus.TableImpCampaignsMultiDatastreams;
+import de.securedimensions.frostserver.plugin.staplus.TableImpGroupsObservations;
+import de.securedimensions.frostserver.plugin.staplus.TableImpParty;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jooq.Condition;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record2;
+import org.jooq.Record3;
+import org.jooq.SelectJoinStep;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+
+/**
+ * Resolves ownership, License and membership information with set-based
+ * queries. The owner of an Observation is resolved with a single query,
+ * joining OBSERVATIONS with DATASTREAMS / MULTI_DATASTREAMS and PARTIES. The
+ * batch methods check any number of entities of one type with one query.
+ */
+public class OwnershipResolver {
+
+    private final TableCollection tables;
+    private final PluginPLUS pluginPlus;
+    private final PluginCoreModel pluginCoreModel;
+    private final PluginMultiDatastream pluginMultiDatastream;
+    private final TableImpObservations tableObservations;
+    private final TableImpDatastreams tableDatastreams;
+    private final TableImpMultiDatastreams tableMultiDatastreams;
+    private final TableImpParty tableParties;
+
+    public OwnershipResolver(TableCollection tables, PluginPLUS pluginPlus, PluginCoreModel pluginCoreModel, PluginMultiDatastream pluginMultiDatastream) {
+        this.tables = tables;
+        this.pluginPlus = pluginPlus;
+        this.pluginCoreModel = pluginCoreModel;
+        this.pluginMultiDatastream = pluginMultiDatastream;
+        this.tableObservations = tables.getTableForClass(TableImpObservations.class);
+        this.tableDatastreams = tables.getTableForClass(TableImpDatastreams.class);
+        this.tableMultiDatastreams = (pluginMultiDatastream == null) ? null : tables.getTableForClass(TableImpMultiDatastreams.class);
+        this.tableParties = tables.getTableForClass(TableImpParty.class);
+    }
+
+    /**
+     * Loads the (Multi)Datastream and the owning Party of an Observation.
+     *
+     * @param pm the persistence manager to run the query with.
+     * @param observationId the primary key of the Observation.
+     * @return the owner, or null if the Observation does not exist or is
+     * neither linked to a Datastream nor to a MultiDatastream.
+     */
+    public ObservationOwner resolveObservation(JooqPersistenceManager pm, Object observationId) {
+        final TableImpObservations obs = tableObservations.as("o");
+        final TableImpDatastreams ds = tableDatastreams.as("d");
+        final TableImpParty party = tableParties.as("p");
+        final Field dsPartyId = ds.field(tableDatastreams.indexOf("PARTY_ID"));
+
+        final Field dsId = ds.getId();
+        final Field authId = party.colAuthId;
+        final Field id = party.getId();
+        final List<Field> fields = new ArrayList<>(Arrays.asList(dsId, authId, id));
+
+        Field mdsId = null;
+        Field partyId = dsPartyId;
+        TableImpMultiDatastreams mds = null;
+        if (tableMultiDatastreams != null) {
+            mds = tableMultiDatastreams.as("m");
+            mdsId = mds.getId();
+            partyId = DSL.coalesce(dsPartyId, mds.field(tableMultiDatastreams.indexOf("PARTY_ID")));
+            fields.add(mdsId);
+        }
+
+        HookMetrics.countDbCall();
+        SelectJoinStep<Record> query = pm.getDslContext()
+                .select(fields)
+                .from(obs)
+                .leftJoin(ds).on(((Field) ds.getId()).eq(obs.getDatastreamId()));
+        if (mds != null) {
+            query = query.leftJoin(mds).on(((Field) mds.getId()).eq(obs.field(tableObservations.indexOf("MULTI_DATASTREAM_ID"))));
+        }
+        final Record result = query
+                .leftJoin(party).on(((Field) party.getId()).eq(partyId))
+                .where(((Field) obs.getId()).eq(observationId))
+                .fetchOne();
+
+        if (result == null)
+            return null;
+
+        final Object parentId;
+        final EntityType parentType;
+        if (result.get(dsId) != null) {
+            parentId = result.get(dsId);
+            parentType = pluginCoreModel.etDatastream;
+        } else if ((mdsId != null) && (result.get(mdsId) != null)) {
+            parentId = result.get(mdsId);
+            parentType = pluginMultiDatastream.etMultiDatastream;
+        } else {
+            return null;
+        }
+
+        return new ObservationOwner(parentType, parentId, toPartyId(result.get(authId), result.get(id)));
+    }
+
+    /**
+     * Loads the owning Party of many Observations with one query, joining the
+     * Observations with their (Multi)Datastreams and Parties.
+     *
+     * @param pm the persistence manager to run the query with.
+     * @param observationIds the primary keys of the Observations.
+     * @return the id of the owning Party for each Observation that exists and
+     * is linked to a (Multi)Datastream, keyed by the String value of the
+     * Observation id. The value is null if the (Multi)Datastream is not linked
+     * to a Party.
+     */
+    public Map<String, String> resolveObservationOwners(JooqPersistenceManager pm, Collection<?> observationIds) {
+        final TableImpObservations obs = tableObservations.as("o");
+        final TableImpDatastreams ds = tableDatastreams.as("d");
+        final TableImpParty party = tableParties.as("p");
+        final Field obsId = obs.getId();
+        final Field authId = party.colAuthId;
+        final Field id = party.getId();
+
+        Field partyId = ds.field(tableDatastreams.indexOf("PARTY_ID"));
+        Condition linked = ((Field) ds.getId()).isNotNull();
+        TableImpMultiDatastreams mds = null;
+        if (tableMultiDatastreams != null) {
+            mds = tableMultiDatastreams.as("m");
+            partyId = DSL.coalesce(partyId, mds.field(tableMultiDatastreams.indexOf("PARTY_ID")));
+            linked = linked.or(((Field) mds.getId()).isNotNull());
+        }
+
+        HookMetrics.countDbCall();
+        SelectJoinStep<Record3<Object, Object, Object>> query = pm.getDslContext()
+                .select(obsId, authId, id)
+                .from(obs)
+                .leftJoin(ds).on(((Field) ds.getId()).eq(obs.getDatastreamId()));
+        if (mds != null) {
+            query = query.leftJoin(mds).on(((Field) mds.getId()).eq(obs.field(tableObservations.indexOf("MULTI_DATASTREAM_ID"))));
+        }
+
+        final Map<String, String> owners = new HashMap<>();
+        query.leftJoin(party).on(((Field) party.getId()).eq(partyId))
+                .where(((Field) obsId).in(observationIds).and(linked))
+                .fetch()
+                .forEach(r -> owners.put(r.value1().toString(), toPartyId(r.value2(), r.value3())));
+        return owners;
+    }
+
+    /**
+     * Loads the Licenses of the (Multi)Datastreams of the given Observations
+     * with one query.
+     *
+     * @param pm the persistence manager to run the query with.
+     * @param observationIds the primary keys of the Observations.
+     * @return the String value of the License id for each existing
+     * Observation, keyed by the String value of the Observation id. The value
+     * is null if the (Multi)Datastream is not linked to a License.
+     */
+    public Map<String, String> resolveObservationLicenses(JooqPersistenceManager pm, Collection<?> observationIds) {
+        final TableImpObservations obs = tableObservations.as("o");
+        final TableImpDatastreams ds = tableDatastreams.as("d");
+        final Field obsId = obs.getId();
+        Field licenseId = ds.field(tableDatastreams.indexOf("LICENSE_ID"));
+
+        TableImpMultiDatastreams mds = null;
+        if (tableMultiDatastreams != null) {
+            mds = tableMultiDatastreams.as("m");
+            licenseId = DSL.coalesce(licenseId, mds.field(tableMultiDatastreams.indexOf("LICENSE_ID")));
+        }
+
+        HookMetrics.countDbCall();
+        SelectJoinStep<Record2<Object, Object>> query = pm.getDslContext()
+                .select(obsId, licenseId)
+                .from(obs)
+                .leftJoin(ds).on(((Field) ds.getId()).eq(obs.getDatastreamId()));
+        if (mds != null) {
+            query = query.leftJoin(mds).on(((Field) mds.getId()).eq(obs.field(tableObservations.indexOf("MULTI_DATASTREAM_ID"))));
+        }
+
+        final Map<String, String> result = new HashMap<>();
+        query.where(((Field) obsId).in(observationIds))
+                .fetch()
+                .forEach(r -> result.put(r.value1().toString(), (r.value2() == null) ? null : r.value2().toString()));
+        return result;
+    }
+
+    /**
+     * Loads the owning Party of all given entities with one query.
+     *
+     * @param pm the persistence manager to run the query with.
+     * @param entityType the type of the entities, one of Thing, Datastream,
+     * MultiDatastream, ObservationGroup or Campaign.
+     * @param ids the primary keys of the entities.
+     * @return the id of the owning Party for each existing entity, keyed by
+     * the String value of the entity id. The value is null if the entity is
+     * not linked to a Party.
+     */
+    public Map<String, String> resolveOwners(JooqPersistenceManager pm, EntityType entityType, Collection<?> ids) {
+        final StaTableAbstract<?> table = getTable(entityType);
+        final StaTableAbstract<?> main = table.as("e");
+        final TableImpParty party = tableParties.as("p");
+        final Field id = main.getPkFields().get(0);
+        final Field authId = party.colAuthId;
+        final Field partyId = party.getId();
+
+        final Map<String, String> owners = new HashMap<>();
+        HookMetrics.countDbCall();
+        pm.getDslContext()
+                .select(id, partyId, authId)
+                .from(main)
+                .leftJoin(party).on(((Field) partyId).eq(main.field(table.indexOf("PARTY_ID"))))
+                .where(id.in(ids))
+                .fetch()
+                .forEach(r -> owners.put(r.get(id).toString(), toPartyId(r.get(authId), r.get(partyId))));
+        return owners;
+    }
+
+    /**
+     * Loads the License id of all given entities with one query.
+     *
+     * @param pm the persistence manager to run the query with.
+     * @param entityType the type of the entities, one of Datastream,
+     * MultiDatastream, ObservationGroup or Campaign.
+     * @param ids the primary keys of the entities.
+     * @return the License id for each existing entity, keyed by the String
+     * value of the entity id. The value is null if the entity is not linked
+     * to a License.
+     */
+    public Map<String, Object> resolveLicenses(JooqPersistenceManager pm, EntityType entityType, Collection<?> ids) {
+        final StaTableAbstract<?> table = getTable(entityType);
+        final Field id = table.getPkFields().get(0);
+        final Field licenseId = table.field(table.indexOf("LICENSE_ID"));
+
+        final Map<String, Object> licenses = new HashMap<>();
+        HookMetrics.countDbCall();
+        pm.getDslContext()
+                .select(id, licenseId)
+                .from(table)
+                .where(id.in(ids))
+                .fetch()
+                .forEach(r -> licenses.put(r.get(id).toString(), r.get(licenseId)));
+        return licenses;
+    }
+
+    /**
+     * Finds those of the given entities that have members, using a semi-join
+     * so that the database can stop at the first member of each entity.
+     *
+     * @param pm the persistence manager to run the query with.
+     * @param entityType the type of the entities, one of Datastream,
+     * MultiDatastream or ObservationGroup (members are Observations) or
+     * Campaign (members are Datastreams).
+     * @param ids the primary keys of the entities.
+     * @return the String value of the ids of the non-empty entities.
+     */
+    public Set<String> findNonEmpty(JooqPersistenceManager pm, EntityType entityType, Collection<?> ids) {
+        final Members members = getMembers(entityType);
+        return findReferenced(pm, entityType, ids, members.table(), members.fk());
+    }
+
+    /**
+     * Finds those of the given entities that exist, with one query.
+     *
+     * @param pm the persistence manager to run the query with.
+     * @param entityType the type of the entities.
+     * @param ids the primary keys of the entities.
+     * @return the String value of the ids of the existing entities.
+     */
+    public Set<String> findExisting(JooqPersistenceManager pm, EntityType entityType, Collection<?> ids) {
+        final StaTableAbstract<?> main = getTable(entityType);
+        final Field id = main.getPkFields().get(0);
+
+        final Set<String> result = new HashSet<>();
+        HookMetrics.countDbCall();
+        pm.getDslContext()
+                .select(id)
+                .from(main)
+                .where(id.in(ids))
+                .fetch()
+                .forEach(r -> result.add(r.get(id).toString()));
+        return result;
+    }
+
+    /**
+     * Checks if the entity has at least one member, with a
+     * {@code SELECT EXISTS(...)} on the member table only.
+     *
+     * @param pm the persistence manager to run the query with.
+     * @param entityType the type of the entity, one of Datastream,
+     * MultiDatastream, ObservationGroup or Campaign.
+     * @param id the primary key of the entity.
+     * @return true if the entity has members.
+     */
+    public boolean hasMembers(JooqPersistenceManager pm, EntityType entityType, Object id) {
+        final Members members = getMembers(entityType);
+        HookMetrics.countDbCall();
+        return pm.getDslContext()
+                .fetchExists(DSL.selectOne()
+                        .from(members.table())
+                        .where(((Field) members.fk()).eq(id)));
+    }
+
+    /**
+     * Finds those of the given Campaigns that have MultiDatastreams.
+     *
+     * @param pm the persistence manager to run the query with.
+     * @param ids the primary keys of the Campaigns.
+     * @return the String value of the ids of the Campaigns with
+     * MultiDatastreams.
+     */
+    public Set<String> findCampaignsWithMultiDatastreams(JooqPersistenceManager pm, Collection<?> ids) {
+        final TableImpCampaignsMultiDatastreams tableCampaignsMultiDatastreams = tables.getTableForClass(TableImpCampaignsMultiDatastreams.class);
+        if (tableCampaignsMultiDatastreams == null)
+            return Collections.emptySet();
+        return findReferenced(pm, pluginPlus.etCampaign, ids, tableCampaignsMultiDatastreams, tableCampaignsMultiDatastreams.getCampaignId());
+    }
+
+    /**
+     * Loads the number of Datastreams and MultiDatastreams of a Campaign from
+     * the counters maintained by the database, without counting the rows of
+     * the link tables.
+     *
+     * @param pm the persistence manager to run the query with.
+     * @param id the primary key of the Campaign.
+     * @return the member counts, or null if the Campaign does not exist.
+     */
+    public CampaignMembers countCampaignMembers(JooqPersistenceManager pm, Object id) {
+        final TableImpCampaign tableCampaigns = tables.getTableForClass(TableImpCampaign.class);
+        HookMetrics.countDbCall();
+        final Record2<Long, Long> result = pm.getDslContext()
+                .select(tableCampaigns.colDatastreamCount, tableCampaigns.colMultiDatastreamCount)
+                .from(tableCampaigns)
+                .where(((Field) tableCampaigns.getId()).eq(id))
+                .fetchOne();
+        if (result == null)
+            return null;
+        return new CampaignMembers(result.value1(), result.value2());
+    }
+
+    /**
+     * Loads the ids of the Things linked to a Location from THINGS_LOCATIONS.
+     *
+     * @param pm the persistence manager to run the query with.
+     * @param locationId the primary key of the Location.
+     * @param limit the maximum number of Things to load.
+     * @return the primary keys of the Things.
+     */
+    public List<Object> findThingsOfLocation(JooqPersistenceManager pm, Object locationId, int limit) {
+        final TableImpThingsLocations tableThingsLocations = tables.getTableForClass(TableImpThingsLocations.class);
+        HookMetrics.countDbCall();
+        return pm.getDslContext()
+                .select(tableThingsLocations.getThingId())
+                .from(tableThingsLocations)
+                .where(((Field) tableThingsLocations.getLocationId()).eq(locationId))
+                .limit(limit)
+                .fetch(0);
+    }
+
+    private Set<String> findReferenced(JooqPersistenceManager pm, EntityType entityType, Collection<?> ids, Table<?> memberTable, Field<?> memberFk) {
+        final StaTableAbstract<?> main = getTable(entityType);
+        final Field id = main.getPkFields().get(0);
+
+        final Set<String> result = new HashSet<>();
+        HookMetrics.countDbCall();
+        pm.getDslContext()
+                .select(id)
+                .from(main)
+                .where(id.in(ids))
+                .andExists(DSL.selectOne().from(memberTable).where(((Field) memberFk).eq(id)))
+                .fetch()
+                .forEach(r -> result.add(r.get(id).toString()));
+        return result;
+    }
+
+    private Members getMembers(EntityType entityType) {
+        if (entityType.equals(pluginCoreModel.etDatastream))
+            return new Members(tableObservations, tableObservations.getDatastreamId());
+
+        if ((pluginMultiDatastream != null) && entityType.equals(pluginMultiDatastream.etMultiDatastream))
+            return new Members(tableObservations, tableObservations.field(tableObservations.indexOf("MULTI_DATASTREAM_ID")));
+
+        if (entityType.equals(pluginPlus.etGroup)) {
+            final TableImpGroupsObservations tableGroupsObservations = tables.getTableForClass(TableImpGroupsObservations.class);
+            return new Members(tableGroupsObservations, tableGroupsObservations.getGroupId());
+        }
+
+        if (entityType.equals(pluginPlus.etCampaign)) {
+            final TableImpCampaignsDatastreams tableCampaignsDatastreams = tables.getTableForClass(TableImpCampaignsDatastreams.class);
+            return new Members(tableCampaignsDatastreams, tableCampaignsDatastreams.getCampaignId());
+        }
+
+        throw new IllegalArgumentException("Cannot check members of " + entityType.entityName);
+    }
+
+    private StaTableAbstract<?> getTable(EntityType entityType) {
+        return (StaTableAbstract<?>) tables.getTableForType(entityType);
+    }
+
+    private static String toPartyId(Object authId, Object partyId) {
+        if (authId != null)
+            return authId.toString();
+        return (partyId == null) ? null : partyId.toString();
+    }
+
+    /**
+     * The (Multi)Datastream an Observation belongs to, and the id of the
+     * Party owning it. The partyId is null if the (Multi)Datastream is not
+     * linked to a Party.
+     */
+    public static record ObservationOwner(EntityType parentType, Object parentId, String partyId) {
+    }
+
+    /**
+     * The number of Datastreams and MultiDatastreams of a Campaign.
+     */
+    public static record CampaignMembers(long datastreams, long multiDatastreams) {
+    }
+
+    /**
+     * The table holding the members of an entity, and the column referencing
+     * the entity.
+     */
+    private static record Members(Table<?> table, Field<?> fk) {
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.tables.TableCollection;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.utils.validator.SecurityTableWrapper;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.coremodel.TableImpDatastreams;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.coremodel.TableImpObservations;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.multidatastream.PluginMultiDatastream;
+import de.fraunhofer.iosb.ilt.frostserver.plugin.multidatastream.TableImpMultiDatastreams;
+import de.fraunhofer.iosb.ilt.frostserver.service.ServiceRequest;
+import de.fraunhofer.iosb.ilt.frostserver.util.user.PrincipalExtended;
+import de.securedimensions.frostserver.plugin.staplus.TableImpParty;
+import java.security.Principal;
+import java.util.Locale;
+import org.jooq.Condition;
+import org.jooq.Field;
+import org.jooq.Select;
+import org.jooq.SelectJoinStep;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+
+/**
+ * Restricts the rows of ObservationGroups, Campaigns and Relations that can be
+ * read to the public ones and those owned by the acting Party, by wrapping the
+ * table in a filtered sub-select. The filter is part of the SQL query, so
+ * paging and {@code $count} only see the visible rows.
+ * <p>
+ * An ObservationGroup or Campaign is public if it is linked to a License, and
+ * owned by the Party it is linked to. A Relation is public if the
+ * (Multi)Datastream of its Subject is linked to a License, and owned by the
+ * Party of that (Multi)Datastream. Admins and server internal queries, which
+ * run outside of a request, see all rows.
+ */
+public class OwnershipSecurityWrapper implements SecurityTableWrapper {
+
+    private final Target target;
+    private final PluginMultiDatastream pluginMultiDatastream;
+
+    public OwnershipSecurityWrapper(Target target, PluginMultiDatastream pluginMultiDatastream) {
+        this.target = target;
+        this.pluginMultiDatastream = pluginMultiDatastream;
+    }
+
+    @Override
+    public Table wrap(Table table, JooqPersistenceManager pm) {
+        final ServiceRequest request = ServiceRequest.getLocalRequest();
+        if (seesAll(request))
+            return table;
+
+        return DSL.select(table.fields())
+                .from(table)
+                .where(visible(pm.getTableCollection(), table, request.getUserPrincipal()))
+                .asTable();
+    }
+
+    /**
+     * Returns the condition that restricts the rows of the table to those the
+     * acting user may read, for queries that use the table directly instead
+     * of through {@link #wrap(Table, JooqPersistenceManager)}.
+     *
+     * @param tables the table collection.
+     * @param table the (aliased) table to restrict.
+     * @return the condition, always true for admins and outside of a request.
+     */
+    public Condition isVisible(TableCollection tables, Table table) {
+        final ServiceRequest request = ServiceRequest.getLocalRequest();
+        if (seesAll(request))
+            return DSL.noCondition();
+
+        return visible(tables, table, request.getUserPrincipal());
+    }
+
+    private Condition visible(TableCollection tables, Table table, Principal principal) {
+        if (target == Target.RELATION)
+            return DSL.exists(subjectVisible(tables, table, principal));
+
+        return isVisible(tables, table.field("LICENSE_ID"), table.field("PARTY_ID"), principal);
+    }
+
+    private static boolean seesAll(ServiceRequest request) {
+        if (request == null)
+            return true;
+
+        final Principal principal = request.getUserPrincipal();
+        return (principal instanceof PrincipalExtended) && ((PrincipalExtended) principal).isAdmin();
+    }
+
+    private Select<?> subjectVisible(TableCollection tables, Table relations, Principal principal) {
+        final TableImpObservations tableObservations = tables.getTableForClass(TableImpObservations.class);
+        final TableImpDatastreams tableDatastreams = tables.getTableForClass(TableImpDatastreams.class);
+        final TableImpObservations obs = tableObservations.as("so");
+        final TableImpDatastreams ds = tableDatastreams.as("sd");
+
+        Field licenseId = ds.field(tableDatastreams.indexOf("LICENSE_ID"));
+        Field partyId = ds.field(tableDatastreams.indexOf("PARTY_ID"));
+        SelectJoinStep<?> query = DSL.selectOne()
+                .from(obs)
+                .leftJoin(ds).on(((Field) ds.getId()).eq(obs.getDatastreamId()));
+        if (pluginMultiDatastream != null) {
+            final TableImpMultiDatastreams tableMultiDatastreams = tables.getTableForClass(TableImpMultiDatastreams.class);
+            final TableImpMultiDatastreams mds = tableMultiDatastreams.as("sm");
+            licenseId = DSL.coalesce(licenseId, mds.field(tableMultiDatastreams.indexOf("LICENSE_ID")));
+            partyId = DSL.coalesce(partyId, mds.field(tableMultiDatastreams.indexOf("PARTY_ID")));
+            query = query.leftJoin(mds).on(((Field) mds.getId()).eq(obs.field(tableObservations.indexOf("MULTI_DATASTREAM_ID"))));
+        }
+        return query
+                .where(((Field) obs.getId()).eq(relations.field("SUBJECT_ID")))
+                .and(isVisible(tables, licenseId, partyId, principal));
+    }
+
+    static Condition isVisible(TableCollection tables, Field licenseId, Field partyId, Principal principal) {
+        final Condition isPublic = licenseId.isNotNull();
+        if (principal == null)
+            return isPublic;
+
+        final TableImpParty tableParties = tables.getTableForClass(TableImpParty.class);
+        final String userId = AuthIds.normalise(principal).toLowerCase(Locale.ROOT);
+        return isPublic.or(partyId.in(DSL.select(tableParties.getId())
+                .from(tableParties)
+                .where(DSL.lower(tableParties.colAuthId).eq(userId))
+                .or(DSL.lower(tableParties.getId().cast(SQLDataType.VARCHAR)).eq(userId))));
+    }
+
+    /**
+     * The kind of table that is wrapped.
+     */
+    public enum Target {
+        /**
+         * ObservationGroups and Campaigns, owned through their PARTY_ID.
+         */
+        PARTY,
+        /**
+         * Relations, owned through the (Multi)Datastream of their Subject.
+         */
+        RELATION
+    }
+
+}
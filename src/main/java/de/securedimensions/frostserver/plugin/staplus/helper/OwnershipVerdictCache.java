@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import de.fraunhofer.iosb.ilt.frostserver.model.EntityType;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers, across requests, the outcome of the ownership checks of
+ * Datastreams, MultiDatastreams, Things, ObservationGroups and Campaigns per
+ * principal. Clients that repeatedly write to the same entities, for instance
+ * sensor gateways publishing Observations over MQTT, have the Party of an
+ * entity resolved once, until the entry expires or the entity changes.
+ *
+ * Entries are invalidated by the pre-update and pre-delete hooks of this node,
+ * and by the entity change events of the message bus for changes made on
+ * other nodes. A changed Party flushes all entries. The time to live bounds the staleness if an event is lost.
+ */
+public final class OwnershipVerdictCache {
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Map<Key, Map<String, Verdict>> verdicts = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxSize the maximum number of entities to keep verdicts for.
+     * @param ttlSeconds the time after which a verdict is checked again.
+     */
+    public OwnershipVerdictCache(int maxSize, int ttlSeconds) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlSeconds * 1000L;
+    }
+
+    /**
+     * Returns the cached outcome of the ownership check.
+     *
+     * @param userId the normalised name of the principal.
+     * @param entityType the type of the entity.
+     * @param id the primary key of the entity.
+     * @return TRUE if the principal owns the entity, FALSE if not, null if
+     * the ownership needs to be checked.
+     */
+    public Boolean get(String userId, EntityType entityType, Object id) {
+        final Map<String, Verdict> owners = verdicts.get(new Key(entityType, id));
+        final Verdict verdict = (owners == null) ? null : owners.get(userId);
+        if (verdict != null && verdict.expires > System.currentTimeMillis()) {
+            hits.increment();
+            return verdict.allowed;
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(String userId, EntityType entityType, Object id, boolean allowed) {
+        if (verdicts.size() >= maxSize)
+            evict();
+
+        verdicts.computeIfAbsent(new Key(entityType, id), k -> new ConcurrentHashMap<>())
+                .put(userId, new Verdict(allowed, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * Drops all verdicts for the given entity, because its Party is changed
+     * or the entity is deleted.
+     *
+     * @param entityType the type of the entity.
+     * @param id the primary key of the entity.
+     */
+    public void invalidate(EntityType entityType, Object id) {
+        verdicts.remove(new Key(entityType, id));
+    }
+
+    /**
+     * Drops all verdicts, because a Party is changed and it is not known
+     * which entities it was linked to.
+     */
+    public void clear() {
+        verdicts.clear();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private void evict() {
+        final long now = System.currentTimeMillis();
+        verdicts.values().forEach(owners -> owners.values().removeIf(verdict -> verdict.expires <= now));
+        verdicts.values().removeIf(Map::isEmpty);
+
+        // Still full: make room by dropping arbitrary entries
+        final int target = maxSize - maxSize / 10;
+        final Iterator<Key> it = verdicts.keySet().iterator();
+        while (verdicts.size() >= target && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static record Key(EntityType entityType, Object id) {
+    }
+
+    private static record Verdict(boolean allowed, long expires) {
+    }
+
+}
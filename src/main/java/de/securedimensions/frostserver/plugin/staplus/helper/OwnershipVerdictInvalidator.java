@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import de.fraunhofer.iosb.ilt.frostserver.messagebus.EntityChangedMessage;
+import de.fraunhofer.iosb.ilt.frostserver.messagebus.MessageListener;
+import de.fraunhofer.iosb.ilt.frostserver.model.EntityType;
+import de.fraunhofer.iosb.ilt.frostserver.model.core.Entity;
+import java.util.Set;
+
+/**
+ * Invalidates the {@link OwnershipVerdictCache} on the entity change events of
+ * the message bus, so that changes made through other nodes are seen before
+ * the cached verdicts expire. Any update invalidates the verdicts of the
+ * entity, not only an update of its Party. An update of a Party can re-link
+ * entities that the event does not name, so it flushes all verdicts.
+ */
+public class OwnershipVerdictInvalidator implements MessageListener {
+
+    private final OwnershipVerdictCache verdicts;
+    private final Set<EntityType> entityTypes;
+    private final EntityType etParty;
+
+    public OwnershipVerdictInvalidator(OwnershipVerdictCache verdicts, Set<EntityType> entityTypes, EntityType etParty) {
+        this.verdicts = verdicts;
+        this.entityTypes = entityTypes;
+        this.etParty = etParty;
+    }
+
+    @Override
+    public void messageReceived(EntityChangedMessage message) {
+        if (message.getEventType() == EntityChangedMessage.Type.CREATE)
+            return;
+
+        final Entity entity = message.getEntity();
+        if (entity == null)
+            return;
+
+        if (entity.getEntityType().equals(etParty)) {
+            verdicts.clear();
+            return;
+        }
+
+        if (!entityTypes.contains(entity.getEntityType()))
+            return;
+
+        verdicts.invalidate(entity.getEntityType(), entity.getPrimaryKeyValues().get(0));
+    }
+
+}
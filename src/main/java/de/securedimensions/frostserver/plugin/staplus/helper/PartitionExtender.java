@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import de.fraunhofer.iosb.ilt.frostserver.persistence.PersistenceManager;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.PersistenceManagerFactory;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
+import de.fraunhofer.iosb.ilt.frostserver.settings.CoreSettings;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically calls STAPLUS_GROUPS_OBSERVATIONS_EXTEND on a range partitioned
+ * GROUPS_OBSERVATIONS table, so that there always is a partition for the next
+ * Observation ids and new links do not accumulate in the default partition.
+ */
+public class PartitionExtender {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionExtender.class.getName());
+
+    private final CoreSettings settings;
+    private final ScheduledExecutorService timer;
+
+    public PartitionExtender(CoreSettings settings, long intervalMillis) {
+        if (intervalMillis < 1)
+            throw new IllegalArgumentException("Extend interval must be positive");
+        this.settings = settings;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "STAplus-PartitionExtender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::extend, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background thread.
+     */
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private void extend() {
+        final PersistenceManager pm = PersistenceManagerFactory.getInstance(settings).create();
+        if (!(pm instanceof JooqPersistenceManager ppm)) {
+            LOGGER.error("Extending GROUPS_OBSERVATIONS requires a JooqPersistenceManager");
+            pm.close();
+            return;
+        }
+        try {
+            final Integer created = ppm.getDslContext()
+                    .select(DSL.function(DSL.name("STAPLUS_GROUPS_OBSERVATIONS_EXTEND"), Integer.class))
+                    .fetchOne(0, Integer.class);
+            pm.commitAndClose();
+            if (created != null && created > 0)
+                LOGGER.info("Created {} GROUPS_OBSERVATIONS partitions", created);
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to extend the GROUPS_OBSERVATIONS partitions", e);
+            pm.rollbackAndClose();
+        }
+    }
+
+}
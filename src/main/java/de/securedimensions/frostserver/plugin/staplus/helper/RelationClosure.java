@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.tables.TableCollection;
+import de.securedimensions.frostserver.plugin.staplus.TableImpRelation;
+import de.securedimensions.frostserver.plugin.staplus.TableImpRelationsClosure;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import org.jooq.CommonTableExpression;
+import org.jooq.Condition;
+import org.jooq.DataType;
+import org.jooq.Field;
+import org.jooq.Record2;
+import org.jooq.Record3;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+
+/**
+ * Maintains RELATIONS_CLOSURE, the transitive closure of the Relations
+ * between Observations. For each pair of Observations connected by a chain of
+ * Relations from Subject to Object, with at most {@link #getMaxDepth()}
+ * Relations, it holds one row with the length of the shortest chain. Asking
+ * whether one Observation is derived from another, transitively, is then a
+ * single primary key lookup.
+ * <p>
+ * Adding a Relation inserts the pairs it connects, combining the stored
+ * ancestors of its Subject with the stored descendants of its Object.
+ * Removing a Relation recomputes the rows of its Subject and of all ancestors
+ * of its Subject, as other chains may still connect them. Removing an
+ * Observation does the same for all its ancestors, as the chains through it
+ * are broken when its Relations are deleted by the foreign key cascade.
+ * Relations to an external resource are not part of the closure.
+ */
+public class RelationClosure {
+
+    private static final String CTE_NAME = "relation_walk";
+    private static final String COL_ANCESTOR_ID = "ANCESTOR_ID";
+    private static final String COL_DESCENDANT_ID = "DESCENDANT_ID";
+    private static final String COL_DEPTH = "DEPTH";
+
+    private final TableImpRelation tableRelations;
+    private final TableImpRelationsClosure tableClosure;
+    private final int maxDepth;
+
+    public RelationClosure(TableCollection tables, int maxDepth) {
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("Maximum depth must be positive");
+        this.tableRelations = tables.getTableForClass(TableImpRelation.class);
+        this.tableClosure = tables.getTableForClass(TableImpRelationsClosure.class);
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Adds the pairs of Observations connected by a new Relation.
+     *
+     * @param pm the persistence manager to run the query with.
+     * @param subjectId the Subject of the new Relation.
+     * @param objectId the Object of the new Relation, or null for a Relation
+     * to an external resource.
+     */
+    public void addRelation(JooqPersistenceManager pm, Object subjectId, Object objectId) {
+        if (subjectId == null || objectId == null)
+            return;
+
+        final DataType idType = tableClosure.getAncestorId().getDataType();
+        final Object subject = idType.convert(subjectId);
+        final Object object = idType.convert(objectId);
+
+        final Table<?> ancestors = DSL.select(((Field) tableClosure.getAncestorId()).as(COL_ANCESTOR_ID), tableClosure.colDepth.as(COL_DEPTH))
+                .from(tableClosure)
+                .where(((Field) tableClosure.getDescendantId()).eq(subject))
+                .unionAll(DSL.select(DSL.val(subject, idType).as(COL_ANCESTOR_ID), DSL.inline(0).as(COL_DEPTH)))
+                .asTable("a");
+        final Table<?> descendants = DSL.select(((Field) tableClosure.getDescendantId()).as(COL_DESCENDANT_ID), tableClosure.colDepth.as(COL_DEPTH))
+                .from(tableClosure)
+                .where(((Field) tableClosure.getAncestorId()).eq(object))
+                .unionAll(DSL.select(DSL.val(object, idType).as(COL_DESCENDANT_ID), DSL.inline(0).as(COL_DEPTH)))
+                .asTable("d");
+
+        final Field ancestorId = ancestors.field(COL_ANCESTOR_ID);
+        final Field descendantId = descendants.field(COL_DESCENDANT_ID);
+        final Field<Integer> depth = ancestors.field(COL_DEPTH, Integer.class).plus(descendants.field(COL_DEPTH, Integer.class)).plus(1);
+
+        HookMetrics.countDbCall();
+        pm.getDslContext()
+                .insertInto(tableClosure, (Field) tableClosure.getAncestorId(), (Field) tableClosure.getDescendantId(), tableClosure.colDepth)
+                .select(DSL.select(ancestorId, descendantId, DSL.min(depth))
+                        .from(ancestors)
+                        .crossJoin(descendants)
+                        .where(depth.le(maxDepth))
+                        .and(ancestorId.ne(descendantId))
+                        .groupBy(ancestorId, descendantId))
+                .onConflict(tableClosure.getAncestorId(), tableClosure.getDescendantId())
+                .doUpdate()
+                .set(tableClosure.colDepth, DSL.least(tableClosure.colDepth, DSL.excluded(tableClosure.colDepth)))
+                .execute();
+    }
+
+    /**
+     * Removes the pairs of Observations that are only connected through the
+     * given Relation. Call this before the Relation is deleted or its Subject
+     * or Object is changed.
+     *
+     * @param pm the persistence manager to run the queries with.
+     * @param relationId the primary key of the Relation.
+     */
+    public void removeRelation(JooqPersistenceManager pm, Object relationId) {
+        final Object id = tableRelations.getId().getDataType().convert(relationId);
+
+        HookMetrics.countDbCall();
+        final Record2<?, ?> relation = pm.getDslContext()
+                .select(tableRelations.getSubjectId(), tableRelations.getObjectId())
+                .from(tableRelations)
+                .where(((Field) tableRelations.getId()).eq(id))
+                .fetchOne();
+        if (relation == null || relation.value2() == null)
+            return;
+
+        final Object subject = relation.value1();
+        final List<Object> affected = new ArrayList<>();
+        affected.add(subject);
+        HookMetrics.countDbCall();
+        affected.addAll(pm.getDslContext()
+                .select(tableClosure.getAncestorId())
+                .from(tableClosure)
+                .where(((Field) tableClosure.getDescendantId()).eq(subject))
+                .fetch(tableClosure.getAncestorId()));
+
+        HookMetrics.countDbCall();
+        pm.getDslContext()
+                .deleteFrom(tableClosure)
+                .where(tableClosure.getAncestorId().in(affected))
+                .execute();
+
+        insertWalk(pm, affected, r -> ((Field) r.getId()).ne(id));
+    }
+
+    /**
+     * Removes the pairs of Observations that are only connected through the
+     * given Observation. Call this before the Observation is deleted; the
+     * rows of the Observation itself are deleted by the foreign key cascade.
+     *
+     * @param pm the persistence manager to run the queries with.
+     * @param observationId the primary key of the Observation.
+     */
+    public void removeObservation(JooqPersistenceManager pm, Object observationId) {
+        final Object id = tableClosure.getDescendantId().getDataType().convert(observationId);
+
+        HookMetrics.countDbCall();
+        final List<Object> affected = new ArrayList<>(pm.getDslContext()
+                .select(tableClosure.getAncestorId())
+                .from(tableClosure)
+                .where(((Field) tableClosure.getDescendantId()).eq(id))
+                .fetch(tableClosure.getAncestorId()));
+        if (affected.isEmpty())
+            return;
+
+        HookMetrics.countDbCall();
+        pm.getDslContext()
+                .deleteFrom(tableClosure)
+                .where(tableClosure.getAncestorId().in(affected))
+                .execute();
+
+        // A chain only reaches the Observation through a Relation with it as Object
+        insertWalk(pm, affected, r -> ((Field) r.getObjectId()).ne(id));
+    }
+
+    /**
+     * @param pm the persistence manager to run the query with.
+     * @return true if the RELATIONS_CLOSURE table exists.
+     */
+    public boolean tableExists(JooqPersistenceManager pm) {
+        HookMetrics.countDbCall();
+        return pm.getDslContext()
+                .select(DSL.function("to_regclass", Object.class, DSL.inline(pm.getDslContext().render(tableClosure))))
+                .fetchOne(0) != null;
+    }
+
+    /**
+     * Recomputes the whole closure from the Relations.
+     *
+     * @param pm the persistence manager to run the queries with.
+     * @return the number of rows of the closure.
+     */
+    public int rebuild(JooqPersistenceManager pm) {
+        HookMetrics.countDbCall();
+        pm.getDslContext()
+                .deleteFrom(tableClosure)
+                .execute();
+        return insertWalk(pm, null, r -> DSL.noCondition());
+    }
+
+    /**
+     * Inserts the closure rows of all chains that start at the given
+     * Subjects, or at any Subject if null, following only the Relations for
+     * which the given condition holds.
+     */
+    private int insertWalk(JooqPersistenceManager pm, List<Object> subjects, Function<TableImpRelation, Condition> included) {
+        final TableImpRelation first = tableRelations.as("r0");
+        final TableImpRelation next = tableRelations.as("r");
+        final Condition firstIncluded = included.apply(first);
+        final Condition nextIncluded = included.apply(next);
+
+        final DataType idType = tableClosure.getAncestorId().getDataType();
+        final Field<Integer> depthField = DSL.field(DSL.name(CTE_NAME, COL_DEPTH), SQLDataType.INTEGER);
+        final Field ancestorField = DSL.field(DSL.name(CTE_NAME, COL_ANCESTOR_ID), idType);
+        final Field descendantField = DSL.field(DSL.name(CTE_NAME, COL_DESCENDANT_ID), idType);
+
+        final CommonTableExpression<Record3<Object, Object, Integer>> walk = DSL.name(CTE_NAME)
+                .fields(COL_ANCESTOR_ID, COL_DESCENDANT_ID, COL_DEPTH)
+                .as(DSL.select((Field<Object>) first.getSubjectId(), (Field<Object>) first.getObjectId(), DSL.inline(1))
+                        .from(first)
+                        .where((subjects == null) ? DSL.noCondition() : first.getSubjectId().in(subjects))
+                        .and(first.getObjectId().isNotNull())
+                        .and(firstIncluded)
+                        .union(DSL.select(ancestorField, (Field<Object>) next.getObjectId(), depthField.plus(1))
+                                .from(next)
+                                .join(DSL.table(DSL.name(CTE_NAME))).on(((Field) next.getSubjectId()).eq(descendantField))
+                                .where(depthField.lt(maxDepth))
+                                .and(next.getObjectId().isNotNull())
+                                .and(nextIncluded)));
+
+        final Field<Object> ancestorId = walk.field(COL_ANCESTOR_ID, Object.class);
+        final Field<Object> descendantId = walk.field(COL_DESCENDANT_ID, Object.class);
+
+        HookMetrics.countDbCall();
+        return pm.getDslContext()
+                .insertInto(tableClosure, (Field) tableClosure.getAncestorId(), (Field) tableClosure.getDescendantId(), tableClosure.colDepth)
+                .select(DSL.withRecursive(walk)
+                        .select(ancestorId, descendantId, DSL.min(walk.field(COL_DEPTH, Integer.class)))
+                        .from(walk)
+                        .where(ancestorId.ne(descendantId))
+                        .groupBy(ancestorId, descendantId))
+                .execute();
+    }
+
+}
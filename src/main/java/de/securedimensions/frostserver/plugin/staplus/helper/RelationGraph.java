@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.tables.TableCollection;
+import de.securedimensions.frostserver.plugin.staplus.TableImpRelation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.jooq.CommonTableExpression;
+import org.jooq.Condition;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record5;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+
+/**
+ * Walks the Relations between Observations with one
+ * {@code WITH RECURSIVE} query over RELATIONS. Starting at an Observation,
+ * the Relations are followed hop by hop, either from Subject to Object or
+ * from Object to Subject, up to a maximum depth. Each Relation reached is
+ * returned once, with the smallest depth it was reached at. The recursion
+ * keeps each Relation once per depth, so the number of rows is bounded by the
+ * number of Relations times the depth rather than the number of paths. Cycles
+ * in the graph are cut off by the depth limit.
+ * <p>
+ * If the read ownership is enforced, only the Relations visible to the acting
+ * user are followed.
+ */
+public class RelationGraph {
+
+    private static final String CTE_NAME = "relation_graph";
+    private static final String COL_ID = "ID";
+    private static final String COL_SUBJECT_ID = "SUBJECT_ID";
+    private static final String COL_OBJECT_ID = "OBJECT_ID";
+    private static final String COL_ROLE = "ROLE";
+    private static final String COL_DEPTH = "DEPTH";
+
+    private final TableCollection tables;
+    private final TableImpRelation tableRelations;
+    private final int maxDepth;
+    private final OwnershipSecurityWrapper visibility;
+
+    /**
+     * @param tables the table collection.
+     * @param maxDepth the maximum number of hops.
+     * @param visibility the filter for the Relations the acting user may read,
+     * or null if all Relations are readable.
+     */
+    public RelationGraph(TableCollection tables, int maxDepth, OwnershipSecurityWrapper visibility) {
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("Maximum depth must be positive");
+        this.tables = tables;
+        this.tableRelations = tables.getTableForClass(TableImpRelation.class);
+        this.maxDepth = maxDepth;
+        this.visibility = visibility;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Loads all Relations reachable from the given Observation.
+     *
+     * @param pm the persistence manager to run the query with.
+     * @param observationId the primary key of the Observation to start at.
+     * @param direction the direction to follow the Relations in.
+     * @param depth the maximum number of hops, limited to
+     * {@link #getMaxDepth()}.
+     * @param role if not null, only Relations with this role are followed.
+     * @return the Relations reached, ordered by depth.
+     */
+    public List<Edge> traverse(JooqPersistenceManager pm, Object observationId, Direction direction, int depth, String role) {
+        if (depth < 1)
+            throw new IllegalArgumentException("Depth must be positive");
+        final int limit = Math.min(depth, maxDepth);
+        // The id may come as a String from the request URL
+        final Object startId = tableRelations.getSubjectId().getDataType().convert(observationId);
+
+        final TableImpRelation start = tableRelations.as("r0");
+        final TableImpRelation next = tableRelations.as("r");
+        final Field startFrom = (direction == Direction.OBJECTS) ? start.getSubjectId() : start.getObjectId();
+        final Field nextFrom = (direction == Direction.OBJECTS) ? next.getSubjectId() : next.getObjectId();
+
+        final Field<Integer> depthField = DSL.field(DSL.name(CTE_NAME, COL_DEPTH), SQLDataType.INTEGER);
+        final Field reachedField = (direction == Direction.OBJECTS)
+                ? DSL.field(DSL.name(CTE_NAME, COL_OBJECT_ID), tableRelations.getObjectId().getDataType())
+                : DSL.field(DSL.name(CTE_NAME, COL_SUBJECT_ID), tableRelations.getSubjectId().getDataType());
+
+        final CommonTableExpression<Record5<Object, Object, Object, String, Integer>> graph = DSL.name(CTE_NAME)
+                .fields(COL_ID, COL_SUBJECT_ID, COL_OBJECT_ID, COL_ROLE, COL_DEPTH)
+                .as(DSL.select((Field<Object>) start.getId(), (Field<Object>) start.getSubjectId(), (Field<Object>) start.getObjectId(), start.colRole, DSL.inline(1))
+                        .from(start)
+                        .where(startFrom.eq(startId))
+                        .and(roleCondition(start, role))
+                        .and(visibleCondition(start))
+                        .union(DSL.select((Field<Object>) next.getId(), (Field<Object>) next.getSubjectId(), (Field<Object>) next.getObjectId(), next.colRole, depthField.plus(1))
+                                .from(next)
+                                .join(DSL.table(DSL.name(CTE_NAME))).on(nextFrom.eq(reachedField))
+                                .where(depthField.lt(limit))
+                                .and(roleCondition(next, role))
+                                .and(visibleCondition(next))));
+
+        final Field<Object> id = graph.field(COL_ID, Object.class);
+        final Field<Object> subjectId = graph.field(COL_SUBJECT_ID, Object.class);
+        final Field<Object> objectId = graph.field(COL_OBJECT_ID, Object.class);
+        final Field<String> roleField = graph.field(COL_ROLE, String.class);
+        final Field<Integer> minDepth = DSL.min(graph.field(COL_DEPTH, Integer.class));
+
+        final List<Edge> edges = new ArrayList<>();
+        HookMetrics.countDbCall();
+        pm.getDslContext()
+                .withRecursive(graph)
+                .select(id, subjectId, objectId, roleField, minDepth)
+                .from(graph)
+                .groupBy(id, subjectId, objectId, roleField)
+                .orderBy(minDepth, id)
+                .fetch()
+                .forEach(r -> edges.add(new Edge(r.value1(), r.value2(), r.value3(), r.value4(), r.value5())));
+        return edges;
+    }
+
+    private static Condition roleCondition(TableImpRelation table, String role) {
+        return (role == null) ? DSL.noCondition() : table.colRole.eq(role);
+    }
+
+    private Condition visibleCondition(TableImpRelation table) {
+        return (visibility == null) ? DSL.noCondition() : visibility.isVisible(tables, table);
+    }
+
+    /**
+     * The direction to follow the Relations in.
+     */
+    public enum Direction {
+        /**
+         * From the Subject of a Relation to its Object.
+         */
+        OBJECTS,
+        /**
+         * From the Object of a Relation to its Subject.
+         */
+        SUBJECTS;
+
+        public static Direction parse(String value) {
+            if (value == null)
+                return OBJECTS;
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Direction must be one of 'Objects' or 'Subjects'");
+            }
+        }
+    }
+
+    /**
+     * A Relation reached by the traversal, and the number of hops it took to
+     * reach it. The objectId is null for Relations to an external resource.
+     */
+    public static record Edge(Object id, Object subjectId, Object objectId, String role, int depth) {
+    }
+
+}
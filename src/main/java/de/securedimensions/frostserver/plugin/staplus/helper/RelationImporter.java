@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import static de.fraunhofer.iosb.ilt.frostserver.property.SpecialNames.AT_IOT_ID;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.tables.TableCollection;
+import de.securedimensions.frostserver.plugin.staplus.TableImpGroupsRelations;
+import de.securedimensions.frostserver.plugin.staplus.TableImpRelation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import org.jooq.Field;
+import org.jooq.InsertValuesStep2;
+import org.jooq.InsertValuesStep6;
+import org.jooq.impl.DSL;
+
+/**
+ * Creates many Relations at once. The ids of a batch of up to
+ * {@link #getBatchSize()} Relations are reserved first, from the sequence of
+ * RELATIONS for numeric ids or generated for UUID and String ids, so that
+ * they are known in the order of the request. The RELATIONS rows are then
+ * written with one multi-row insert, followed by the GROUPS_RELATIONS rows of
+ * the batch. If RELATIONS_CLOSURE is enabled, it is then extended with one
+ * statement per Relation between Observations.
+ */
+public class RelationImporter {
+
+    private final TableImpRelation tableRelations;
+    private final TableImpGroupsRelations tableGroupsRelations;
+    private final RelationClosure closure;
+    private final int batchSize;
+
+    /**
+     * @param tables the tables of the persistence manager.
+     * @param closure the maintainer of RELATIONS_CLOSURE, or null if the
+     * closure is not enabled.
+     * @param batchSize the maximum number of rows per insert statement.
+     */
+    public RelationImporter(TableCollection tables, RelationClosure closure, int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive");
+        this.tableRelations = tables.getTableForClass(TableImpRelation.class);
+        this.tableGroupsRelations = tables.getTableForClass(TableImpGroupsRelations.class);
+        this.closure = closure;
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Parses the Relations of a bulk request, a JSON array of objects with
+     * the members {@code Subject}, {@code Object} or {@code externalObject},
+     * {@code role}, {@code description} and {@code Groups}. The Subject,
+     * Object and Groups are given by id, either plain or as
+     * {@code {"@iot.id": ...}}.
+     *
+     * @param json the request content.
+     * @return the Relations to create.
+     */
+    public List<RelationTuple> parse(JsonNode json) {
+        if (json == null || !json.isArray())
+            throw new IllegalArgumentException("Content must be a JSON array of Relations.");
+
+        final Field subjectField = tableRelations.getSubjectId();
+        final Field groupField = tableGroupsRelations.getGroupId();
+        final List<RelationTuple> tuples = new ArrayList<>(json.size());
+        for (JsonNode item : json) {
+            final Object subjectId = toId(item.get("Subject"), subjectField);
+            if (subjectId == null)
+                throw new IllegalArgumentException("A Relation must have a Subject.");
+
+            final Object objectId = toId(item.get("Object"), subjectField);
+            final String externalObject = toText(item.get("externalObject"));
+            if ((objectId == null) && (externalObject == null))
+                throw new IllegalArgumentException("A Relation must either have an Object or externalObject.");
+            if ((objectId != null) && (externalObject != null))
+                throw new IllegalArgumentException("A Relation must not have an Object and externalObject.");
+
+            List<Object> groupIds = Collections.emptyList();
+            final JsonNode groups = item.get("Groups");
+            if (groups != null && groups.isArray()) {
+                groupIds = new ArrayList<>(groups.size());
+                for (JsonNode group : groups) {
+                    final Object groupId = toId(group, groupField);
+                    if (groupId == null)
+                        throw new IllegalArgumentException("A Group of a Relation must be given by id.");
+                    groupIds.add(groupId);
+                }
+            }
+
+            tuples.add(new RelationTuple(subjectId, objectId, externalObject, toText(item.get("role")), toText(item.get("description")), groupIds));
+        }
+        return tuples;
+    }
+
+    /**
+     * Creates the Relations. The caller is responsible for checking the
+     * ownership of the Subjects and Groups.
+     *
+     * @param pm the persistence manager to run the statements with.
+     * @param tuples the Relations to create.
+     * @return the primary keys of the new Relations, in the given order.
+     */
+    public List<Object> insert(JooqPersistenceManager pm, List<RelationTuple> tuples) {
+        final List<Object> ids = new ArrayList<>(tuples.size());
+        for (int from = 0; from < tuples.size(); from += batchSize) {
+            final List<RelationTuple> batch = tuples.subList(from, Math.min(from + batchSize, tuples.size()));
+            final List<Object> batchIds = insertRelations(pm, batch);
+            insertGroups(pm, batch, batchIds);
+            ids.addAll(batchIds);
+        }
+        if (closure != null) {
+            for (RelationTuple tuple : tuples) {
+                closure.addRelation(pm, tuple.subjectId(), tuple.objectId());
+            }
+        }
+        return ids;
+    }
+
+    private List<Object> insertRelations(JooqPersistenceManager pm, List<RelationTuple> batch) {
+        final List<Object> ids = reserveIds(pm, batch.size());
+        HookMetrics.countDbCall();
+        InsertValuesStep6 insert = pm.getDslContext().insertInto(tableRelations,
+                tableRelations.getId(), tableRelations.getSubjectId(), tableRelations.getObjectId(), tableRelations.colExternalObject,
+                tableRelations.colRole, tableRelations.colDescription);
+        for (int i = 0; i < batch.size(); i++) {
+            final RelationTuple tuple = batch.get(i);
+            insert = insert.values(ids.get(i), tuple.subjectId(), tuple.objectId(), tuple.externalObject(), tuple.role(), tuple.description());
+        }
+        insert.execute();
+        return ids;
+    }
+
+    private List<Object> reserveIds(JooqPersistenceManager pm, int count) {
+        final Field id = tableRelations.getId();
+        if (Number.class.isAssignableFrom(id.getType())) {
+            HookMetrics.countDbCall();
+            final Field<Long> nextval = DSL.field("nextval(pg_get_serial_sequence({0}, {1}))", Long.class,
+                    DSL.inline("\"" + tableRelations.getName() + "\""), DSL.inline(id.getName()));
+            final List<Object> ids = new ArrayList<>(count);
+            pm.getDslContext().select(nextval)
+                    .from(DSL.generateSeries(1, count))
+                    .fetch()
+                    .forEach(r -> ids.add(id.getDataType().convert(r.value1())));
+            return ids;
+        }
+
+        final List<Object> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(id.getDataType().convert(UUID.randomUUID()));
+        }
+        return ids;
+    }
+
+    private void insertGroups(JooqPersistenceManager pm, List<RelationTuple> batch, List<Object> relationIds) {
+        final Field groupField = tableGroupsRelations.getGroupId();
+        final Field relationField = tableGroupsRelations.getRelationId();
+        InsertValuesStep2 insert = pm.getDslContext().insertInto(tableGroupsRelations, groupField, relationField);
+        boolean empty = true;
+        for (int i = 0; i < batch.size(); i++) {
+            for (Object groupId : batch.get(i).groupIds()) {
+                insert = insert.values(groupId, relationIds.get(i));
+                empty = false;
+            }
+        }
+        if (empty)
+            return;
+
+        HookMetrics.countDbCall();
+        insert.onConflictDoNothing().execute();
+    }
+
+    private static Object toId(JsonNode node, Field<?> field) {
+        if (node != null && node.isObject())
+            node = node.get(AT_IOT_ID);
+        if (node == null || node.isNull())
+            return null;
+
+        return field.getDataType().convert(node.isNumber() ? node.numberValue() : node.asText());
+    }
+
+    private static String toText(JsonNode node) {
+        return (node == null || node.isNull()) ? null : node.asText();
+    }
+
+    /**
+     * A Relation to create. Either objectId or externalObject is set.
+     */
+    public static record RelationTuple(Object subjectId, Object objectId, String externalObject, String role, String description, List<Object> groupIds) {
+    }
+
+}
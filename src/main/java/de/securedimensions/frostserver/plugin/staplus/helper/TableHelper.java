@@ -17,27 +17,34 @@
  */
 package de.securedimensions.frostserver.plugin.staplus.helper;
 
-import static de.securedimensions.frostserver.plugin.staplus.helper.TableHelperLicense.*;
-
+import de.fraunhofer.iosb.ilt.frostserver.model.EntityType;
 import de.fraunhofer.iosb.ilt.frostserver.model.core.Entity;
 import de.fraunhofer.iosb.ilt.frostserver.model.core.EntitySet;
 import de.fraunhofer.iosb.ilt.frostserver.model.core.PkValue;
-import de.fraunhofer.iosb.ilt.frostserver.parser.path.PathParser;
-import de.fraunhofer.iosb.ilt.frostserver.parser.query.QueryParser;
-import de.fraunhofer.iosb.ilt.frostserver.path.ResourcePath;
-import de.fraunhofer.iosb.ilt.frostserver.path.Version;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.EntityFactories;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.HookPreDelete;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.HookPreInsert;
+import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.HookPreUpdate;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.tables.TableCollection;
 import de.fraunhofer.iosb.ilt.frostserver.plugin.coremodel.PluginCoreModel;
 import de.fraunhofer.iosb.ilt.frostserver.plugin.multidatastream.PluginMultiDatastream;
-import de.fraunhofer.iosb.ilt.frostserver.query.Query;
+import de.fraunhofer.iosb.ilt.frostserver.property.NavigationPropertyMain.NavigationPropertyEntity;
+import de.fraunhofer.iosb.ilt.frostserver.property.NavigationPropertyMain.NavigationPropertyEntitySet;
+import de.fraunhofer.iosb.ilt.frostserver.service.ServiceRequest;
 import de.fraunhofer.iosb.ilt.frostserver.settings.CoreSettings;
 import de.fraunhofer.iosb.ilt.frostserver.util.exception.ForbiddenException;
 import de.fraunhofer.iosb.ilt.frostserver.util.exception.UnauthorizedException;
 import de.fraunhofer.iosb.ilt.frostserver.util.user.PrincipalExtended;
 import de.securedimensions.frostserver.plugin.staplus.PluginPLUS;
+import de.securedimensions.frostserver.plugin.staplus.helper.OwnershipResolver.CampaignMembers;
+import de.securedimensions.frostserver.plugin.staplus.helper.OwnershipResolver.ObservationOwner;
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 
 public abstract class TableHelper {
 
@@ -46,6 +53,9 @@ public abstract class TableHelper {
     protected final PluginPLUS pluginPlus;
     protected final PluginMultiDatastream pluginMultiDatastream;
     protected EntityFactories entityFactories;
+    protected final OwnershipResolver ownershipResolver;
+    protected final HookMetrics hookMetrics;
+    protected final AuditTrail auditTrail;
 
     private TableHelper() {
         this.tables = null;
@@ -53,6 +63,9 @@ public abstract class TableHelper {
         this.pluginPlus = null;
         this.pluginMultiDatastream = null;
         this.entityFactories = null;
+        this.ownershipResolver = null;
+        this.hookMetrics = null;
+        this.auditTrail = null;
     }
 
     protected TableHelper(CoreSettings settings, JooqPersistenceManager ppm) {
@@ -61,6 +74,36 @@ public abstract class TableHelper {
         this.pluginCoreModel = settings.getPluginManager().getPlugin(PluginCoreModel.class);
         this.pluginMultiDatastream = settings.getPluginManager().getPlugin(PluginMultiDatastream.class);
         this.entityFactories = ppm.getEntityFactories();
+        this.ownershipResolver = new OwnershipResolver(tables, pluginPlus, pluginCoreModel, pluginMultiDatastream);
+        this.hookMetrics = pluginPlus.getHookMetrics();
+        this.auditTrail = pluginPlus.getAuditTrail();
+    }
+
+    /**
+     * Wraps the hook with timing instrumentation and the audit trail, if
+     * enabled.
+     */
+    protected HookPreInsert timedPreInsert(EntityType entityType, HookPreInsert hook) {
+        final HookPreInsert audited = (auditTrail == null) ? hook : auditTrail.preInsert(entityType, hook);
+        return (hookMetrics == null) ? audited : hookMetrics.preInsert(entityType, audited);
+    }
+
+    protected HookPreUpdate timedPreUpdate(EntityType entityType, HookPreUpdate hook) {
+        final HookPreUpdate audited = (auditTrail == null) ? hook : auditTrail.preUpdate(entityType, hook);
+        return (hookMetrics == null) ? audited : hookMetrics.preUpdate(entityType, audited);
+    }
+
+    protected HookPreDelete timedPreDelete(EntityType entityType, HookPreDelete hook) {
+        final HookPreDelete audited = (auditTrail == null) ? hook : auditTrail.preDelete(entityType, hook);
+        return (hookMetrics == null) ? audited : hookMetrics.preDelete(entityType, audited);
+    }
+
+    /**
+     * Loads an entity, counting the database call for the hook metrics.
+     */
+    protected Entity get(JooqPersistenceManager pm, EntityType entityType, PkValue id) {
+        HookMetrics.countDbCall();
+        return pm.get(entityType, id);
     }
 
     protected boolean isAdmin(Principal principal) {
@@ -79,43 +122,54 @@ public abstract class TableHelper {
 
     protected void assertOwnershipObservation(JooqPersistenceManager pm, Entity entity, Principal principal) {
 
-        Entity datastream = null;
-        Entity multiDatastream = null;
-
         // Test if the Observation is inline and linked to a Datastream or MultiDatastream
-        if (entity.isSetProperty(pluginCoreModel.npDatastreamObservation))
-            datastream = entity.getProperty(pluginCoreModel.npDatastreamObservation);
-        else if ((pluginMultiDatastream != null) && (entity.isSetProperty(pluginMultiDatastream.npMultiDatastreamObservation)))
-            multiDatastream = entity.getProperty(pluginMultiDatastream.npMultiDatastreamObservation);
-
-        // Test if Observation needs to be loaded - first from Datastream
-        if ((datastream == null) && (multiDatastream == null) && (entity.getPrimaryKeyValues().get(0) != null)) {
-            Entity observation = pm.get(pluginCoreModel.etObservation, entity.getPrimaryKeyValues());
-            if ((observation != null) && observation.isSetProperty(pluginCoreModel.npDatastreamObservation))
-                datastream = pm.get(pluginCoreModel.etDatastream,
-                        observation.getProperty(pluginCoreModel.npDatastreamObservation).getPrimaryKeyValues());
-            else
-                datastream = null;
+        if (entity.isSetProperty(pluginCoreModel.npDatastreamObservation)) {
+            assertOwnershipDatastream(pm, entity.getProperty(pluginCoreModel.npDatastreamObservation), principal);
+            return;
         }
-
-        // Test if Observation needs to be loaded - now from MultiDatastream
-        if ((datastream == null) && (multiDatastream == null) && (entity.getPrimaryKeyValues().get(0) != null)) {
-            Entity observation = pm.get(pluginCoreModel.etObservation, entity.getPrimaryKeyValues());
-            if ((observation != null)
-                    && observation.isSetProperty(pluginMultiDatastream.npMultiDatastreamObservation))
-                multiDatastream = pm.get(pluginMultiDatastream.etMultiDatastream,
-                        observation.getProperty(pluginMultiDatastream.npMultiDatastreamObservation).getPrimaryKeyValues());
-            else
-                multiDatastream = null;
+        if ((pluginMultiDatastream != null) && (entity.isSetProperty(pluginMultiDatastream.npMultiDatastreamObservation))) {
+            assertOwnershipMultiDatastream(pm, entity.getProperty(pluginMultiDatastream.npMultiDatastreamObservation), principal);
+            return;
         }
 
-        // If the Observation is linked to a Datastream...
-        if (datastream != null)
-            assertOwnershipDatastream(pm, datastream, principal);
+        // The Observation is referenced by id
+        if (entity.getPrimaryKeyValues().get(0) != null)
+            assertOwnershipObservation(pm, entity.getPrimaryKeyValues(), principal);
+    }
+
+    /**
+     * Asserts the ownership of a stored Observation. The (Multi)Datastream and
+     * its Party are resolved with a single query.
+     *
+     * @param pm the persistence manager to use.
+     * @param observationId the primary key of the Observation.
+     * @param principal the acting user.
+     */
+    protected void assertOwnershipObservation(JooqPersistenceManager pm, PkValue observationId, Principal principal) {
+        assertPrincipal(principal);
 
-        // If the Observation is linked to a MultiDatastream...
-        if (multiDatastream != null)
-            assertOwnershipMultiDatastream(pm, multiDatastream, principal);
+        final Object id = observationId.get(0);
+        final OwnershipCache cache = OwnershipCache.getLocalCache();
+        String partyId = cache.get(pluginCoreModel.etObservation, id);
+        String entityName = pluginCoreModel.etDatastream.entityName;
+        if (partyId == null) {
+            final ObservationOwner owner = ownershipResolver.resolveObservation(pm, id);
+            if (owner == null) {
+                // Observation does not exist or is not linked to a (Multi)Datastream
+                return;
+            }
+
+            entityName = owner.parentType().entityName;
+            if (owner.partyId() == null)
+                throw new IllegalArgumentException(entityName + " not linked to a Party");
+
+            partyId = owner.partyId();
+            cache.put(pluginCoreModel.etObservation, id, partyId);
+            cache.put(owner.parentType(), owner.parentId(), partyId);
+        }
+
+        if (!partyId.equalsIgnoreCase(AuthIds.normalise(principal)))
+            throw new ForbiddenException(entityName + " not linked to acting Party");
     }
 
     protected void assertOwnershipDatastream(JooqPersistenceManager pm, Entity datastream, Principal principal) {
@@ -127,29 +181,8 @@ public abstract class TableHelper {
         if (!datastream.getEntityType().equals(pluginCoreModel.etDatastream))
             throw new IllegalArgumentException("Entity not of type Datastream");
 
-        // We can get the username from the Principal
-        String userId = principal.getName();
-
         // Ensure Ownership for Datastream
-        Entity party = null;
-
-        if (datastream != null)
-            party = datastream.getProperty(pluginPlus.npPartyDatastream);
-
-        if (party == null && datastream.getPrimaryKeyValues().get(0) != null) {
-            datastream = pm.get(pluginCoreModel.etDatastream, datastream.getPrimaryKeyValues());
-            if (datastream != null) {
-                party = datastream.getProperty(pluginPlus.npPartyDatastream);
-            }
-        }
-
-        if (party == null)
-            throw new IllegalArgumentException("Datastream not linked to a Party");
-
-        String partyId = (party.isSetProperty(pluginPlus.epAuthId)) ? party.getProperty(pluginPlus.epAuthId) : party.getPrimaryKeyValues().get(0).toString();
-
-        if (!partyId.equalsIgnoreCase(userId))
-            throw new ForbiddenException("Datastream not linked to acting Party");
+        assertOwningParty(pm, datastream, pluginCoreModel.etDatastream, pluginPlus.npPartyDatastream, principal);
 
     }
 
@@ -162,28 +195,8 @@ public abstract class TableHelper {
         if ((pluginMultiDatastream != null) && !multiDatastream.getEntityType().equals(pluginMultiDatastream.etMultiDatastream))
             throw new IllegalArgumentException("Entity not of type MultiDatastream");
 
-        // We can get the username from the Principal
-        String userId = principal.getName();
-
         // Ensure Ownership for MultiDatastream
-        Entity party = null;
-
-        if (multiDatastream != null)
-            party = multiDatastream.getProperty(pluginPlus.npPartyMultiDatastream);
-
-        if (party == null && multiDatastream.getPrimaryKeyValues().get(0) != null) {
-            multiDatastream = pm.get(pluginMultiDatastream.etMultiDatastream, multiDatastream.getPrimaryKeyValues());
-            if (multiDatastream != null) {
-                party = multiDatastream.getProperty(pluginPlus.npPartyMultiDatastream);
-            }
-        }
-
-        if (party == null)
-            throw new IllegalArgumentException("MultiDatastream not linked to a Party");
-
-        String partyId = (party.isSetProperty(pluginPlus.epAuthId)) ? party.getProperty(pluginPlus.epAuthId) : party.getPrimaryKeyValues().get(0).toString();
-        if (!partyId.equalsIgnoreCase(userId))
-            throw new ForbiddenException("MultiDatastream not linked to acting Party");
+        assertOwningParty(pm, multiDatastream, pluginMultiDatastream.etMultiDatastream, pluginPlus.npPartyMultiDatastream, principal);
 
     }
 
@@ -196,29 +209,8 @@ public abstract class TableHelper {
         if (!thing.getEntityType().equals(pluginCoreModel.etThing))
             throw new IllegalArgumentException("Entity not of type Thing");
 
-        // We can get the username from the Principal
-        String userId = principal.getName();
-
         // Ensure Ownership for Thing
-        Entity party = null;
-
-        if (thing != null)
-            party = thing.getProperty(pluginPlus.npPartyThing);
-
-        if (party == null && thing.getPrimaryKeyValues().get(0) != null) {
-            thing = pm.get(pluginCoreModel.etThing, thing.getPrimaryKeyValues());
-            if (thing != null) {
-                party = thing.getProperty(pluginPlus.npPartyThing);
-            }
-        }
-
-        if (party == null)
-            throw new IllegalArgumentException("Thing not linked to a Party");
-
-        String partyId = (party.isSetProperty(pluginPlus.epAuthId)) ? party.getProperty(pluginPlus.epAuthId) : party.getPrimaryKeyValues().get(0).toString();
-
-        if (!partyId.equalsIgnoreCase(userId))
-            throw new ForbiddenException("Thing not linked to acting Party");
+        assertOwningParty(pm, thing, pluginCoreModel.etThing, pluginPlus.npPartyThing, principal);
 
     }
 
@@ -231,61 +223,143 @@ public abstract class TableHelper {
         if (!project.getEntityType().equals(pluginPlus.etCampaign))
             throw new IllegalArgumentException("Entity not of type Campaign");
 
-        // We can get the username from the Principal
-        String userId = principal.getName();
+        // Ensure Ownership for Campaign
+        assertOwningParty(pm, project, pluginPlus.etCampaign, pluginPlus.npPartyCampaign, principal);
+
+    }
+
+    protected void assertOwnershipGroup(JooqPersistenceManager pm, Entity group, Principal principal) {
+        assertPrincipal(principal);
+
+        if (group == null)
+            throw new IllegalArgumentException("ObservationGroup does not exist");
+
+        if (!group.getEntityType().equals(pluginPlus.etGroup))
+            throw new IllegalArgumentException("Entity not of type ObservationGroup");
 
         // Ensure Ownership for Group
-        Entity party = null;
+        assertOwningParty(pm, group, pluginPlus.etGroup, pluginPlus.npPartyGroup, principal);
 
-        if (project != null)
-            party = project.getProperty(pluginPlus.npPartyCampaign);
+    }
 
-        if (party == null && project.getPrimaryKeyValues().get(0) != null) {
-            project = pm.get(pluginPlus.etCampaign, project.getPrimaryKeyValues());
-            if (project != null) {
-                party = project.getProperty(pluginPlus.npPartyGroup);
-            }
+    /**
+     * Asserts that the acting user is the Party owning the given entity. For
+     * an entity referenced by id, the outcome is kept in the
+     * {@link OwnershipVerdictCache} of the node.
+     *
+     * @param pm the persistence manager to load the stored entity with.
+     * @param entity the entity to check.
+     * @param entityType the type of the entity.
+     * @param npParty the navigation property linking the entity to its Party.
+     * @param principal the acting user.
+     */
+    protected void assertOwningParty(JooqPersistenceManager pm, Entity entity, EntityType entityType, NavigationPropertyEntity npParty, Principal principal) {
+        // We can get the username from the Principal
+        final String userId = AuthIds.normalise(principal);
+
+        // An inline Party is not stored yet, only cache verdicts for stored entities
+        final OwnershipVerdictCache verdicts = pluginPlus.getOwnershipVerdictCache();
+        final Object id = (verdicts == null || entity.isSetProperty(npParty)) ? null : entity.getPrimaryKeyValues().get(0);
+        if (id != null) {
+            final Boolean allowed = verdicts.get(userId, entityType, id);
+            if (Boolean.TRUE.equals(allowed))
+                return;
+            if (Boolean.FALSE.equals(allowed))
+                throw new ForbiddenException(entityType.entityName + " not linked to acting Party");
         }
 
-        if (party == null)
-            throw new IllegalArgumentException("Campaign not linked to a Party");
+        final String partyId = getOwningPartyId(pm, entity, entityType, npParty);
 
-        String partyId = (party.isSetProperty(pluginPlus.epAuthId)) ? party.getProperty(pluginPlus.epAuthId) : party.getPrimaryKeyValues().get(0).toString();
+        if (partyId == null)
+            throw new IllegalArgumentException(entityType.entityName + " not linked to a Party");
 
-        if (!partyId.equalsIgnoreCase(userId))
-            throw new ForbiddenException("Campaign not linked to acting Party");
+        final boolean allowed = partyId.equalsIgnoreCase(userId);
+        if (id != null)
+            verdicts.put(userId, entityType, id, allowed);
 
+        if (!allowed)
+            throw new ForbiddenException(entityType.entityName + " not linked to acting Party");
     }
 
-    protected void assertOwnershipGroup(JooqPersistenceManager pm, Entity group, Principal principal) {
-        assertPrincipal(principal);
+    /**
+     * Drops the cached ownership verdicts of an entity that is updated or
+     * deleted.
+     */
+    protected void invalidateVerdicts(EntityType entityType, Object id) {
+        final OwnershipVerdictCache verdicts = pluginPlus.getOwnershipVerdictCache();
+        if (verdicts != null)
+            verdicts.invalidate(entityType, id);
+    }
 
-        if (group == null)
-            throw new IllegalArgumentException("ObservationGroup does not exist");
+    /**
+     * Asserts that the entity is not linked to a Campaign whose endTime is
+     * reached. Only an admin can link entities to a closed Campaign. New
+     * Campaigns given inline have no id and are never closed.
+     *
+     * @param entity the entity that is inserted or updated.
+     * @param npCampaigns the navigation property linking the entity to its
+     * Campaigns.
+     */
+    protected void assertCampaignsOpen(Entity entity, NavigationPropertyEntitySet npCampaigns) {
+        final CampaignLifecycle lifecycle = pluginPlus.getCampaignLifecycle();
+        if (lifecycle == null || !entity.isSetProperty(npCampaigns))
+            return;
 
-        if (!group.getEntityType().equals(pluginPlus.etGroup))
-            throw new IllegalArgumentException("Entity not of type ObservationGroup");
+        final EntitySet campaigns = entity.getProperty(npCampaigns);
+        if (campaigns == null)
+            return;
 
-        // We can get the username from the Principal
-        String userId = principal.getName();
+        final ServiceRequest request = ServiceRequest.getLocalRequest();
+        if (request == null || isAdmin(request.getUserPrincipal()))
+            return;
 
-        // Ensure Ownership for Group
-        Entity party = group.getProperty(pluginPlus.npPartyGroup);
-        if (party == null && group.getPrimaryKeyValues().get(0) != null) {
-            group = pm.get(pluginPlus.etGroup, group.getPrimaryKeyValues());
-            if (group != null) {
-                party = group.getProperty(pluginPlus.npPartyGroup);
-            }
+        for (Entity campaign : campaigns) {
+            final PkValue campaignId = campaign.getPrimaryKeyValues();
+            if (campaignId != null && campaignId.get(0) != null && lifecycle.isClosed(campaignId.get(0)))
+                throw new ForbiddenException("Campaign " + campaignId.get(0) + " is closed, endTime reached");
         }
+    }
 
+    /**
+     * Returns the id of the Party owning the given entity. An inline Party is
+     * used as is, otherwise the stored entity is loaded once per request and
+     * the result is kept in the {@link OwnershipCache}.
+     *
+     * @param pm the persistence manager to load the stored entity with.
+     * @param entity the entity to find the owner for.
+     * @param entityType the type of the entity.
+     * @param npParty the navigation property linking the entity to its Party.
+     * @return the id of the owning Party, or null if there is none.
+     */
+    protected String getOwningPartyId(JooqPersistenceManager pm, Entity entity, EntityType entityType, NavigationPropertyEntity npParty) {
+        Entity party = entity.getProperty(npParty);
+        if (party != null)
+            return getPartyId(party);
+
+        final Object id = entity.getPrimaryKeyValues().get(0);
+        if (id == null)
+            return null;
+
+        final OwnershipCache cache = OwnershipCache.getLocalCache();
+        String partyId = cache.get(entityType, id);
+        if (partyId != null)
+            return partyId;
+
+        Entity stored = get(pm, entityType, entity.getPrimaryKeyValues());
+        if (stored == null)
+            return null;
+
+        party = stored.getProperty(npParty);
         if (party == null)
-            throw new IllegalArgumentException("ObservationGroup not linked to a Party");
-
-        String partyId = (party.isSetProperty(pluginPlus.epAuthId)) ? party.getProperty(pluginPlus.epAuthId) : party.getPrimaryKeyValues().get(0).toString();
+            return null;
 
-        if (!partyId.equalsIgnoreCase(userId))
-            throw new ForbiddenException("ObservationGroup not linked to acting Party");
+        partyId = getPartyId(party);
+        cache.put(entityType, id, partyId);
+        return partyId;
+    }
 
+    private String getPartyId(Entity party) {
+        return (party.isSetProperty(pluginPlus.epAuthId)) ? party.getProperty(pluginPlus.epAuthId) : party.getPrimaryKeyValues().get(0).toString();
     }
 
     protected void assertOwnershipParty(Entity party, Principal principal) {
@@ -298,7 +372,7 @@ public abstract class TableHelper {
             throw new IllegalArgumentException("Entity not of type Party");
 
         // We can get the username from the Principal
-        String userId = principal.getName();
+        String userId = AuthIds.normalise(principal);
         String partyId = party.getProperty(pluginPlus.epAuthId);
         if ((partyId != null) && (!userId.equalsIgnoreCase(partyId))) {
             // The authId is set by the plugin - it cannot be changed via a PATCH
@@ -327,7 +401,7 @@ public abstract class TableHelper {
         // Ensure License for Group
         Entity license = group.getProperty(pluginPlus.npLicenseGroup);
         if (license == null && group.getPrimaryKeyValues().get(0) != null) {
-            group = pm.get(pluginPlus.etGroup, group.getPrimaryKeyValues());
+            group = get(pm, pluginPlus.etGroup, group.getPrimaryKeyValues());
             if (group != null) {
                 license = group.getProperty(pluginPlus.npLicenseGroup);
             }
@@ -352,7 +426,7 @@ public abstract class TableHelper {
         // Ensure License for Campaign
         Entity license = project.getProperty(pluginPlus.npLicenseCampaign);
         if (license == null && project.getPrimaryKeyValues().get(0) != null) {
-            project = pm.get(pluginPlus.etLicense, project.getPrimaryKeyValues());
+            project = get(pm, pluginPlus.etLicense, project.getPrimaryKeyValues());
             if (project != null) {
                 license = project.getProperty(pluginPlus.npLicenseCampaign);
             }
@@ -377,7 +451,7 @@ public abstract class TableHelper {
         // Ensure License for Datastream
         Entity license = datastream.getProperty(pluginPlus.npLicenseDatastream);
         if (license == null && datastream.getPrimaryKeyValues().get(0) != null) {
-            datastream = pm.get(pluginCoreModel.etDatastream, datastream.getPrimaryKeyValues());
+            datastream = get(pm, pluginCoreModel.etDatastream, datastream.getPrimaryKeyValues());
             if (datastream != null) {
                 license = datastream.getProperty(pluginPlus.npLicenseDatastream);
             }
@@ -403,7 +477,7 @@ public abstract class TableHelper {
         // Ensure License for MultiDatastream
         Entity license = multiDatastream.getProperty(pluginPlus.npLicenseMultiDatastream);
         if (license == null && multiDatastream.getPrimaryKeyValues().get(0) != null) {
-            multiDatastream = pm.get(pluginMultiDatastream.etMultiDatastream, multiDatastream.getPrimaryKeyValues());
+            multiDatastream = get(pm, pluginMultiDatastream.etMultiDatastream, multiDatastream.getPrimaryKeyValues());
             if (multiDatastream != null) {
                 license = multiDatastream.getProperty(pluginPlus.npLicenseMultiDatastream);
             }
@@ -428,12 +502,7 @@ public abstract class TableHelper {
 
         // Ensure Datastream by reference has no Observations
         if (datastream.getPrimaryKeyValues().get(0) != null) {
-            PkValue id = datastream.getPrimaryKeyValues();
-            ResourcePath rp = PathParser.parsePath(pm.getCoreSettings().getModelRegistry(), pm.getCoreSettings().getQueryDefaults().getServiceRootUrl(), Version.V_1_1, "/Datastreams(" + id.getUrl(datastream.getPrimaryKey()) + ")/Observations");
-            Query query = QueryParser.parseQuery("", pm.getCoreSettings().getQueryDefaults(), rp.getMainElementType().getModelRegistry(), rp);
-            query.validate();
-            EntitySet obs = (EntitySet) pm.get(rp, query);
-            if (!obs.isEmpty()) {
+            if (ownershipResolver.hasMembers(pm, pluginCoreModel.etDatastream, datastream.getPrimaryKeyValues().get(0))) {
                 throw new IllegalArgumentException("Referenced Datastream already contains observations.");
             }
         }
@@ -453,12 +522,7 @@ public abstract class TableHelper {
 
         // Ensure Datastream by reference has no Observations
         if (mds.getPrimaryKeyValues().get(0) != null) {
-            PkValue id = mds.getPrimaryKeyValues();
-            ResourcePath rp = PathParser.parsePath(pm.getCoreSettings().getModelRegistry(), pm.getCoreSettings().getQueryDefaults().getServiceRootUrl(), Version.V_1_1, "/MultiDatastreams(" + id.getUrl(mds.getPrimaryKey()) + ")/Observations");
-            Query query = QueryParser.parseQuery("", pm.getCoreSettings().getQueryDefaults(), rp.getMainElementType().getModelRegistry(), rp);
-            query.validate();
-            EntitySet obs = (EntitySet) pm.get(rp, query);
-            if (!obs.isEmpty()) {
+            if (ownershipResolver.hasMembers(pm, pluginMultiDatastream.etMultiDatastream, mds.getPrimaryKeyValues().get(0))) {
                 throw new IllegalArgumentException("Referenced MultiDatastream already contains observations.");
             }
         }
@@ -471,19 +535,14 @@ public abstract class TableHelper {
         if (!group.getEntityType().equals(pluginPlus.etGroup))
             throw new IllegalArgumentException("Entity not of type ObservationGroup");
 
-        if (group.isSetProperty(pluginPlus.npObservationGroups)) {
-            // Observations are inline and part of creating a Datastream from scratch -> That's OK
+        if (group.isSetProperty(pluginPlus.npObservationsGroup)) {
+            // Observations are inline and part of creating a Group from scratch -> That's OK
             return;
         }
 
         // Ensure Group by reference has no Observations
         if (group.getPrimaryKeyValues().get(0) != null) {
-            PkValue id = group.getPrimaryKeyValues();
-            ResourcePath rp = PathParser.parsePath(pm.getCoreSettings().getModelRegistry(), pm.getCoreSettings().getQueryDefaults().getServiceRootUrl(), Version.V_1_1, "/Groups(" + id.getUrl(group.getPrimaryKey()) + ")/Observations");
-            Query query = QueryParser.parseQuery("", pm.getCoreSettings().getQueryDefaults(), rp.getMainElementType().getModelRegistry(), rp);
-            query.validate();
-            EntitySet obs = (EntitySet) pm.get(rp, query);
-            if (!obs.isEmpty()) {
+            if (ownershipResolver.hasMembers(pm, pluginPlus.etGroup, group.getPrimaryKeyValues().get(0))) {
                 throw new IllegalArgumentException("Referenced ObservationGroup already contains observations.");
             }
         }
@@ -497,58 +556,228 @@ public abstract class TableHelper {
             throw new IllegalArgumentException("Entity not of type Campaign");
 
         // Ensure Campaign by reference has no Datastreams and no MultiDatastreams
-        if (project.getPrimaryKeyValues().get(0) != null) {
-            PkValue id = project.getPrimaryKeyValues();
-            ResourcePath rp = PathParser.parsePath(pm.getCoreSettings().getModelRegistry(), pm.getCoreSettings().getQueryDefaults().getServiceRootUrl(), Version.V_1_1, "/Campaigns(" + id.getUrl(project.getPrimaryKey()) + ")");
-            Query query = QueryParser.parseQuery("$expand=Datastreams($top=0;$count=true),MultiDatastreams($top=0;$count=true)", pm.getCoreSettings().getQueryDefaults(), rp.getMainElementType().getModelRegistry(), rp);
-            query.validate();
-            project = (Entity) pm.get(rp, query);
-            if (project.getProperty(pluginPlus.npDatastreamsCampaign).getCount() != 0) {
+        if (project.getPrimaryKeyValues().get(0) == null) {
+            return;
+        }
+        final Object id = project.getPrimaryKeyValues().get(0);
+        if (pluginPlus.isMembershipStatisticsEnabled()) {
+            // The counters only exist when the membership statistics are maintained
+            CampaignMembers members = ownershipResolver.countCampaignMembers(pm, id);
+            if (members == null) {
+                throw new IllegalArgumentException("Campaign does not exist");
+            }
+            if (members.datastreams() != 0) {
                 throw new IllegalArgumentException("Referenced Campaign already contains Datastream(s).");
             }
-            if (project.getProperty(pluginPlus.npMultiDatastreamsCampaign).getCount() != 0) {
+            if (members.multiDatastreams() != 0) {
+                throw new IllegalArgumentException("Referenced Campaign already contains MultiDatastream(s).");
+            }
+        } else {
+            if (ownershipResolver.hasMembers(pm, pluginPlus.etCampaign, id)) {
+                throw new IllegalArgumentException("Referenced Campaign already contains Datastream(s).");
+            }
+            if (!ownershipResolver.findCampaignsWithMultiDatastreams(pm, List.of(id)).isEmpty()) {
                 throw new IllegalArgumentException("Referenced Campaign already contains MultiDatastream(s).");
             }
         }
     }
 
+    /**
+     * Asserts the ownership of all entities in the set. Entities with an
+     * inline Party are checked directly, entities given by reference are
+     * checked together with one query.
+     *
+     * @param pm the persistence manager to use.
+     * @param entities the entities to check.
+     * @param entityType the type of the entities.
+     * @param npParty the navigation property linking the entities to a Party.
+     * @param principal the acting user.
+     */
+    protected void assertOwnership(JooqPersistenceManager pm, EntitySet entities, EntityType entityType, NavigationPropertyEntity npParty, Principal principal) {
+        assertPrincipal(principal);
+
+        final List<Object> ids = new ArrayList<>();
+        for (Entity entity : entities) {
+            assertEntityType(entity, entityType);
+            if (entity.isSetProperty(npParty) || (entity.getPrimaryKeyValues().get(0) == null)) {
+                final String partyId = getOwningPartyId(pm, entity, entityType, npParty);
+                if (partyId == null)
+                    throw new IllegalArgumentException(entityType.entityName + " not linked to a Party");
+                if (!partyId.equalsIgnoreCase(AuthIds.normalise(principal)))
+                    throw new ForbiddenException(entityType.entityName + " not linked to acting Party");
+            } else {
+                ids.add(entity.getPrimaryKeyValues().get(0));
+            }
+        }
+        assertOwnership(pm, entityType, ids, principal);
+    }
+
+    /**
+     * Asserts the ownership of all entities with the given ids using one
+     * query for all entities that are not yet in the {@link OwnershipCache}.
+     *
+     * @param pm the persistence manager to use.
+     * @param entityType the type of the entities.
+     * @param ids the primary keys of the entities.
+     * @param principal the acting user.
+     */
+    protected void assertOwnership(JooqPersistenceManager pm, EntityType entityType, Collection<?> ids, Principal principal) {
+        assertPrincipal(principal);
+
+        final String userId = AuthIds.normalise(principal);
+        final OwnershipCache cache = OwnershipCache.getLocalCache();
+        final List<Object> unresolved = new ArrayList<>();
+        for (Object id : ids) {
+            final String partyId = cache.get(entityType, id);
+            if (partyId == null)
+                unresolved.add(id);
+            else if (!partyId.equalsIgnoreCase(userId))
+                throw new ForbiddenException(entityType.entityName + " not linked to acting Party");
+        }
+        if (unresolved.isEmpty())
+            return;
+
+        final Map<String, String> owners = ownershipResolver.resolveOwners(pm, entityType, unresolved);
+        for (Object id : unresolved) {
+            final String partyId = owners.get(id.toString());
+            if (partyId == null)
+                throw new IllegalArgumentException(entityType.entityName + " not linked to a Party");
+            if (!partyId.equalsIgnoreCase(userId))
+                throw new ForbiddenException(entityType.entityName + " not linked to acting Party");
+            cache.put(entityType, id, partyId);
+        }
+    }
+
+    /**
+     * Asserts that all entities in the set are linked to a License. Entities
+     * given by reference are checked together with one query.
+     *
+     * @param pm the persistence manager to use.
+     * @param entities the entities to check.
+     * @param entityType the type of the entities.
+     * @param npLicense the navigation property linking the entities to a
+     * License.
+     */
+    protected void assertLicense(JooqPersistenceManager pm, EntitySet entities, EntityType entityType, NavigationPropertyEntity npLicense) {
+        final List<Object> ids = new ArrayList<>();
+        for (Entity entity : entities) {
+            assertEntityType(entity, entityType);
+            if (entity.isSetProperty(npLicense)) {
+                // The entity has License inline
+                continue;
+            }
+            if (entity.getPrimaryKeyValues().get(0) == null)
+                throw new IllegalArgumentException(entityType.entityName + " not linked to a License");
+            ids.add(entity.getPrimaryKeyValues().get(0));
+        }
+        assertLicense(pm, entityType, ids);
+    }
+
+    /**
+     * Asserts that all entities with the given ids are linked to a License,
+     * using one query.
+     *
+     * @param pm the persistence manager to use.
+     * @param entityType the type of the entities.
+     * @param ids the primary keys of the entities.
+     */
+    protected void assertLicense(JooqPersistenceManager pm, EntityType entityType, Collection<?> ids) {
+        if (ids.isEmpty())
+            return;
+
+        final Map<String, Object> licenses = ownershipResolver.resolveLicenses(pm, entityType, ids);
+        for (Object id : ids) {
+            if (licenses.get(id.toString()) == null)
+                throw new IllegalArgumentException(entityType.entityName + " not linked to a License");
+        }
+    }
+
+    /**
+     * Asserts that none of the entities in the set has members. Entities with
+     * inline members are part of creating the entity from scratch, entities
+     * given by reference are checked together with one query.
+     *
+     * @param pm the persistence manager to use.
+     * @param entities the entities to check.
+     * @param entityType the type of the entities.
+     * @param npMembers the navigation property to the members of the entity,
+     * or null if inline members are not accepted.
+     */
+    protected void assertEmpty(JooqPersistenceManager pm, EntitySet entities, EntityType entityType, NavigationPropertyEntitySet npMembers) {
+        final List<Object> ids = new ArrayList<>();
+        for (Entity entity : entities) {
+            assertEntityType(entity, entityType);
+            if ((npMembers != null) && entity.isSetProperty(npMembers)) {
+                // Members are inline and part of creating the entity from scratch -> That's OK
+                continue;
+            }
+            if (entity.getPrimaryKeyValues().get(0) != null)
+                ids.add(entity.getPrimaryKeyValues().get(0));
+        }
+        assertEmpty(pm, entityType, ids);
+    }
+
+    /**
+     * Asserts that none of the entities with the given ids has members, using
+     * one query per member type.
+     *
+     * @param pm the persistence manager to use.
+     * @param entityType the type of the entities.
+     * @param ids the primary keys of the entities.
+     */
+    protected void assertEmpty(JooqPersistenceManager pm, EntityType entityType, Collection<?> ids) {
+        if (ids.isEmpty())
+            return;
+
+        if (entityType.equals(pluginPlus.etCampaign)) {
+            if (!ownershipResolver.findNonEmpty(pm, entityType, ids).isEmpty())
+                throw new IllegalArgumentException("Referenced Campaign already contains Datastream(s).");
+            if (!ownershipResolver.findCampaignsWithMultiDatastreams(pm, ids).isEmpty())
+                throw new IllegalArgumentException("Referenced Campaign already contains MultiDatastream(s).");
+            return;
+        }
+
+        if (!ownershipResolver.findNonEmpty(pm, entityType, ids).isEmpty())
+            throw new IllegalArgumentException("Referenced " + entityType.entityName + " already contains observations.");
+    }
+
+    private void assertEntityType(Entity entity, EntityType entityType) {
+        if (entity == null)
+            throw new IllegalArgumentException(entityType.entityName + " does not exist");
+
+        if (!entity.getEntityType().equals(entityType))
+            throw new IllegalArgumentException("Entity not of type " + entityType.entityName);
+    }
+
     protected void assertLicenseCompatibilty(String sourceId, String targetPrimaryKeyValues) {
-        boolean compatible = false;
-        switch (sourceId) {
-            case CC_PD_ID:
-                compatible = contains(CC_PD, targetPrimaryKeyValues);
-                break;
-            case CC_BY_ID:
-                compatible = contains(CC_BY, targetPrimaryKeyValues);
-                break;
-            case CC_BY_NC_ID:
-                compatible = contains(CC_BY_NC, targetPrimaryKeyValues);
-                break;
-            case CC_BY_SA_ID:
-                compatible = contains(CC_BY_SA, targetPrimaryKeyValues);
-                break;
-            case CC_BY_ND_ID:
-                compatible = contains(CC_BY_ND, targetPrimaryKeyValues);
-                break;
-            case CC_BY_NC_SA_ID:
-                compatible = contains(CC_BY_NC_SA, targetPrimaryKeyValues);
-                break;
-            case CC_BY_NC_ND_ID:
-                compatible = contains(CC_BY_NC_ND_SA, targetPrimaryKeyValues);
-                break;
-        }
-
-        if (!compatible)
+        if (!pluginPlus.getLicenseCompatibility().isCompatible(sourceId, targetPrimaryKeyValues))
             throw new IllegalArgumentException("Observation License not compatible with Group License.");
     }
 
-    private boolean contains(String[] haystack, String needle) {
-        for (String s : haystack) {
-            if (s.equalsIgnoreCase(needle))
-                return true;
-        }
+    /**
+     * Asserts that the Licenses of all given Observations are compatible with
+     * the License of the Group, using one query for the Observations. Nothing
+     * is checked if the Group has no License.
+     *
+     * @param pm the persistence manager to use.
+     * @param groupId the primary key of the Group.
+     * @param observationIds the primary keys of the Observations.
+     * @throws IllegalArgumentException if an Observation does not exist or
+     * its License is not compatible.
+     */
+    protected void assertLicenseCompatibilty(JooqPersistenceManager pm, Object groupId, Collection<?> observationIds) {
+        final Object groupLicenseId = ownershipResolver.resolveLicenses(pm, pluginPlus.etGroup, List.of(groupId)).get(groupId.toString());
+        if (groupLicenseId == null)
+            return;
 
-        return false;
+        final Map<String, String> licenses = ownershipResolver.resolveObservationLicenses(pm, observationIds);
+        for (Object observationId : observationIds) {
+            if (!licenses.containsKey(observationId.toString()))
+                throw new IllegalArgumentException("Observation " + observationId + " does not exist");
+        }
+        for (String licenseId : new HashSet<>(licenses.values())) {
+            assertLicenseCompatibilty(licenseId, groupLicenseId.toString());
+        }
     }
 
     protected void assertLicenseCompatibilty(JooqPersistenceManager pm, Entity entity) {
@@ -570,9 +799,9 @@ public abstract class TableHelper {
             if (group.isSetProperty(pluginPlus.npLicenseGroup))
                 groupLicense = group.getProperty(pluginPlus.npLicenseGroup);
             else {
-                group = pm.get(pluginPlus.etGroup, entity.getPrimaryKeyValues());
+                group = get(pm, pluginPlus.etGroup, entity.getPrimaryKeyValues());
                 if ((group != null) && group.isSetProperty(pluginPlus.npLicenseGroup))
-                    groupLicense = pm.get(pluginPlus.etLicense,
+                    groupLicense = pluginPlus.getLicenseCatalogue().get(pm,
                             group.getProperty(pluginPlus.npLicenseGroup).getPrimaryKeyValues());
                 else
                     groupLicense = null;
@@ -591,19 +820,19 @@ public abstract class TableHelper {
                     multiDatastream = entity.getProperty(pluginMultiDatastream.npMultiDatastreamObservation);
 
                 if ((datastream == null) && (multiDatastream == null)) {
-                    Entity observation = pm.get(pluginCoreModel.etObservation, entity.getPrimaryKeyValues());
+                    Entity observation = get(pm, pluginCoreModel.etObservation, entity.getPrimaryKeyValues());
                     if ((observation != null) && observation.isSetProperty(pluginCoreModel.npDatastreamObservation))
-                        datastream = pm.get(pluginCoreModel.etDatastream,
+                        datastream = get(pm, pluginCoreModel.etDatastream,
                                 observation.getProperty(pluginCoreModel.npDatastreamObservation).getPrimaryKeyValues());
                     else
                         datastream = null;
                 }
 
                 if ((datastream == null) && (multiDatastream == null)) {
-                    Entity observation = pm.get(pluginCoreModel.etObservation, entity.getPrimaryKeyValues());
+                    Entity observation = get(pm, pluginCoreModel.etObservation, entity.getPrimaryKeyValues());
                     if ((observation != null)
                             && observation.isSetProperty(pluginMultiDatastream.npMultiDatastreamObservation))
-                        multiDatastream = pm.get(pluginMultiDatastream.etMultiDatastream,
+                        multiDatastream = get(pm, pluginMultiDatastream.etMultiDatastream,
                                 observation.getProperty(pluginMultiDatastream.npMultiDatastreamObservation).getPrimaryKeyValues());
                     else
                         multiDatastream = null;
@@ -613,7 +842,7 @@ public abstract class TableHelper {
                     if (datastream.isSetProperty(pluginPlus.npLicenseDatastream)) {
                         assertLicenseCompatibilty(datastream.getProperty(pluginPlus.npLicenseDatastream).getPrimaryKeyValues().get(0).toString(), groupLicenseId);
                     } else {
-                        datastream = pm.get(pluginCoreModel.etDatastream, datastream.getPrimaryKeyValues());
+                        datastream = get(pm, pluginCoreModel.etDatastream, datastream.getPrimaryKeyValues());
                         assertLicenseCompatibilty(datastream.getProperty(pluginPlus.npLicenseDatastream).getPrimaryKeyValues().get(0).toString(), groupLicenseId);
                     }
 
@@ -621,7 +850,7 @@ public abstract class TableHelper {
                     if (multiDatastream.isSetProperty(pluginPlus.npLicenseMultiDatastream)) {
                         assertLicenseCompatibilty(multiDatastream.getProperty(pluginPlus.npLicenseMultiDatastream).getPrimaryKeyValues().get(0).toString(), groupLicenseId);
                     } else {
-                        multiDatastream = pm.get(pluginMultiDatastream.etMultiDatastream, multiDatastream.getPrimaryKeyValues());
+                        multiDatastream = get(pm, pluginMultiDatastream.etMultiDatastream, multiDatastream.getPrimaryKeyValues());
                         assertLicenseCompatibilty(multiDatastream.getProperty(pluginPlus.npLicenseMultiDatastream).getPrimaryKeyValues().get(0).toString(), groupLicenseId);
 
                     }
@@ -20,9 +20,11 @@ package de.securedimensions.frostserver.plugin.staplus.helper;
 import static de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.HookPreInsert.Phase.PRE_RELATIONS;
 
 import de.fraunhofer.iosb.ilt.frostserver.model.core.Entity;
+import de.fraunhofer.iosb.ilt.frostserver.model.core.PkValue;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
 import de.fraunhofer.iosb.ilt.frostserver.service.ServiceRequest;
 import de.fraunhofer.iosb.ilt.frostserver.settings.CoreSettings;
+import de.fraunhofer.iosb.ilt.frostserver.util.exception.ForbiddenException;
 import de.securedimensions.frostserver.plugin.staplus.TableImpCampaign;
 import java.security.Principal;
 
@@ -39,11 +41,12 @@ public class TableHelperCampaign extends TableHelper {
     @Override
     public void registerPreHooks() {
 
-        tableCampaign.registerHookPreInsert(-1,
+        tableCampaign.registerHookPreInsert(-1, timedPreInsert(pluginPlus.etCampaign,
                 (phase, pm, entity, insertFields) -> {
                     if (phase != PRE_RELATIONS) {
                         return true;
                     }
+
                     if (!pluginPlus.isEnforceOwnershipEnabled())
                         return true;
 
@@ -61,20 +64,28 @@ public class TableHelperCampaign extends TableHelper {
                     }
 
                     return true;
-                });
+                }));
 
-        tableCampaign.registerHookPreUpdate(-1,
+        tableCampaign.registerHookPreUpdate(-1, timedPreUpdate(pluginPlus.etCampaign,
                 (pm, entity, entityId, updateMode) -> {
+                    assertCampaignOpen(entityId);
+
                     if (!pluginPlus.isEnforceOwnershipEnabled())
                         return;
 
+                    // The Party may be changed by this update
+                    if (entity.isSetProperty(pluginPlus.npPartyCampaign)) {
+                        OwnershipCache.getLocalCache().invalidate(pluginPlus.etCampaign, entityId.get(0));
+                        invalidateVerdicts(pluginPlus.etCampaign, entityId.get(0));
+                    }
+
                     Principal principal = ServiceRequest.getLocalRequest().getUserPrincipal();
 
                     if (isAdmin(principal))
                         return;
 
                     // We need to assert on the existing Campaign that is to be updated
-                    Entity storedCampaign = pm.get(pluginPlus.etCampaign, entityId);
+                    Entity storedCampaign = get(pm, pluginPlus.etCampaign, entityId);
                     assertOwnershipCampaign(pm, storedCampaign, principal);
 
                     if (pluginPlus.isEnforceLicensingEnabled()) {
@@ -82,21 +93,36 @@ public class TableHelperCampaign extends TableHelper {
                         if (entity.isSetProperty(pluginPlus.npLicenseCampaign))
                             assertEmptyCampaign(pm, storedCampaign);
                     }
-                });
+                }));
 
-        tableCampaign.registerHookPreDelete(-1, (pm, entityId) -> {
+        tableCampaign.registerHookPreDelete(-1, timedPreDelete(pluginPlus.etCampaign, (pm, entityId) -> {
             if (!pluginPlus.isEnforceOwnershipEnabled())
                 return;
 
+            invalidateVerdicts(pluginPlus.etCampaign, entityId.get(0));
+
             Principal principal = ServiceRequest.getLocalRequest().getUserPrincipal();
 
             if (isAdmin(principal))
                 return;
 
-            Entity campaign = pm.get(pluginPlus.etCampaign, entityId);
+            Entity campaign = get(pm, pluginPlus.etCampaign, entityId);
             assertOwnershipCampaign(pm, campaign, principal);
-        });
+        }));
+
+    }
 
+    /**
+     * Once the endTime of a Campaign is reached, only an admin can modify it.
+     */
+    private void assertCampaignOpen(PkValue entityId) {
+        final CampaignLifecycle lifecycle = pluginPlus.getCampaignLifecycle();
+        if (lifecycle == null || !lifecycle.isClosed(entityId.get(0)))
+            return;
+
+        final ServiceRequest request = ServiceRequest.getLocalRequest();
+        if (request != null && !isAdmin(request.getUserPrincipal()))
+            throw new ForbiddenException("Campaign is closed, endTime reached");
     }
 
 }
@@ -45,7 +45,7 @@ public class TableHelperDatastream extends TableHelper {
 
     public void registerPreHooks() {
 
-        tableDatastreams.registerHookPreInsert(-1,
+        tableDatastreams.registerHookPreInsert(-1, timedPreInsert(pluginCoreModel.etDatastream,
                 (phase, pm, entity, insertFields) -> {
 
                     /*
@@ -54,6 +54,8 @@ public class TableHelperDatastream extends TableHelper {
                     if (phase == PRE_RELATIONS)
                         return true;
 
+                    assertCampaignsOpen(entity, pluginPlus.npCampaignDatastreams);
+
                     if (!pluginPlus.isEnforceOwnershipEnabled())
                         return true;
 
@@ -70,21 +72,29 @@ public class TableHelperDatastream extends TableHelper {
                     }
 
                     return true;
-                });
+                }));
 
-        tableDatastreams.registerHookPreUpdate(-1,
+        tableDatastreams.registerHookPreUpdate(-1, timedPreUpdate(pluginCoreModel.etDatastream,
                 (pm, entity, entityId, updateMode) -> {
 
+                    assertCampaignsOpen(entity, pluginPlus.npCampaignDatastreams);
+
                     if (!pluginPlus.isEnforceOwnershipEnabled())
                         return;
 
+                    // The Party may be changed by this update
+                    if (entity.isSetProperty(pluginPlus.npPartyDatastream)) {
+                        OwnershipCache.getLocalCache().invalidate(pluginCoreModel.etDatastream, entityId.get(0));
+                        invalidateVerdicts(pluginCoreModel.etDatastream, entityId.get(0));
+                    }
+
                     Principal principal = ServiceRequest.getLocalRequest().getUserPrincipal();
 
                     if (isAdmin(principal))
                         return;
 
                     // We need to assert on the existing Datastream that is to be updated
-                    entity = pm.get(pluginCoreModel.etDatastream, entityId);
+                    entity = get(pm, pluginCoreModel.etDatastream, entityId);
                     assertOwnershipDatastream(pm, entity, principal);
 
                     if (pluginPlus.isEnforceLicensingEnabled()) {
@@ -92,22 +102,24 @@ public class TableHelperDatastream extends TableHelper {
                         assertEmptyDatastream(pm, entity);
                     }
 
-                });
+                }));
 
-        tableDatastreams.registerHookPreDelete(-1, (pm, entityId) -> {
+        tableDatastreams.registerHookPreDelete(-1, timedPreDelete(pluginCoreModel.etDatastream, (pm, entityId) -> {
 
             if (!pluginPlus.isEnforceOwnershipEnabled())
                 return;
 
+            invalidateVerdicts(pluginCoreModel.etDatastream, entityId.get(0));
+
             Principal principal = ServiceRequest.getLocalRequest().getUserPrincipal();
 
             if (isAdmin(principal))
                 return;
 
-            Entity datastream = pm.get(pluginCoreModel.etDatastream, entityId);
+            Entity datastream = get(pm, pluginCoreModel.etDatastream, entityId);
             assertOwnershipDatastream(pm, datastream, principal);
 
-        });
+        }));
 
     }
 
@@ -41,7 +41,7 @@ public class TableHelperFeatureOfInterest extends TableHelper {
     @Override
     public void registerPreHooks() {
 
-        tableFoI.registerHookPreInsert(-1,
+        tableFoI.registerHookPreInsert(-1, timedPreInsert(pluginCoreModel.etFeatureOfInterest,
                 (phase, pm, entity, insertFields) -> {
 
                     /*
@@ -62,9 +62,9 @@ public class TableHelperFeatureOfInterest extends TableHelper {
                         assertOwnershipFeatureOfInterest(pm, entity, principal);
 
                     return true;
-                });
+                }));
 
-        tableFoI.registerHookPreUpdate(-1,
+        tableFoI.registerHookPreUpdate(-1, timedPreUpdate(pluginCoreModel.etFeatureOfInterest,
                 (pm, entity, entityId, updateMode) -> {
 
                     final String encodingType = (String) entity.getProperty(pluginCoreModel.etFeatureOfInterest.getProperty("encodingType"));
@@ -81,9 +81,9 @@ public class TableHelperFeatureOfInterest extends TableHelper {
                         throw new IllegalArgumentException("Updating a FeatureOfInterest is not supported");
                     }
 
-                });
+                }));
 
-        tableFoI.registerHookPreDelete(-1, (pm, entityId) -> {
+        tableFoI.registerHookPreDelete(-1, timedPreDelete(pluginCoreModel.etFeatureOfInterest, (pm, entityId) -> {
 
             Principal principal = ServiceRequest.getLocalRequest().getUserPrincipal();
 
@@ -92,7 +92,7 @@ public class TableHelperFeatureOfInterest extends TableHelper {
 
             // Unpredictable implications as we don't know all the observations were this FeatureOfInterest is associated to
             throw new IllegalArgumentException("Deleting a FeatureOfInterest is not supported");
-        });
+        }));
     }
 
     private void assertOwnershipFeatureOfInterest(JooqPersistenceManager pm, Entity location, Principal principal) throws IllegalArgumentException {
@@ -101,7 +101,7 @@ public class TableHelperFeatureOfInterest extends TableHelper {
             throw new IllegalArgumentException("Cannot check ownership of FeatureOfInterest for more than one Observation");
 
         if (observations != null) {
-            Entity observation = pm.get(pluginCoreModel.etObservation, observations.iterator().next().getPrimaryKeyValues());
+            Entity observation = get(pm, pluginCoreModel.etObservation, observations.iterator().next().getPrimaryKeyValues());
             assertOwnershipObservation(pm, observation, principal);
         }
     }
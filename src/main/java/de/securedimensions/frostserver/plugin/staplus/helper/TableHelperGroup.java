@@ -20,26 +20,34 @@ package de.securedimensions.frostserver.plugin.staplus.helper;
 import static de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.HookPreInsert.Phase.PRE_RELATIONS;
 
 import de.fraunhofer.iosb.ilt.frostserver.model.core.Entity;
+import de.fraunhofer.iosb.ilt.frostserver.model.core.EntitySet;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
 import de.fraunhofer.iosb.ilt.frostserver.service.ServiceRequest;
 import de.fraunhofer.iosb.ilt.frostserver.settings.CoreSettings;
 import de.securedimensions.frostserver.plugin.staplus.TableImpGroup;
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import org.jooq.impl.DSL;
 
 public class TableHelperGroup extends TableHelper {
 
     private final TableImpGroup tableGroups;
+    private final GroupMembershipLoader membershipLoader;
 
     public TableHelperGroup(CoreSettings settings, JooqPersistenceManager ppm) {
         super(settings, ppm);
 
         this.tableGroups = tables.getTableForClass(TableImpGroup.class);
+        this.membershipLoader = new GroupMembershipLoader(tables, pluginPlus.getGroupMembershipBatchSize());
     }
 
     @Override
     public void registerPreHooks() {
 
-        tableGroups.registerHookPreInsert(-1,
+        tableGroups.registerHookPreInsert(-1, timedPreInsert(pluginPlus.etGroup,
                 (phase, pm, entity, insertFields) -> {
 
                     /*
@@ -48,6 +56,8 @@ public class TableHelperGroup extends TableHelper {
                     if (phase == PRE_RELATIONS)
                         return true;
 
+                    assertCampaignsOpen(entity, pluginPlus.npCampaignsGroup);
+
                     if (!pluginPlus.isEnforceOwnershipEnabled())
                         return true;
 
@@ -64,21 +74,29 @@ public class TableHelperGroup extends TableHelper {
                     }
 
                     return true;
-                });
+                }));
 
-        tableGroups.registerHookPreUpdate(-1,
+        tableGroups.registerHookPreUpdate(-1, timedPreUpdate(pluginPlus.etGroup,
                 (pm, entity, entityId, updateMode) -> {
 
+                    assertCampaignsOpen(entity, pluginPlus.npCampaignsGroup);
+
                     if (!pluginPlus.isEnforceOwnershipEnabled())
                         return;
 
+                    // The Party may be changed by this update
+                    if (entity.isSetProperty(pluginPlus.npPartyGroup)) {
+                        OwnershipCache.getLocalCache().invalidate(pluginPlus.etGroup, entityId.get(0));
+                        invalidateVerdicts(pluginPlus.etGroup, entityId.get(0));
+                    }
+
                     Principal principal = ServiceRequest.getLocalRequest().getUserPrincipal();
 
                     if (isAdmin(principal))
                         return;
 
                     // We need to assert on the existing Group that is to be updated
-                    entity = pm.get(pluginPlus.etGroup, entityId);
+                    entity = get(pm, pluginPlus.etGroup, entityId);
                     assertOwnershipGroup(pm, entity, principal);
 
                     if (pluginPlus.isEnforceLicensingEnabled()) {
@@ -86,21 +104,77 @@ public class TableHelperGroup extends TableHelper {
                         assertEmptyGroup(pm, entity);
                     }
 
-                });
+                }));
+
+        // Runs after the ownership checks of the hook above
+        tableGroups.registerHookPreUpdate(0, timedPreUpdate(pluginPlus.etGroup,
+                (pm, entity, entityId, updateMode) -> {
+
+                    if (!entity.isSetProperty(pluginPlus.npObservationsGroup))
+                        return;
+
+                    EntitySet observations = entity.getProperty(pluginPlus.npObservationsGroup);
+                    if ((observations == null) || observations.isEmpty())
+                        return;
+
+                    // Only Observations linked by reference are added in bulk, new Observations are created by the core
+                    final List<Object> observationIds = new ArrayList<>();
+                    for (Entity observation : observations) {
+                        if (observation.getPrimaryKeyValues().get(0) == null)
+                            return;
+                        observationIds.add(observation.getPrimaryKeyValues().get(0));
+                    }
+
+                    // The bulk insert bypasses the core, which would reject unknown Observations
+                    final Set<String> existing = ownershipResolver.findExisting(pm, pluginCoreModel.etObservation, observationIds);
+                    for (Object observationId : observationIds) {
+                        if (!existing.contains(observationId.toString()))
+                            throw new IllegalArgumentException("Observation " + observationId + " does not exist");
+                    }
+
+                    if (pluginPlus.isEnforceLicensingEnabled()) {
+                        Principal principal = ServiceRequest.getLocalRequest().getUserPrincipal();
+                        if (!isAdmin(principal))
+                            assertLicenseCompatibilty(pm, entityId.get(0), observationIds);
+                    }
 
-        tableGroups.registerHookPreDelete(-1, (pm, entityId) -> {
+                    membershipLoader.addObservations(pm, entityId.get(0), observationIds);
+
+                    // The links exist now, the core must not add them again
+                    Iterator<Entity> it = observations.iterator();
+                    while (it.hasNext()) {
+                        it.next();
+                        it.remove();
+                    }
+
+                }));
+
+        tableGroups.registerHookPreDelete(-1, timedPreDelete(pluginPlus.etGroup, (pm, entityId) -> {
 
             if (!pluginPlus.isEnforceOwnershipEnabled())
                 return;
 
+            invalidateVerdicts(pluginPlus.etGroup, entityId.get(0));
+
             Principal principal = ServiceRequest.getLocalRequest().getUserPrincipal();
 
             if (isAdmin(principal))
                 return;
 
-            Entity group = pm.get(pluginPlus.etGroup, entityId);
+            Entity group = get(pm, pluginPlus.etGroup, entityId);
             assertOwnershipGroup(pm, group, principal);
-        });
+        }));
+
+        if (pluginPlus.isGroupsObservationsHashPartitioned()) {
+            // Runs after the ownership check: drop the dedicated partition of
+            // the Group, if any, instead of cascading the delete to its rows.
+            tableGroups.registerHookPreDelete(0, (pm, entityId) -> {
+                HookMetrics.countDbCall();
+                pm.getDslContext()
+                        .select(DSL.function(DSL.name("STAPLUS_GROUPS_OBSERVATIONS_RELEASE"), Boolean.class, DSL.val(entityId.get(0))))
+                        .fetch();
+            });
+        }
 
     }
 
@@ -72,7 +72,7 @@ public class TableHelperLicense extends TableHelper {
     @Override
     public void registerPreHooks() {
 
-        tableLicenses.registerHookPreInsert(-1,
+        tableLicenses.registerHookPreInsert(-1, timedPreInsert(pluginPlus.etLicense,
                 (phase, pm, entity, insertFields) -> {
 
                     /*
@@ -82,6 +82,8 @@ public class TableHelperLicense extends TableHelper {
                         return true;
                     }
 
+                    pluginPlus.getLicenseCatalogue().invalidate(entity.getPrimaryKeyValues());
+
                     if (!pluginPlus.isEnforceLicensingEnabled())
                         return true;
 
@@ -93,58 +95,20 @@ public class TableHelperLicense extends TableHelper {
                     Principal principal = ServiceRequest.getLocalRequest().getUserPrincipal();
 
                     if (isAdmin(principal)) {
-                        return (pm.get(pluginPlus.etLicense, entity.getPrimaryKeyValues()) == null);
+                        return (pluginPlus.getLicenseCatalogue().get(pm, entity.getPrimaryKeyValues()) == null);
                     }
 
-                    if (entity.isSetProperty(pluginPlus.npDatastreamsLicense)) {
-                        EntitySet ds = entity.getProperty(pluginPlus.npDatastreamsLicense);
-                        if (ds == null) {
-                            throw new IllegalArgumentException("Datastreams do not exist.");
-                        }
-                        for (Entity d : ds) {
-                            assertLicenseDatastream(pm, d);
-                            assertOwnershipDatastream(pm, d, principal);
-                            assertEmptyDatastream(pm, d);
-                        }
-                    } else if (entity.isSetProperty(pluginPlus.npMultiDatastreamsLicense)) {
-                        EntitySet mds = entity.getProperty(pluginPlus.npMultiDatastreamsLicense);
-                        if (mds == null) {
-                            throw new IllegalArgumentException("MultiDatastreams do not exist.");
-                        }
-                        for (Entity md : mds) {
-                            assertLicenseMultiDatastream(pm, md);
-                            assertOwnershipMultiDatastream(pm, md, principal);
-                            assertEmptyMultiDatastream(pm, md);
-                        }
-                    } else if (entity.isSetProperty(pluginPlus.npCampaignsLicense)) {
-                        EntitySet ps = entity.getProperty(pluginPlus.npCampaignsLicense);
-                        if (ps == null) {
-                            throw new IllegalArgumentException("Campaigns do not exist.");
-                        }
-                        for (Entity p : ps) {
-                            assertLicenseCampaign(pm, p);
-                            assertOwnershipCampaign(pm, p, principal);
-                            assertEmptyCampaign(pm, p);
-                        }
-                    } else if (entity.isSetProperty(pluginPlus.npGroupsLicense)) {
-                        EntitySet gs = entity.getProperty(pluginPlus.npGroupsLicense);
-                        if (gs == null) {
-                            throw new IllegalArgumentException("Groups do not exist.");
-                        }
-                        for (Entity g : gs) {
-                            assertLicenseGroup(pm, g);
-                            assertOwnershipGroup(pm, g, principal);
-                            assertEmptyGroup(pm, g);
-                        }
-                    } else
-                        ;//throw new IllegalArgumentException("License must be associated with `Datastream`, `MultiDatastream`, `Campaign` or `Group`.");
+                    assertLinkedEntities(pm, entity, principal);
+                    //throw new IllegalArgumentException("License must be associated with `Datastream`, `MultiDatastream`, `Campaign` or `Group`.");
 
                     return true;
-                });
+                }));
 
-        tableLicenses.registerHookPreUpdate(-1,
+        tableLicenses.registerHookPreUpdate(-1, timedPreUpdate(pluginPlus.etLicense,
                 (pm, entity, entityId, updateMode) -> {
 
+                    pluginPlus.getLicenseCatalogue().invalidate(entityId);
+
                     if (!pluginPlus.isEnforceLicensingEnabled())
                         return;
 
@@ -156,52 +120,14 @@ public class TableHelperLicense extends TableHelper {
                     //if (LICENSE_IDS.contains(license.getId().getValue()))
                     //throw new ForbiddenException("System license cannot be updated.");
 
-                    if (entity.isSetProperty(pluginPlus.npDatastreamsLicense)) {
-                        EntitySet ds = entity.getProperty(pluginPlus.npDatastreamsLicense);
-                        if (ds == null) {
-                            throw new IllegalArgumentException("Datastreams do not exist.");
-                        }
-                        for (Entity d : ds) {
-                            assertLicenseDatastream(pm, d);
-                            assertOwnershipDatastream(pm, d, principal);
-                            assertEmptyDatastream(pm, d);
-                        }
-                    } else if (entity.isSetProperty(pluginPlus.npMultiDatastreamsLicense)) {
-                        EntitySet mds = entity.getProperty(pluginPlus.npMultiDatastreamsLicense);
-                        if (mds == null) {
-                            throw new IllegalArgumentException("MultiDatastreams do not exist.");
-                        }
-                        for (Entity md : mds) {
-                            assertLicenseMultiDatastream(pm, md);
-                            assertOwnershipMultiDatastream(pm, md, principal);
-                            assertEmptyMultiDatastream(pm, md);
-                        }
-                    } else if (entity.isSetProperty(pluginPlus.npCampaignsLicense)) {
-                        EntitySet ps = entity.getProperty(pluginPlus.npCampaignsLicense);
-                        if (ps == null) {
-                            throw new IllegalArgumentException("Campaigns do not exist.");
-                        }
-                        for (Entity p : ps) {
-                            assertLicenseCampaign(pm, p);
-                            assertOwnershipCampaign(pm, p, principal);
-                            assertEmptyCampaign(pm, p);
-                        }
-                    } else if (entity.isSetProperty(pluginPlus.npGroupsLicense)) {
-                        EntitySet gs = entity.getProperty(pluginPlus.npGroupsLicense);
-                        if (gs == null) {
-                            throw new IllegalArgumentException("Groups do not exist.");
-                        }
-                        for (Entity g : gs) {
-                            assertLicenseGroup(pm, g);
-                            assertOwnershipGroup(pm, g, principal);
-                            assertEmptyGroup(pm, g);
-                        }
-                    } else
+                    if (!assertLinkedEntities(pm, entity, principal))
                         throw new ForbiddenException("License must be associated with `Datastream`, `MultiDatastream`, `Campaign` or `Group`.");
 
-                });
+                }));
+
+        tableLicenses.registerHookPreDelete(-1, timedPreDelete(pluginPlus.etLicense, (pm, entityId) -> {
 
-        tableLicenses.registerHookPreDelete(-1, (pm, entityId) -> {
+            pluginPlus.getLicenseCatalogue().invalidate(entityId);
 
             if (!pluginPlus.isEnforceLicensingEnabled())
                 return;
@@ -213,7 +139,52 @@ public class TableHelperLicense extends TableHelper {
 
             throw new ForbiddenException("License cannot be deleted.");
 
-        });
+        }));
+    }
+
+    /**
+     * Asserts the (Multi)Datastreams, Campaigns or ObservationGroups linked to
+     * the License. All linked entities are checked with one query per check.
+     *
+     * @return false if the License is not linked to any of these entities.
+     */
+    private boolean assertLinkedEntities(JooqPersistenceManager pm, Entity entity, Principal principal) {
+        if (entity.isSetProperty(pluginPlus.npDatastreamsLicense)) {
+            EntitySet ds = entity.getProperty(pluginPlus.npDatastreamsLicense);
+            if (ds == null) {
+                throw new IllegalArgumentException("Datastreams do not exist.");
+            }
+            assertLicense(pm, ds, pluginCoreModel.etDatastream, pluginPlus.npLicenseDatastream);
+            assertOwnership(pm, ds, pluginCoreModel.etDatastream, pluginPlus.npPartyDatastream, principal);
+            assertEmpty(pm, ds, pluginCoreModel.etDatastream, pluginCoreModel.npObservationsDatastream);
+        } else if (entity.isSetProperty(pluginPlus.npMultiDatastreamsLicense)) {
+            EntitySet mds = entity.getProperty(pluginPlus.npMultiDatastreamsLicense);
+            if (mds == null) {
+                throw new IllegalArgumentException("MultiDatastreams do not exist.");
+            }
+            assertLicense(pm, mds, pluginMultiDatastream.etMultiDatastream, pluginPlus.npLicenseMultiDatastream);
+            assertOwnership(pm, mds, pluginMultiDatastream.etMultiDatastream, pluginPlus.npPartyMultiDatastream, principal);
+            assertEmpty(pm, mds, pluginMultiDatastream.etMultiDatastream, pluginMultiDatastream.npObservationsMDs);
+        } else if (entity.isSetProperty(pluginPlus.npCampaignsLicense)) {
+            EntitySet ps = entity.getProperty(pluginPlus.npCampaignsLicense);
+            if (ps == null) {
+                throw new IllegalArgumentException("Campaigns do not exist.");
+            }
+            assertLicense(pm, ps, pluginPlus.etCampaign, pluginPlus.npLicenseCampaign);
+            assertOwnership(pm, ps, pluginPlus.etCampaign, pluginPlus.npPartyCampaign, principal);
+            assertEmpty(pm, ps, pluginPlus.etCampaign, null);
+        } else if (entity.isSetProperty(pluginPlus.npGroupsLicense)) {
+            EntitySet gs = entity.getProperty(pluginPlus.npGroupsLicense);
+            if (gs == null) {
+                throw new IllegalArgumentException("Groups do not exist.");
+            }
+            assertLicense(pm, gs, pluginPlus.etGroup, pluginPlus.npLicenseGroup);
+            assertOwnership(pm, gs, pluginPlus.etGroup, pluginPlus.npPartyGroup, principal);
+            assertEmpty(pm, gs, pluginPlus.etGroup, pluginPlus.npObservationsGroup);
+        } else {
+            return false;
+        }
+        return true;
     }
 
 }
@@ -21,17 +21,14 @@ import static de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.Ho
 
 import de.fraunhofer.iosb.ilt.frostserver.model.core.Entity;
 import de.fraunhofer.iosb.ilt.frostserver.model.core.EntitySet;
-import de.fraunhofer.iosb.ilt.frostserver.parser.path.PathParser;
-import de.fraunhofer.iosb.ilt.frostserver.parser.query.QueryParser;
-import de.fraunhofer.iosb.ilt.frostserver.path.ResourcePath;
-import de.fraunhofer.iosb.ilt.frostserver.path.Version;
+import de.fraunhofer.iosb.ilt.frostserver.model.core.PkValue;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
 import de.fraunhofer.iosb.ilt.frostserver.plugin.coremodel.TableImpLocations;
-import de.fraunhofer.iosb.ilt.frostserver.query.Query;
 import de.fraunhofer.iosb.ilt.frostserver.service.ServiceRequest;
 import de.fraunhofer.iosb.ilt.frostserver.settings.CoreSettings;
 import de.fraunhofer.iosb.ilt.frostserver.util.exception.IncompleteEntityException;
 import java.security.Principal;
+import java.util.List;
 
 public class TableHelperLocation extends TableHelper {
 
@@ -46,7 +43,7 @@ public class TableHelperLocation extends TableHelper {
     @Override
     public void registerPreHooks() {
 
-        tableLocations.registerHookPreInsert(-1,
+        tableLocations.registerHookPreInsert(-1, timedPreInsert(pluginCoreModel.etLocation,
                 (phase, pm, entity, insertFields) -> {
 
                     /*
@@ -67,9 +64,9 @@ public class TableHelperLocation extends TableHelper {
                         assertOwnershipLocation(pm, entity, principal);
 
                     return true;
-                });
+                }));
 
-        tableLocations.registerHookPreUpdate(-1,
+        tableLocations.registerHookPreUpdate(-1, timedPreUpdate(pluginCoreModel.etLocation,
                 (pm, entity, entityId, updateMode) -> {
 
                     final String encodingType = (String) entity.getProperty(pluginCoreModel.etLocation.getProperty("encodingType"));
@@ -84,9 +81,9 @@ public class TableHelperLocation extends TableHelper {
                     if (pluginPlus.isEnforceOwnershipEnabled())
                         assertOwnershipLocation(pm, entity, principal);
 
-                });
+                }));
 
-        tableLocations.registerHookPreDelete(-1, (pm, entityId) -> {
+        tableLocations.registerHookPreDelete(-1, timedPreDelete(pluginCoreModel.etLocation, (pm, entityId) -> {
 
             if (!pluginPlus.isEnforceOwnershipEnabled())
                 return;
@@ -96,13 +93,16 @@ public class TableHelperLocation extends TableHelper {
             if (isAdmin(principal))
                 return;
 
-            ResourcePath rp = PathParser.parsePath(pm.getCoreSettings().getModelRegistry(), pm.getCoreSettings().getQueryDefaults().getServiceRootUrl(), Version.V_1_1, "/Locations(" + entityId.get(0) + ")");
-            Query query = QueryParser.parseQuery("$expand=Things", pm.getCoreSettings().getQueryDefaults(), rp.getMainElementType().getModelRegistry(), rp);
-            query.validate();
-            Entity location = (Entity) pm.get(rp, query);
+            // At most two Things are needed to detect a Location shared by several Things
+            List<Object> thingIds = ownershipResolver.findThingsOfLocation(pm, entityId.get(0), 2);
+            if (thingIds.size() > 1)
+                throw new IllegalArgumentException("Cannot check ownership of Location for more than one Thing");
 
-            assertOwnershipLocation(pm, location, principal);
-        });
+            if (!thingIds.isEmpty()) {
+                Entity thing = get(pm, pluginCoreModel.etThing, PkValue.of(thingIds.get(0)));
+                assertOwnershipThing(pm, thing, principal);
+            }
+        }));
 
     }
 
@@ -112,7 +112,7 @@ public class TableHelperLocation extends TableHelper {
             throw new IllegalArgumentException("Cannot check ownership of Location for more than one Thing");
 
         if (things != null) {
-            Entity thing = pm.get(pluginCoreModel.etThing, things.iterator().next().getPrimaryKeyValues());
+            Entity thing = get(pm, pluginCoreModel.etThing, things.iterator().next().getPrimaryKeyValues());
             assertOwnershipThing(pm, thing, principal);
         }
     }
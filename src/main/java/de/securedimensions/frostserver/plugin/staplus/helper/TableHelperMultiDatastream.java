@@ -48,7 +48,7 @@ public class TableHelperMultiDatastream extends TableHelper {
             tableMultiDatastreams.getPropertyFieldRegistry()
                     .addEntry(pluginPlus.npPartyMultiDatastream, table -> ((TableLike<Record>) table).field(partyMDIdIdx));
 
-            tableMultiDatastreams.registerHookPreInsert(-1,
+            tableMultiDatastreams.registerHookPreInsert(-1, timedPreInsert(pluginMultiDatastream.etMultiDatastream,
                     (phase, pm, entity, insertFields) -> {
 
                         /*
@@ -57,6 +57,8 @@ public class TableHelperMultiDatastream extends TableHelper {
                         if (phase == PRE_RELATIONS)
                             return true;
 
+                        assertCampaignsOpen(entity, pluginPlus.npCampaignMultiDatastreams);
+
                         if (!pluginPlus.isEnforceOwnershipEnabled())
                             return true;
 
@@ -73,21 +75,29 @@ public class TableHelperMultiDatastream extends TableHelper {
                         }
 
                         return true;
-                    });
+                    }));
 
-            tableMultiDatastreams.registerHookPreUpdate(-1,
+            tableMultiDatastreams.registerHookPreUpdate(-1, timedPreUpdate(pluginMultiDatastream.etMultiDatastream,
                     (pm, entity, entityId, updateMode) -> {
 
+                        assertCampaignsOpen(entity, pluginPlus.npCampaignMultiDatastreams);
+
                         if (!pluginPlus.isEnforceOwnershipEnabled())
                             return;
 
+                        // The Party may be changed by this update
+                        if (entity.isSetProperty(pluginPlus.npPartyMultiDatastream)) {
+                            OwnershipCache.getLocalCache().invalidate(pluginMultiDatastream.etMultiDatastream, entityId.get(0));
+                            invalidateVerdicts(pluginMultiDatastream.etMultiDatastream, entityId.get(0));
+                        }
+
                         Principal principal = ServiceRequest.getLocalRequest().getUserPrincipal();
 
                         if (isAdmin(principal))
                             return;
 
                         // We need to assert on the existing Project that is to be updated
-                        entity = pm.get(pluginMultiDatastream.etMultiDatastream, entityId);
+                        entity = get(pm, pluginMultiDatastream.etMultiDatastream, entityId);
                         assertOwnershipMultiDatastream(pm, entity, principal);
 
                         if (pluginPlus.isEnforceLicensingEnabled()) {
@@ -95,21 +105,23 @@ public class TableHelperMultiDatastream extends TableHelper {
                             assertEmptyMultiDatastream(pm, entity);
                         }
 
-                    });
+                    }));
 
-            tableMultiDatastreams.registerHookPreDelete(-1, (pm, entityId) -> {
+            tableMultiDatastreams.registerHookPreDelete(-1, timedPreDelete(pluginMultiDatastream.etMultiDatastream, (pm, entityId) -> {
 
                 if (!pluginPlus.isEnforceOwnershipEnabled())
                     return;
 
+                invalidateVerdicts(pluginMultiDatastream.etMultiDatastream, entityId.get(0));
+
                 Principal principal = ServiceRequest.getLocalRequest().getUserPrincipal();
 
                 if (isAdmin(principal))
                     return;
 
-                Entity multiDatastream = pm.get(pluginMultiDatastream.etMultiDatastream, entityId);
+                Entity multiDatastream = get(pm, pluginMultiDatastream.etMultiDatastream, entityId);
                 assertOwnershipMultiDatastream(pm, multiDatastream, principal);
-            });
+            }));
 
         }
 
@@ -19,7 +19,6 @@ package de.securedimensions.frostserver.plugin.staplus.helper;
 
 import static de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.HookPreInsert.Phase.PRE_RELATIONS;
 
-import de.fraunhofer.iosb.ilt.frostserver.model.core.Entity;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
 import de.fraunhofer.iosb.ilt.frostserver.plugin.coremodel.TableImpObservations;
 import de.fraunhofer.iosb.ilt.frostserver.service.ServiceRequest;
@@ -40,7 +39,7 @@ public class TableHelperObservation extends TableHelper {
     @Override
     public void registerPreHooks() {
 
-        tableObservations.registerHookPreInsert(-1,
+        tableObservations.registerHookPreInsert(-1, timedPreInsert(pluginCoreModel.etObservation,
                 (phase, pm, entity, insertFields) -> {
 
                     /*
@@ -64,9 +63,9 @@ public class TableHelperObservation extends TableHelper {
 
                     return true;
 
-                });
+                }));
 
-        tableObservations.registerHookPreUpdate(-1,
+        tableObservations.registerHookPreUpdate(-1, timedPreUpdate(pluginCoreModel.etObservation,
                 (pm, entity, entityId, updateMode) -> {
 
                     if (!pluginPlus.isEnforceOwnershipEnabled())
@@ -78,12 +77,11 @@ public class TableHelperObservation extends TableHelper {
                         return;
 
                     // We need to assert on the existing Observation that is to be updated
-                    entity = pm.get(pluginCoreModel.etObservation, entityId);
-                    assertOwnershipObservation(pm, entity, principal);
+                    assertOwnershipObservation(pm, entityId, principal);
 
-                });
+                }));
 
-        tableObservations.registerHookPreDelete(-1, (pm, entityId) -> {
+        tableObservations.registerHookPreDelete(-1, timedPreDelete(pluginCoreModel.etObservation, (pm, entityId) -> {
 
             if (!pluginPlus.isEnforceOwnershipEnabled())
                 return;
@@ -93,11 +91,15 @@ public class TableHelperObservation extends TableHelper {
             if (isAdmin(principal))
                 return;
 
-            // The Observation from the DB contains the Datastream
-            Entity observation = pm.get(pluginCoreModel.etObservation, entityId);
-            assertOwnershipObservation(pm, observation, principal);
+            // The Datastream of the stored Observation determines the owner
+            assertOwnershipObservation(pm, entityId, principal);
+
+        }));
 
-        });
+        if (pluginPlus.getRelationClosure() != null) {
+            // Runs after the checks above, before the Relations of the Observation are deleted by the cascade
+            tableObservations.registerHookPreDelete(0, (pm, entityId) -> pluginPlus.getRelationClosure().removeObservation(pm, entityId.get(0)));
+        }
 
     }
 
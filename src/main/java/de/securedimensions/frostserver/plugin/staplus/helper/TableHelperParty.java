@@ -19,16 +19,17 @@ package de.securedimensions.frostserver.plugin.staplus.helper;
 
 import static de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.HookPreInsert.Phase.PRE_RELATIONS;
 
+import de.fraunhofer.iosb.ilt.frostserver.model.EntityType;
 import de.fraunhofer.iosb.ilt.frostserver.model.core.Entity;
 import de.fraunhofer.iosb.ilt.frostserver.model.core.EntitySet;
 import de.fraunhofer.iosb.ilt.frostserver.model.core.PkValue;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
+import de.fraunhofer.iosb.ilt.frostserver.property.NavigationPropertyMain.NavigationPropertyEntitySet;
 import de.fraunhofer.iosb.ilt.frostserver.service.ServiceRequest;
 import de.fraunhofer.iosb.ilt.frostserver.settings.CoreSettings;
 import de.fraunhofer.iosb.ilt.frostserver.util.exception.ForbiddenException;
 import de.securedimensions.frostserver.plugin.staplus.TableImpParty;
 import java.security.Principal;
-import java.util.UUID;
 
 public class TableHelperParty extends TableHelper {
 
@@ -43,7 +44,7 @@ public class TableHelperParty extends TableHelper {
     @Override
     public void registerPreHooks() {
 
-        tableParties.registerHookPreInsert(-1,
+        tableParties.registerHookPreInsert(-1, timedPreInsert(pluginPlus.etParty,
                 (phase, pm, entity, insertFields) -> {
 
                     /*
@@ -53,15 +54,8 @@ public class TableHelperParty extends TableHelper {
                         return true;
 
                     if (entity.isSetProperty(pluginPlus.epAuthId)) {
-                        String authID = entity.getProperty(pluginPlus.epAuthId);
-                        // Make sure that the authI is in UUID format
-                        try {
-                            // This throws exception if userId is not in UUID format
-                            UUID.fromString(authID);
-                        } catch (IllegalArgumentException exception) {
-                            // In case the userId is not a UUID
-                            entity.setProperty(pluginPlus.epAuthId, UUID.nameUUIDFromBytes(authID.getBytes()).toString());
-                        }
+                        // Make sure that the authId is in UUID format
+                        entity.setProperty(pluginPlus.epAuthId, AuthIds.normalise(entity.getProperty(pluginPlus.epAuthId)));
                     }
 
                     if (!pluginPlus.isEnforceOwnershipEnabled()) {
@@ -74,7 +68,7 @@ public class TableHelperParty extends TableHelper {
 
                         entity.setPrimaryKeyValues(PkValue.of(authID));
                         // If the Party already exist, we can skip processing
-                        return pm.get(pluginPlus.etParty, entity.getPrimaryKeyValues()) == null;
+                        return get(pm, pluginPlus.etParty, entity.getPrimaryKeyValues()) == null;
                     }
 
                     Principal principal = ServiceRequest.getLocalRequest().getUserPrincipal();
@@ -83,103 +77,43 @@ public class TableHelperParty extends TableHelper {
                         // The admin has extra rights
                         String authID = entity.getProperty(pluginPlus.epAuthId);
                         entity.setPrimaryKeyValues(PkValue.of(authID));
-                        entity = pm.get(pluginPlus.etParty, entity.getPrimaryKeyValues());
+                        entity = get(pm, pluginPlus.etParty, entity.getPrimaryKeyValues());
                         // No need to insert the entity as it already exists. Just return the Id of the existing Party
                         return (entity == null);
                     }
 
                     // We have a username available from the Principal
                     assertPrincipal(principal);
-                    String userId = principal.getName();
-
                     // Make sure that the userId is in UUID format
-                    try {
-                        // This throws exception if userId is not in UUID format
-                        UUID.fromString(userId);
-                    } catch (IllegalArgumentException exception) {
-                        // In case the userId is not a UUID
-                        userId = UUID.nameUUIDFromBytes(userId.getBytes()).toString();
-                    }
+                    String userId = AuthIds.normalise(principal);
 
                     if ((entity.isSetProperty(pluginPlus.epAuthId)) && (!userId.equalsIgnoreCase(entity.getProperty((pluginPlus.epAuthId))))) {
                         // The authId is set by this plugin - it cannot be set via POSTed Party property authId
                         throw new IllegalArgumentException("Party property 'authId' must represent the acting user or be omitted");
                     }
 
-                    if (entity.isSetProperty(pluginPlus.npDatastreamsParty)) {
-                        EntitySet ds = entity.getProperty(pluginPlus.npDatastreamsParty);
-                        if (ds == null) {
-                            throw new IllegalArgumentException("Datastreams do not exist.");
-                        }
-                        for (Entity d : ds) {
-                            if (pluginPlus.isEnforceOwnershipEnabled()) {
-                                assertOwnershipDatastream(pm, d, principal);
-                            }
-                            if (pluginPlus.isEnforceLicensingEnabled()) {
-                                assertLicenseDatastream(pm, d);
-                                assertEmptyDatastream(pm, d);
-                            }
-                        }
-                    } else if (entity.isSetProperty(pluginPlus.npMultiDatastreamsParty)) {
-                        EntitySet mds = entity.getProperty(pluginPlus.npMultiDatastreamsParty);
-                        if (mds == null) {
-                            throw new IllegalArgumentException("MultiDatastreams do not exist.");
-                        }
-                        for (Entity md : mds) {
-                            if (pluginPlus.isEnforceOwnershipEnabled()) {
-                                assertOwnershipMultiDatastream(pm, md, principal);
-                            }
-                            if (pluginPlus.isEnforceLicensingEnabled()) {
-                                assertLicenseMultiDatastream(pm, md);
-                                assertEmptyMultiDatastream(pm, md);
-                            }
-                        }
-                    } else if (entity.isSetProperty(pluginPlus.npCampaignsParty)) {
-                        EntitySet ps = entity.getProperty(pluginPlus.npCampaignsParty);
-                        if (ps == null) {
-                            throw new IllegalArgumentException("Campaigns do not exist.");
-                        }
-                        for (Entity p : ps) {
-                            if (pluginPlus.isEnforceOwnershipEnabled()) {
-                                assertLicenseCampaign(pm, p);
-                            }
-                            if (pluginPlus.isEnforceLicensingEnabled()) {
-                                assertOwnershipCampaign(pm, p, principal);
-                                assertEmptyCampaign(pm, p);
-                            }
-                        }
-                    } else if (entity.isSetProperty(pluginPlus.npGroupsParty)) {
-                        EntitySet gs = entity.getProperty(pluginPlus.npGroupsParty);
-                        if (gs == null) {
-                            throw new IllegalArgumentException("Groups do not exist.");
-                        }
-                        for (Entity g : gs) {
-                            if (pluginPlus.isEnforceOwnershipEnabled()) {
-                                assertLicenseGroup(pm, g);
-                            }
-                            if (pluginPlus.isEnforceLicensingEnabled()) {
-                                assertOwnershipGroup(pm, g, principal);
-                                assertEmptyGroup(pm, g);
-                            }
-                        }
-                    }
+                    assertLinkedEntities(pm, entity, principal);
+
                     //else
                     //  throw new ForbiddenException("License must be associated with `Datastream`, `MultiDatastream`, `Campaign` or `Group`.");
 
                     entity.setProperty(pluginPlus.epAuthId, userId);
                     entity.setPrimaryKeyValues(PkValue.of(userId));
-                    entity = pm.get(pluginPlus.etParty, entity.getPrimaryKeyValues());
+                    entity = get(pm, pluginPlus.etParty, entity.getPrimaryKeyValues());
                     // No need to insert the entity if it already exists:
                     return (entity == null);
 
-                });
+                }));
 
-        tableParties.registerHookPreUpdate(-1,
+        tableParties.registerHookPreUpdate(-1, timedPreUpdate(pluginPlus.etParty,
                 (pm, entity, entityId, updateMode) -> {
 
                     //if (!pluginPlus.isEnforceOwnershipEnabled())
                     //return;
 
+                    // The linked entities may change their Party with this update, also when done by the admin
+                    invalidateLinkedEntities(entity);
+
                     Principal principal = ServiceRequest.getLocalRequest().getUserPrincipal();
 
                     if (isAdmin(principal))
@@ -187,79 +121,24 @@ public class TableHelperParty extends TableHelper {
 
                     // We have a username available from the Principal
                     assertPrincipal(principal);
-                    String userId = principal.getName();
+                    String userId = AuthIds.normalise(principal);
 
                     if (!userId.equalsIgnoreCase(entityId.get(0).toString())) {
                         // The authId is set by this plugin - it cannot be set via POSTed Party property authId
                         throw new ForbiddenException("Cannot update existing Party of another user");
                     }
 
-                    if (entity.isSetProperty(pluginPlus.npDatastreamsParty)) {
-                        EntitySet ds = entity.getProperty(pluginPlus.npDatastreamsParty);
-                        if (ds == null) {
-                            throw new IllegalArgumentException("Datastreams do not exist.");
-                        }
-                        for (Entity d : ds) {
-                            if (pluginPlus.isEnforceOwnershipEnabled()) {
-                                assertOwnershipDatastream(pm, d, principal);
-                            }
-                            if (pluginPlus.isEnforceLicensingEnabled()) {
-                                assertLicenseDatastream(pm, d);
-                                assertEmptyDatastream(pm, d);
-                            }
-                        }
-                    } else if (entity.isSetProperty(pluginPlus.npMultiDatastreamsParty)) {
-                        EntitySet mds = entity.getProperty(pluginPlus.npMultiDatastreamsParty);
-                        if (mds == null) {
-                            throw new IllegalArgumentException("MultiDatastreams do not exist.");
-                        }
-                        for (Entity md : mds) {
-                            if (pluginPlus.isEnforceOwnershipEnabled()) {
-                                assertOwnershipMultiDatastream(pm, md, principal);
-                            }
-                            if (pluginPlus.isEnforceLicensingEnabled()) {
-                                assertLicenseMultiDatastream(pm, md);
-                                assertEmptyMultiDatastream(pm, md);
-                            }
-                        }
-                    } else if (entity.isSetProperty(pluginPlus.npCampaignsParty)) {
-                        EntitySet ps = entity.getProperty(pluginPlus.npCampaignsParty);
-                        if (ps == null) {
-                            throw new IllegalArgumentException("Campaigns do not exist.");
-                        }
-                        for (Entity p : ps) {
-                            if (pluginPlus.isEnforceOwnershipEnabled()) {
-                                assertLicenseCampaign(pm, p);
-                            }
-                            if (pluginPlus.isEnforceLicensingEnabled()) {
-                                assertOwnershipCampaign(pm, p, principal);
-                                assertEmptyCampaign(pm, p);
-                            }
-                        }
-                    } else if (entity.isSetProperty(pluginPlus.npGroupsParty)) {
-                        EntitySet gs = entity.getProperty(pluginPlus.npGroupsParty);
-                        if (gs == null) {
-                            throw new IllegalArgumentException("Groups do not exist.");
-                        }
-                        for (Entity g : gs) {
-                            if (pluginPlus.isEnforceOwnershipEnabled()) {
-                                assertLicenseGroup(pm, g);
-                            }
-                            if (pluginPlus.isEnforceLicensingEnabled()) {
-                                assertOwnershipGroup(pm, g, principal);
-                                assertEmptyGroup(pm, g);
-                            }
-                        }
-                    }
+                    assertLinkedEntities(pm, entity, principal);
+
                     //else
                     //throw new ForbiddenException("License must be associated with `Datastream`, `MultiDatastream`, `Campaign` or `Group`.");
 
                     entity.setProperty(pluginPlus.epAuthId, userId);
                     entity.setPrimaryKeyValues(PkValue.of(userId));
 
-                });
+                }));
 
-        tableParties.registerHookPreDelete(-1, (pm, entityId) -> {
+        tableParties.registerHookPreDelete(-1, timedPreDelete(pluginPlus.etParty, (pm, entityId) -> {
 
             if (!pluginPlus.isEnforceOwnershipEnabled())
                 return;
@@ -270,8 +149,95 @@ public class TableHelperParty extends TableHelper {
                 return;
 
             throw new ForbiddenException("Deleting Party is not allowed");
-        });
+        }));
+
+    }
+
+    /**
+     * Drops the cached owners and ownership verdicts of all entities linked to
+     * the Party by the update.
+     */
+    private void invalidateLinkedEntities(Entity entity) {
+        invalidateLinked(entity, pluginPlus.npThingsParty, pluginCoreModel.etThing);
+        invalidateLinked(entity, pluginPlus.npDatastreamsParty, pluginCoreModel.etDatastream);
+        if (pluginMultiDatastream != null)
+            invalidateLinked(entity, pluginPlus.npMultiDatastreamsParty, pluginMultiDatastream.etMultiDatastream);
+        invalidateLinked(entity, pluginPlus.npCampaignsParty, pluginPlus.etCampaign);
+        invalidateLinked(entity, pluginPlus.npGroupsParty, pluginPlus.etGroup);
+    }
+
+    private void invalidateLinked(Entity entity, NavigationPropertyEntitySet np, EntityType entityType) {
+        if (!entity.isSetProperty(np))
+            return;
+
+        final EntitySet linked = entity.getProperty(np);
+        if (linked == null)
+            return;
+
+        final OwnershipCache cache = OwnershipCache.getLocalCache();
+        for (Entity e : linked) {
+            final Object id = e.getPrimaryKeyValues().get(0);
+            if (id != null) {
+                cache.invalidate(entityType, id);
+                invalidateVerdicts(entityType, id);
+            }
+        }
+    }
 
+    /**
+     * Asserts the (Multi)Datastreams, Campaigns or ObservationGroups linked to
+     * the Party. All linked entities are checked with one query per check.
+     */
+    private void assertLinkedEntities(JooqPersistenceManager pm, Entity entity, Principal principal) {
+        if (entity.isSetProperty(pluginPlus.npDatastreamsParty)) {
+            EntitySet ds = entity.getProperty(pluginPlus.npDatastreamsParty);
+            if (ds == null) {
+                throw new IllegalArgumentException("Datastreams do not exist.");
+            }
+            if (pluginPlus.isEnforceOwnershipEnabled()) {
+                assertOwnership(pm, ds, pluginCoreModel.etDatastream, pluginPlus.npPartyDatastream, principal);
+            }
+            if (pluginPlus.isEnforceLicensingEnabled()) {
+                assertLicense(pm, ds, pluginCoreModel.etDatastream, pluginPlus.npLicenseDatastream);
+                assertEmpty(pm, ds, pluginCoreModel.etDatastream, pluginCoreModel.npObservationsDatastream);
+            }
+        } else if (entity.isSetProperty(pluginPlus.npMultiDatastreamsParty)) {
+            EntitySet mds = entity.getProperty(pluginPlus.npMultiDatastreamsParty);
+            if (mds == null) {
+                throw new IllegalArgumentException("MultiDatastreams do not exist.");
+            }
+            if (pluginPlus.isEnforceOwnershipEnabled()) {
+                assertOwnership(pm, mds, pluginMultiDatastream.etMultiDatastream, pluginPlus.npPartyMultiDatastream, principal);
+            }
+            if (pluginPlus.isEnforceLicensingEnabled()) {
+                assertLicense(pm, mds, pluginMultiDatastream.etMultiDatastream, pluginPlus.npLicenseMultiDatastream);
+                assertEmpty(pm, mds, pluginMultiDatastream.etMultiDatastream, pluginMultiDatastream.npObservationsMDs);
+            }
+        } else if (entity.isSetProperty(pluginPlus.npCampaignsParty)) {
+            EntitySet ps = entity.getProperty(pluginPlus.npCampaignsParty);
+            if (ps == null) {
+                throw new IllegalArgumentException("Campaigns do not exist.");
+            }
+            if (pluginPlus.isEnforceOwnershipEnabled()) {
+                assertLicense(pm, ps, pluginPlus.etCampaign, pluginPlus.npLicenseCampaign);
+            }
+            if (pluginPlus.isEnforceLicensingEnabled()) {
+                assertOwnership(pm, ps, pluginPlus.etCampaign, pluginPlus.npPartyCampaign, principal);
+                assertEmpty(pm, ps, pluginPlus.etCampaign, null);
+            }
+        } else if (entity.isSetProperty(pluginPlus.npGroupsParty)) {
+            EntitySet gs = entity.getProperty(pluginPlus.npGroupsParty);
+            if (gs == null) {
+                throw new IllegalArgumentException("Groups do not exist.");
+            }
+            if (pluginPlus.isEnforceOwnershipEnabled()) {
+                assertLicense(pm, gs, pluginPlus.etGroup, pluginPlus.npLicenseGroup);
+            }
+            if (pluginPlus.isEnforceLicensingEnabled()) {
+                assertOwnership(pm, gs, pluginPlus.etGroup, pluginPlus.npPartyGroup, principal);
+                assertEmpty(pm, gs, pluginPlus.etGroup, pluginPlus.npObservationsGroup);
+            }
+        }
     }
 
 }
@@ -21,12 +21,18 @@ import static de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.factories.Ho
 
 import de.fraunhofer.iosb.ilt.frostserver.model.core.Entity;
 import de.fraunhofer.iosb.ilt.frostserver.model.core.EntitySet;
+import de.fraunhofer.iosb.ilt.frostserver.model.core.PkValue;
 import de.fraunhofer.iosb.ilt.frostserver.persistence.pgjooq.JooqPersistenceManager;
 import de.fraunhofer.iosb.ilt.frostserver.service.ServiceRequest;
 import de.fraunhofer.iosb.ilt.frostserver.settings.CoreSettings;
 import de.fraunhofer.iosb.ilt.frostserver.util.exception.ForbiddenException;
 import de.securedimensions.frostserver.plugin.staplus.TableImpRelation;
+import de.securedimensions.frostserver.plugin.staplus.helper.RelationImporter.RelationTuple;
 import java.security.Principal;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 public class TableHelperRelation extends TableHelper {
 
@@ -41,7 +47,7 @@ public class TableHelperRelation extends TableHelper {
     @Override
     public void registerPreHooks() {
 
-        tableRelations.registerHookPreInsert(-1,
+        tableRelations.registerHookPreInsert(-1, timedPreInsert(pluginPlus.etRelation,
                 (phase, pm, entity, insertFields) -> {
 
                     /*
@@ -96,9 +102,9 @@ public class TableHelperRelation extends TableHelper {
 
                     return true;
 
-                });
+                }));
 
-        tableRelations.registerHookPreUpdate(-1,
+        tableRelations.registerHookPreUpdate(-1, timedPreUpdate(pluginPlus.etRelation,
                 (pm, entity, entityId, updateMode) -> {
 
                     if (!pluginPlus.isEnforceOwnershipEnabled()) {
@@ -116,9 +122,9 @@ public class TableHelperRelation extends TableHelper {
                     Entity subject = entity.getProperty(pluginPlus.npSubjectRelation);
                     assertOwnershipObservation(pm, subject, principal);
 
-                });
+                }));
 
-        tableRelations.registerHookPreDelete(-1, (pm, entityId) -> {
+        tableRelations.registerHookPreDelete(-1, timedPreDelete(pluginPlus.etRelation, (pm, entityId) -> {
 
             if (!pluginPlus.isEnforceOwnershipEnabled()) {
                 return;
@@ -129,20 +135,98 @@ public class TableHelperRelation extends TableHelper {
                 return;
             }
 
-            Entity subject = pm.get(pluginPlus.etRelation, entityId).getProperty(pluginPlus.npSubjectRelation);
-            Entity ds = pm.get(pluginCoreModel.etObservation, subject.getPrimaryKeyValues()).getProperty(pluginCoreModel.npDatastreamObservation);
-            Entity party = pm.get(pluginCoreModel.etDatastream, ds.getPrimaryKeyValues()).getProperty(pluginPlus.npPartyDatastream);
+            Entity subject = get(pm, pluginPlus.etRelation, entityId).getProperty(pluginPlus.npSubjectRelation);
+            Entity ds = get(pm, pluginCoreModel.etObservation, subject.getPrimaryKeyValues()).getProperty(pluginCoreModel.npDatastreamObservation);
+            Entity party = get(pm, pluginCoreModel.etDatastream, ds.getPrimaryKeyValues()).getProperty(pluginPlus.npPartyDatastream);
 
             if (party == null) {
                 throw new IllegalArgumentException("The Subject associated to the Relation must have a Datastream associated to a Party.");
             }
 
-            if (!principal.getName().equalsIgnoreCase((String) party.getPrimaryKeyValues().get(0).toString())) {
+            if (!AuthIds.normalise(principal).equalsIgnoreCase((String) party.getPrimaryKeyValues().get(0).toString())) {
                 throw new ForbiddenException("A Relation can only be created to Subject associated to the acting Party.");
             }
 
-        });
+        }));
 
+        if (pluginPlus.getRelationClosure() != null) {
+            // Runs after the checks above, in the same transaction as the change
+            tableRelations.registerHookPreInsert(0, (phase, pm, entity, insertFields) -> {
+                if (phase != PRE_RELATIONS)
+                    pluginPlus.getRelationClosure().addRelation(pm, idOf(entity.getProperty(pluginPlus.npSubjectRelation)), idOf(entity.getProperty(pluginPlus.npObjectRelation)));
+                return true;
+            });
+            tableRelations.registerHookPreUpdate(0, (pm, entity, entityId, updateMode) -> updateClosure(pm, entity, entityId));
+            tableRelations.registerHookPreDelete(0, (pm, entityId) -> pluginPlus.getRelationClosure().removeRelation(pm, entityId.get(0)));
+        }
+
+    }
+
+    /**
+     * Replaces the pairs of the stored Relation by those of the updated one,
+     * if the update changes its Subject or Object.
+     */
+    private void updateClosure(JooqPersistenceManager pm, Entity entity, PkValue entityId) {
+        if (!entity.isSetProperty(pluginPlus.npSubjectRelation) && !entity.isSetProperty(pluginPlus.npObjectRelation))
+            return;
+
+        final Entity stored = get(pm, pluginPlus.etRelation, entityId);
+        final Entity subject = entity.isSetProperty(pluginPlus.npSubjectRelation) ? entity.getProperty(pluginPlus.npSubjectRelation) : stored.getProperty(pluginPlus.npSubjectRelation);
+        final Entity object = entity.isSetProperty(pluginPlus.npObjectRelation) ? entity.getProperty(pluginPlus.npObjectRelation) : stored.getProperty(pluginPlus.npObjectRelation);
+        pluginPlus.getRelationClosure().removeRelation(pm, entityId.get(0));
+        pluginPlus.getRelationClosure().addRelation(pm, idOf(subject), idOf(object));
+    }
+
+    private static Object idOf(Entity entity) {
+        return (entity == null || entity.getPrimaryKeyValues() == null) ? null : entity.getPrimaryKeyValues().get(0);
+    }
+
+    /**
+     * Asserts the ownership for a bulk import of Relations: all distinct
+     * Subjects are checked with one joined query, all distinct Groups with
+     * another.
+     *
+     * @param pm the persistence manager to use.
+     * @param tuples the Relations to create.
+     * @param principal the acting user.
+     */
+    public void assertOwnershipRelations(JooqPersistenceManager pm, Collection<RelationTuple> tuples, Principal principal) {
+        if (!pluginPlus.isEnforceOwnershipEnabled())
+            return;
+
+        if (isAdmin(principal))
+            return;
+
+        assertPrincipal(principal);
+
+        final Set<Object> subjectIds = new LinkedHashSet<>();
+        final Set<Object> groupIds = new LinkedHashSet<>();
+        for (RelationTuple tuple : tuples) {
+            subjectIds.add(tuple.subjectId());
+            groupIds.addAll(tuple.groupIds());
+        }
+
+        /*
+         * Ownership concept: Subject must point to a Datastream owned by the acting user
+         */
+        final String userId = AuthIds.normalise(principal);
+        final Map<String, String> owners = ownershipResolver.resolveObservationOwners(pm, subjectIds);
+        for (Object subjectId : subjectIds) {
+            final String key = subjectId.toString();
+            if (!owners.containsKey(key))
+                throw new IllegalArgumentException("Subject " + key + " does not exist or is not linked to a Datastream");
+            final String partyId = owners.get(key);
+            if (partyId == null)
+                throw new IllegalArgumentException("Datastream not linked to a Party");
+            if (!partyId.equalsIgnoreCase(userId))
+                throw new ForbiddenException("Datastream not linked to acting Party");
+        }
+
+        /*
+         * Ownership concept: All Group entities must be owned by the acting user
+         */
+        if (!groupIds.isEmpty())
+            assertOwnership(pm, pluginPlus.etGroup, groupIds, principal);
     }
 
 }
@@ -46,7 +46,7 @@ public class TableHelperThing extends TableHelper {
     @Override
     public void registerPreHooks() {
 
-        tableThings.registerHookPreInsert(-1,
+        tableThings.registerHookPreInsert(-1, timedPreInsert(pluginCoreModel.etThing,
                 (phase, pm, entity, insertFields) -> {
 
                     /*
@@ -67,37 +67,45 @@ public class TableHelperThing extends TableHelper {
 
                     return true;
 
-                });
+                }));
 
-        tableThings.registerHookPreUpdate(-1,
+        tableThings.registerHookPreUpdate(-1, timedPreUpdate(pluginCoreModel.etThing,
                 (pm, entity, entityId, updateMode) -> {
 
                     if (!pluginPlus.isEnforceOwnershipEnabled())
                         return;
 
+                    // The Party may be changed by this update
+                    if (entity.isSetProperty(pluginPlus.npPartyThing)) {
+                        OwnershipCache.getLocalCache().invalidate(pluginCoreModel.etThing, entityId.get(0));
+                        invalidateVerdicts(pluginCoreModel.etThing, entityId.get(0));
+                    }
+
                     Principal principal = ServiceRequest.getLocalRequest().getUserPrincipal();
 
                     if (isAdmin(principal))
                         return;
 
-                    Entity thing = pm.get(pluginCoreModel.etThing, entityId);
+                    Entity thing = get(pm, pluginCoreModel.etThing, entityId);
                     assertOwnershipThing(pm, thing, principal);
 
-                });
+                }));
 
-        tableThings.registerHookPreDelete(-1, (pm, entityId) -> {
+        tableThings.registerHookPreDelete(-1, timedPreDelete(pluginCoreModel.etThing, (pm, entityId) -> {
 
             if (!pluginPlus.isEnforceOwnershipEnabled())
                 return;
 
+            invalidateVerdicts(pluginCoreModel.etThing, entityId.get(0));
+
             Principal principal = ServiceRequest.getLocalRequest().getUserPrincipal();
 
             if (isAdmin(principal))
                 return;
 
-            Entity thing = pm.get(pluginCoreModel.etThing, entityId);
+            Entity thing = get(pm, pluginCoreModel.etThing, entityId);
             assertOwnershipThing(pm, thing, principal);
-        });
+        }));
 
     }
 
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.securedimensions.frostserver.plugin.staplus.helper.AuditTrail.AuditRecord;
+import de.securedimensions.frostserver.plugin.staplus.helper.AuditTrail.Outcome;
+import de.securedimensions.frostserver.plugin.staplus.helper.AuditTrail.RingBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the ring buffer that hands audit records from the request
+ * threads to the audit writer.
+ */
+class AuditTrailRingBufferTest {
+
+    private static AuditRecord auditRecord(int id) {
+        return new AuditRecord(Instant.EPOCH, "user", "Observation", Integer.toString(id), "preInsert", Outcome.ALLOWED, null);
+    }
+
+    private static List<String> ids(List<AuditRecord> records) {
+        final List<String> ids = new ArrayList<>();
+        for (AuditRecord auditRecord : records)
+            ids.add(auditRecord.entityId());
+        return ids;
+    }
+
+    @Test
+    void tooSmall() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer(1));
+    }
+
+    @Test
+    void capacityRoundedUp() {
+        final RingBuffer buffer = new RingBuffer(3);
+        for (int i = 0; i < 4; i++)
+            assertTrue(buffer.offer(auditRecord(i)));
+        assertFalse(buffer.offer(auditRecord(4)));
+        assertEquals(1, buffer.getDropped());
+
+        final List<AuditRecord> drained = new ArrayList<>();
+        assertEquals(4, buffer.drain(drained, 10));
+        assertEquals(List.of("0", "1", "2", "3"), ids(drained));
+    }
+
+    @Test
+    void drainLimited() {
+        final RingBuffer buffer = new RingBuffer(8);
+        for (int i = 0; i < 5; i++)
+            buffer.offer(auditRecord(i));
+
+        final List<AuditRecord> drained = new ArrayList<>();
+        assertEquals(3, buffer.drain(drained, 3));
+        assertEquals(2, buffer.drain(drained, 3));
+        assertEquals(0, buffer.drain(drained, 3));
+        assertEquals(List.of("0", "1", "2", "3", "4"), ids(drained));
+    }
+
+    @Test
+    void wrapAround() {
+        final RingBuffer buffer = new RingBuffer(4);
+        final List<AuditRecord> drained = new ArrayList<>();
+        int next = 0;
+        assertTrue(buffer.offer(auditRecord(next++)));
+        // With one record left behind, ten rounds of three records fill the
+        // buffer each time and run the sequence around the slots several times
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 3; i++)
+                assertTrue(buffer.offer(auditRecord(next++)));
+            assertEquals(3, buffer.drain(drained, 3));
+        }
+        buffer.drain(drained, Integer.MAX_VALUE);
+
+        assertEquals(0, buffer.getDropped());
+        assertEquals(next, drained.size());
+        for (int i = 0; i < next; i++)
+            assertEquals(Integer.toString(i), drained.get(i).entityId());
+    }
+
+    @Test
+    void fullAfterWrapAround() {
+        final RingBuffer buffer = new RingBuffer(4);
+        final List<AuditRecord> drained = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            buffer.offer(auditRecord(i));
+            buffer.drain(drained, 1);
+        }
+        // The slots are free again, but no more than the capacity fits
+        for (int i = 6; i < 10; i++)
+            assertTrue(buffer.offer(auditRecord(i)));
+        assertFalse(buffer.offer(auditRecord(10)));
+        assertEquals(1, buffer.getDropped());
+
+        buffer.drain(drained, Integer.MAX_VALUE);
+        assertEquals(10, drained.size());
+        assertEquals("9", drained.get(9).entityId());
+    }
+
+    @Test
+    void concurrentProducers() throws InterruptedException {
+        final int threads = 4;
+        final int perThread = 5000;
+        final RingBuffer buffer = new RingBuffer(threads * perThread);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * perThread;
+            final Thread producer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perThread; i++)
+                    buffer.offer(auditRecord(offset + i));
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        start.countDown();
+        for (Thread producer : producers)
+            producer.join();
+
+        final List<AuditRecord> drained = new ArrayList<>();
+        buffer.drain(drained, Integer.MAX_VALUE);
+        assertEquals(0, buffer.getDropped());
+        assertEquals(threads * perThread, drained.size());
+        final Set<String> unique = new HashSet<>(ids(drained));
+        assertEquals(threads * perThread, unique.size());
+    }
+
+}
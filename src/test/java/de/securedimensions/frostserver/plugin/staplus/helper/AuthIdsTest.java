@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.Principal;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for mapping user names to the authId of a Party.
+ */
+class AuthIdsTest {
+
+    private static final String ADMIN_AUTH_ID = "21232f29-7a57-35a7-8389-4a0e4a801fc3";
+
+    @Test
+    void canonicalUuid() {
+        assertTrue(AuthIds.isUuid(ADMIN_AUTH_ID));
+        assertTrue(AuthIds.isUuid(ADMIN_AUTH_ID.toUpperCase()));
+        assertFalse(AuthIds.isUuid(ADMIN_AUTH_ID.replace('-', '_')));
+        assertFalse(AuthIds.isUuid(ADMIN_AUTH_ID.replace('a', 'x')));
+    }
+
+    @Test
+    void nonCanonicalUuid() {
+        // Accepted by UUID.fromString
+        assertTrue(AuthIds.isUuid("1-2-3-4-5"));
+        assertFalse(AuthIds.isUuid("1-2-3-4"));
+        assertFalse(AuthIds.isUuid("x-2-3-4-5"));
+        assertFalse(AuthIds.isUuid(ADMIN_AUTH_ID + "0"));
+        assertFalse(AuthIds.isUuid(""));
+        assertFalse(AuthIds.isUuid("admin"));
+    }
+
+    @Test
+    void normaliseUuid() {
+        assertEquals(ADMIN_AUTH_ID, AuthIds.normalise(ADMIN_AUTH_ID));
+    }
+
+    @Test
+    void normaliseUserName() {
+        assertEquals(ADMIN_AUTH_ID, AuthIds.normalise("admin"));
+        assertEquals(UUID.nameUUIDFromBytes("alice".getBytes()).toString(), AuthIds.normalise("alice"));
+        // Cached result
+        assertEquals(ADMIN_AUTH_ID, AuthIds.normalise("admin"));
+    }
+
+    @Test
+    void normalisePrincipal() {
+        Principal principal = () -> "admin";
+        assertEquals(ADMIN_AUTH_ID, AuthIds.normalise(principal));
+        assertNull(AuthIds.normalise((String) null));
+    }
+
+    @Test
+    void cacheIsBounded() {
+        for (int i = 0; i <= AuthIds.MAX_CACHE_SIZE; i++) {
+            assertEquals(UUID.nameUUIDFromBytes(("user" + i).getBytes()).toString(), AuthIds.normalise("user" + i));
+        }
+        assertEquals(ADMIN_AUTH_ID, AuthIds.normalise("admin"));
+    }
+
+}
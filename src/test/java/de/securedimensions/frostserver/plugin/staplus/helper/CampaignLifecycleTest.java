@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import net.time4j.Moment;
+import net.time4j.SystemClock;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the in-memory schedule of the Campaign end times.
+ */
+class CampaignLifecycleTest {
+
+    private static final long TICK = 10;
+    private static final long TIMEOUT = 5000;
+
+    @Test
+    void tickMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new CampaignLifecycle(null, 0));
+    }
+
+    @Test
+    void scheduleFutureAndPast() {
+        final CampaignLifecycle lifecycle = new CampaignLifecycle(null, TICK);
+        try {
+            lifecycle.schedule(1L, inHours(1));
+            lifecycle.schedule(2L, inHours(-1));
+            lifecycle.schedule(3L, null);
+            assertFalse(lifecycle.isClosed(1L));
+            assertTrue(lifecycle.isClosed(2L));
+            assertFalse(lifecycle.isClosed(3L));
+        } finally {
+            lifecycle.close();
+        }
+    }
+
+    @Test
+    void closedWhenDue() throws InterruptedException {
+        final CampaignLifecycle lifecycle = new CampaignLifecycle(null, TICK);
+        try {
+            lifecycle.schedule(1L, SystemClock.currentMoment().plus(100, TimeUnit.MILLISECONDS));
+            assertFalse(lifecycle.isClosed(1L));
+            assertTrue(awaitClosed(lifecycle, 1L));
+        } finally {
+            lifecycle.close();
+        }
+    }
+
+    @Test
+    void rescheduleReopens() {
+        final CampaignLifecycle lifecycle = new CampaignLifecycle(null, TICK);
+        try {
+            lifecycle.schedule(1L, inHours(-1));
+            assertTrue(lifecycle.isClosed(1L));
+
+            lifecycle.schedule(1L, inHours(1));
+            assertFalse(lifecycle.isClosed(1L));
+
+            lifecycle.schedule(1L, inHours(-1));
+            lifecycle.schedule(1L, null);
+            assertFalse(lifecycle.isClosed(1L));
+
+            lifecycle.schedule(1L, inHours(-1));
+            lifecycle.forget(1L);
+            assertFalse(lifecycle.isClosed(1L));
+        } finally {
+            lifecycle.close();
+        }
+    }
+
+    @Test
+    void rescheduledCampaignNotClosedAtOldEndTime() throws InterruptedException {
+        final CampaignLifecycle lifecycle = new CampaignLifecycle(null, TICK);
+        try {
+            lifecycle.schedule(1L, SystemClock.currentMoment().plus(50, TimeUnit.MILLISECONDS));
+            lifecycle.schedule(1L, inHours(1));
+            lifecycle.schedule(2L, SystemClock.currentMoment().plus(100, TimeUnit.MILLISECONDS));
+            assertTrue(awaitClosed(lifecycle, 2L));
+            assertFalse(lifecycle.isClosed(1L));
+        } finally {
+            lifecycle.close();
+        }
+    }
+
+    @Test
+    void listenerNotifiedOnce() throws InterruptedException {
+        final CampaignLifecycle lifecycle = new CampaignLifecycle(null, TICK);
+        final List<Object> notified = new CopyOnWriteArrayList<>();
+        lifecycle.addListener((campaignId, endTime) -> notified.add(campaignId));
+        lifecycle.addListener((campaignId, endTime) -> {
+            throw new IllegalStateException("A failing listener must not stop the others");
+        });
+        try {
+            lifecycle.schedule(1L, inHours(-1));
+            lifecycle.schedule(1L, inHours(-2));
+            lifecycle.schedule(2L, SystemClock.currentMoment().plus(50, TimeUnit.MILLISECONDS));
+            assertTrue(awaitClosed(lifecycle, 2L));
+            assertEquals(List.of(1L, 2L), notified);
+        } finally {
+            lifecycle.close();
+        }
+    }
+
+    private static Moment inHours(long hours) {
+        return SystemClock.currentMoment().plus(hours, TimeUnit.HOURS);
+    }
+
+    private static boolean awaitClosed(CampaignLifecycle lifecycle, Object campaignId) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!lifecycle.isClosed(campaignId)) {
+            if (System.currentTimeMillis() > deadline)
+                return false;
+            Thread.sleep(TICK);
+        }
+        return true;
+    }
+
+}
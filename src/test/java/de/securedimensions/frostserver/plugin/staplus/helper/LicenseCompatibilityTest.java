@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import static de.securedimensions.frostserver.plugin.staplus.helper.TableHelperLicense.*;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for parsing the License compatibility rules.
+ */
+class LicenseCompatibilityTest {
+
+    @Test
+    void emptyConfigIsCreativeCommons() {
+        assertSame(LicenseCompatibility.creativeCommons(), LicenseCompatibility.parse(null));
+        assertSame(LicenseCompatibility.creativeCommons(), LicenseCompatibility.parse(" "));
+    }
+
+    @Test
+    void creativeCommonsMatrix() {
+        LicenseCompatibility cc = LicenseCompatibility.creativeCommons();
+        assertTrue(cc.isCompatible(CC_PD_ID, CC_BY_NC_ND_ID));
+        assertTrue(cc.isCompatible(CC_BY_ID, CC_BY_SA_ID));
+        assertFalse(cc.isCompatible(CC_BY_SA_ID, CC_BY_NC_ID));
+        assertFalse(cc.isCompatible(CC_BY_ID, null));
+        assertFalse(cc.isCompatible("unknown", CC_BY_ID));
+    }
+
+    @Test
+    void parseRules() {
+        LicenseCompatibility rules = LicenseCompatibility.parse("A:A,B; b:B ;C:");
+        assertTrue(rules.isCompatible("A", "B"));
+        assertTrue(rules.isCompatible("a", " b "));
+        assertFalse(rules.isCompatible("B", "A"));
+        assertFalse(rules.isCompatible("C", "C"));
+        assertFalse(rules.isCompatible("D", "A"));
+    }
+
+    @Test
+    void malformedRulesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> LicenseCompatibility.parse("A"));
+        assertThrows(IllegalArgumentException.class, () -> LicenseCompatibility.parse(":A"));
+        assertThrows(IllegalArgumentException.class, () -> LicenseCompatibility.parse("A:B:C"));
+        assertThrows(IllegalArgumentException.class, () -> LicenseCompatibility.parse("A:B,,C"));
+    }
+
+    @Test
+    void duplicateRulesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> LicenseCompatibility.parse("A:A;A:B"));
+        assertThrows(IllegalArgumentException.class, () -> LicenseCompatibility.parse("cc_by:CC_BY;CC_BY:CC_BY_SA"));
+        assertThrows(IllegalArgumentException.class, () -> LicenseCompatibility.parse("CC_BY:CC_BY; CC_BY :CC_BY_SA"));
+    }
+
+    @Test
+    void tooManyLicensesAreRejected() {
+        StringBuilder config = new StringBuilder("A:");
+        for (int i = 0; i <= LicenseCompatibility.MAX_LICENSES; i++) {
+            config.append(i == 0 ? "" : ",").append("L").append(i);
+        }
+        assertThrows(IllegalArgumentException.class, () -> LicenseCompatibility.parse(config.toString()));
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.fraunhofer.iosb.ilt.frostserver.model.EntityType;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the cross-request cache of ownership verdicts.
+ */
+class OwnershipVerdictCacheTest {
+
+    private static final EntityType DATASTREAM = new EntityType("Datastream", "Datastreams");
+    private static final EntityType THING = new EntityType("Thing", "Things");
+    private static final String ALICE = "alice";
+    private static final String BOB = "bob";
+
+    @Test
+    void hitAndMiss() {
+        final OwnershipVerdictCache cache = new OwnershipVerdictCache(100, 300);
+        assertNull(cache.get(ALICE, DATASTREAM, 1L));
+
+        cache.put(ALICE, DATASTREAM, 1L, true);
+        cache.put(BOB, DATASTREAM, 1L, false);
+        assertEquals(Boolean.TRUE, cache.get(ALICE, DATASTREAM, 1L));
+        assertEquals(Boolean.FALSE, cache.get(BOB, DATASTREAM, 1L));
+        assertNull(cache.get(ALICE, DATASTREAM, 2L));
+        assertNull(cache.get(ALICE, THING, 1L));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    void expired() {
+        // A time to live of zero expires a verdict as soon as it is stored
+        final OwnershipVerdictCache cache = new OwnershipVerdictCache(100, 0);
+        cache.put(ALICE, DATASTREAM, 1L, true);
+        assertNull(cache.get(ALICE, DATASTREAM, 1L));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void overwrite() {
+        final OwnershipVerdictCache cache = new OwnershipVerdictCache(100, 300);
+        cache.put(ALICE, DATASTREAM, 1L, true);
+        cache.put(ALICE, DATASTREAM, 1L, false);
+        assertEquals(Boolean.FALSE, cache.get(ALICE, DATASTREAM, 1L));
+    }
+
+    @Test
+    void invalidate() {
+        final OwnershipVerdictCache cache = new OwnershipVerdictCache(100, 300);
+        cache.put(ALICE, DATASTREAM, 1L, true);
+        cache.put(BOB, DATASTREAM, 1L, false);
+        cache.put(ALICE, DATASTREAM, 2L, true);
+        cache.put(ALICE, THING, 1L, true);
+
+        cache.invalidate(DATASTREAM, 1L);
+        assertNull(cache.get(ALICE, DATASTREAM, 1L));
+        assertNull(cache.get(BOB, DATASTREAM, 1L));
+        assertEquals(Boolean.TRUE, cache.get(ALICE, DATASTREAM, 2L));
+        assertEquals(Boolean.TRUE, cache.get(ALICE, THING, 1L));
+    }
+
+    @Test
+    void clear() {
+        final OwnershipVerdictCache cache = new OwnershipVerdictCache(100, 300);
+        cache.put(ALICE, DATASTREAM, 1L, true);
+        cache.put(BOB, THING, 2L, false);
+
+        cache.clear();
+        assertNull(cache.get(ALICE, DATASTREAM, 1L));
+        assertNull(cache.get(BOB, THING, 2L));
+    }
+
+    @Test
+    void evictionBoundsSize() {
+        final int maxSize = 10;
+        final OwnershipVerdictCache cache = new OwnershipVerdictCache(maxSize, 300);
+        for (long id = 0; id < 25; id++)
+            cache.put(ALICE, DATASTREAM, id, true);
+
+        int cached = 0;
+        for (long id = 0; id < 25; id++) {
+            if (cache.get(ALICE, DATASTREAM, id) != null)
+                cached++;
+        }
+        assertTrue(cached <= maxSize, "cached " + cached + " entities");
+        // The entity stored last is never evicted by its own put
+        assertEquals(Boolean.TRUE, cache.get(ALICE, DATASTREAM, 24L));
+    }
+
+    @Test
+    void evictionCountsEntities() {
+        // Verdicts of several principals for one entity take a single entry
+        final OwnershipVerdictCache cache = new OwnershipVerdictCache(2, 300);
+        cache.put(ALICE, DATASTREAM, 1L, true);
+        cache.put(BOB, DATASTREAM, 1L, false);
+        cache.put("carol", DATASTREAM, 1L, false);
+        assertEquals(Boolean.TRUE, cache.get(ALICE, DATASTREAM, 1L));
+        assertEquals(Boolean.FALSE, cache.get(BOB, DATASTREAM, 1L));
+        assertEquals(Boolean.FALSE, cache.get("carol", DATASTREAM, 1L));
+    }
+
+}
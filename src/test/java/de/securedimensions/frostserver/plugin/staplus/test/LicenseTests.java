@@ -38,6 +38,7 @@ import org.apache.http.HttpEntity;
 import org.apache.http.ParseException;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
@@ -79,6 +80,14 @@ public abstract class LicenseTests extends AbstractStaPlusTestClass {
     private static final String USER_IS_NOT_ABLE_TO_CREATE_MANDATORY_LICENSE = "A user is not able to create any mandatory Licenses re-using the same identifier (@iot.id).";
     private static final String USER_IS_ABLE_TO_CREATE_OWN_LICENSE_CC_BY = "A user is able to create it's own CC-BY License.";
 
+    private static final String USER_IS_NOT_ABLE_TO_RELICENSE_NON_EMPTY_CAMPAIGN = "A user is not able to change the License of a Campaign that contains Datastreams.";
+
+    private static final String USER_IS_ABLE_TO_ADD_COMPATIBLE_OBSERVATIONS_BY_ID = "A user is able to add Observations with a compatible License to an ObservationGroup by id.";
+    private static final String USER_IS_NOT_ABLE_TO_ADD_INCOMPATIBLE_OBSERVATIONS_BY_ID = "A user is not able to add Observations with an incompatible License to an ObservationGroup by id.";
+    private static final String USER_IS_NOT_ABLE_TO_ADD_UNKNOWN_OBSERVATIONS_BY_ID = "A user is not able to add unknown Observations to an ObservationGroup by id.";
+
+    private static final String ATTRIBUTED_FORMAT_LISTS_LICENSE = "The attributed result format lists the License of the Datastream.";
+
     private static final String USER_IS_NOT_ABLE_TO_CREATE_OWN_LICENSE_CC_PD = "A user is not able to create it's own CC-PD License re-using the same definition.";
     private static String CC_PD_WITH_ID = "{\n" +
             "        \"id\": \"CC_PD\",\n" +
@@ -193,6 +202,18 @@ public abstract class LicenseTests extends AbstractStaPlusTestClass {
                 + "}", license);
     }
 
+    private static String CAMPAIGN_WITH_DATASTREAM(String license) {
+        return String.format("{\n"
+                + "	\"name\": \"Campaign\",\n"
+                + "	\"description\": \"with Datastream\",\n"
+                + "	\"creationTime\": \"2021-12-12T12:12:12Z\",\n"
+                + "	\"termsOfUse\": \"none\",\n"
+                + "	\"Party\": " + PARTY_ALICE + ",\n"
+                + "	\"License\": %s,\n"
+                + "	\"Datastreams\": [%s]\n"
+                + "}", license, DATASTREAM(license));
+    }
+
     private static String DATASTREAM(int id, String license) {
         return String.format("{\n"
                 + "    \"@iot.id\": %d,\n"
@@ -551,6 +572,127 @@ public abstract class LicenseTests extends AbstractStaPlusTestClass {
         }
     }
 
+    @Test
+    public void testRelicenseNonEmptyCampaign() throws IOException {
+        String license = "{\"@iot.id\": \"" + CC_BY_ID + "\"}";
+        HttpPost httpPost = new HttpPost(serverSettings.getServiceUrl(version) + "/Campaigns");
+        httpPost.setEntity(new StringEntity(CAMPAIGN_WITH_DATASTREAM(license), ContentType.APPLICATION_JSON));
+        setAuth(httpPost, ALICE, "");
+
+        String campaignUrl;
+        try (CloseableHttpResponse response = serviceSTAplus.execute(httpPost)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_201) {
+                fail(response, "Failed to create Campaign with Datastream.");
+            }
+            campaignUrl = response.getFirstHeader("Location").getValue();
+        }
+
+        // The Campaign contains a Datastream, so its License must not change
+        HttpPatch httpPatch = new HttpPatch(campaignUrl);
+        httpPatch.setEntity(new StringEntity("{\"License\": {\"@iot.id\": \"" + CC_BY_NC_ID + "\"}}", ContentType.APPLICATION_JSON));
+        setAuth(httpPatch, ALICE, "");
+
+        try (CloseableHttpResponse response = serviceSTAplus.execute(httpPatch)) {
+            if (response.getStatusLine().getStatusCode() == HTTP_CODE_400) {
+                Assertions.assertTrue(true);
+            } else {
+                fail(response, USER_IS_NOT_ABLE_TO_RELICENSE_NON_EMPTY_CAMPAIGN);
+            }
+        }
+    }
+
+    @Test
+    public void testAddObservationsById() throws IOException {
+        HttpPost httpPost = new HttpPost(serverSettings.getServiceUrl(version) + "/ObservationGroups");
+        httpPost.setEntity(new StringEntity(GROUP("{\"@iot.id\": \"" + CC_BY_ID + "\"}"), ContentType.APPLICATION_JSON));
+        setAuth(httpPost, ALICE, "");
+
+        String groupUrl;
+        try (CloseableHttpResponse response = serviceSTAplus.execute(httpPost)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_201) {
+                fail(response, "Failed to create ObservationGroup.");
+            }
+            groupUrl = response.getFirstHeader("Location").getValue();
+        }
+
+        String compatible = createObservationId(OBSERVATION_DATASTREAM("{\"@iot.id\": \"" + CC_BY_ID + "\"}"));
+        String incompatible = createObservationId(OBSERVATION_DATASTREAM("{\"@iot.id\": \"" + CC_BY_ND_ID + "\"}"));
+
+        Assertions.assertEquals(HTTP_CODE_400, addObservations(groupUrl, incompatible), USER_IS_NOT_ABLE_TO_ADD_INCOMPATIBLE_OBSERVATIONS_BY_ID);
+        Assertions.assertEquals(HTTP_CODE_400, addObservations(groupUrl, compatible, Long.toString(Long.MAX_VALUE)), USER_IS_NOT_ABLE_TO_ADD_UNKNOWN_OBSERVATIONS_BY_ID);
+        Assertions.assertEquals(HTTP_CODE_200, addObservations(groupUrl, compatible), USER_IS_ABLE_TO_ADD_COMPATIBLE_OBSERVATIONS_BY_ID);
+    }
+
+    private String createObservationId(String request) throws IOException {
+        HttpPost httpPost = new HttpPost(serverSettings.getServiceUrl(version) + "/Observations");
+        httpPost.setEntity(new StringEntity(request, ContentType.APPLICATION_JSON));
+        setAuth(httpPost, ALICE, "");
+
+        try (CloseableHttpResponse response = serviceSTAplus.execute(httpPost)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_201) {
+                fail(response, "Failed to create Observation.");
+            }
+            String location = response.getFirstHeader("Location").getValue();
+            return location.substring(location.lastIndexOf('(') + 1, location.lastIndexOf(')'));
+        }
+    }
+
+    private int addObservations(String groupUrl, String... observationIds) throws IOException {
+        StringBuilder request = new StringBuilder("{\"Observations\": [");
+        for (int i = 0; i < observationIds.length; i++) {
+            if (i > 0)
+                request.append(", ");
+            request.append("{\"@iot.id\": ").append(observationIds[i]).append("}");
+        }
+        request.append("]}");
+
+        HttpPatch httpPatch = new HttpPatch(groupUrl);
+        httpPatch.setEntity(new StringEntity(request.toString(), ContentType.APPLICATION_JSON));
+        setAuth(httpPatch, ALICE, "");
+
+        try (CloseableHttpResponse response = serviceSTAplus.execute(httpPatch)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_200) {
+                LOGGER.info(org.apache.http.util.EntityUtils.toString(response.getEntity()));
+            }
+            return response.getStatusLine().getStatusCode();
+        }
+    }
+
+    @Test
+    public void testAttributedResultFormat() throws IOException {
+        String license = "{\"@iot.id\": \"" + CC_BY_ID + "\"}";
+        HttpPost httpPost = new HttpPost(serverSettings.getServiceUrl(version) + "/Observations");
+        httpPost.setEntity(new StringEntity(OBSERVATION_DATASTREAM(license), ContentType.APPLICATION_JSON));
+        setAuth(httpPost, ALICE, "");
+
+        String observationUrl;
+        try (CloseableHttpResponse response = serviceSTAplus.execute(httpPost)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_201) {
+                fail(response, "Failed to create Observation.");
+            }
+            observationUrl = response.getFirstHeader("Location").getValue();
+        }
+
+        // A single Observation and a collection of Observations
+        assertAttribution(observationUrl + "?$resultFormat=attributed", CC_BY_ID);
+        assertAttribution(observationUrl + "/Datastream/Observations?$resultFormat=attributed", CC_BY_ID);
+    }
+
+    private void assertAttribution(String url, String licenseId) throws IOException {
+        HttpGet httpGet = new HttpGet(url);
+        setAuth(httpGet, ALICE, "");
+
+        try (CloseableHttpResponse response = serviceSTAplus.execute(httpGet)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_200) {
+                fail(response, ATTRIBUTED_FORMAT_LISTS_LICENSE);
+            }
+            JsonNode attribution = new ObjectMapper().readTree(response.getEntity().getContent()).get("@staplus.attribution");
+            Assertions.assertNotNull(attribution, ATTRIBUTED_FORMAT_LISTS_LICENSE);
+            Assertions.assertEquals(1, attribution.size(), ATTRIBUTED_FORMAT_LISTS_LICENSE);
+            Assertions.assertEquals(licenseId, attribution.get(0).get("@iot.id").textValue(), ATTRIBUTED_FORMAT_LISTS_LICENSE);
+        }
+    }
+
     private int testIdId(String datastreamLicenseId, String groupLicenseId) throws IOException {
         String datastreamLicense = "{\"@iot.id\": \"" + datastreamLicenseId + "\"}";
         String groupLicense = "{\"@iot.id\": \"" + groupLicenseId + "\"}";
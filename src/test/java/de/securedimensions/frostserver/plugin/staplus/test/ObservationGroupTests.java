@@ -94,6 +94,8 @@ public abstract class ObservationGroupTests extends AbstractStaPlusTestClass {
     private static final String ANON_SHOULD_NOT_BE_ABLE_TO_UPDATE = "anon should NOT be able to update.";
     private static final String ANON_SHOULD_NOT_BE_ABLE_TO_DELETE = "anon should NOT be able to delete.";
     private static final String ANY_USER_SHOULD_BE_ABLE_TO_ADD_OBSERVATION = "Any user should be able to add Observation.";
+    private static final String SAME_USER_SHOULD_BE_ABLE_TO_ADD_OBSERVATIONS_BY_ID = "Same user should be able to add existing Observations by id.";
+    private static final String UNKNOWN_OBSERVATION_SHOULD_NOT_BE_ADDED = "Unknown Observations should NOT be added by id.";
 
     private static String GROUP = "{\n"
             + "	\"name\": \"ObservationGroup\",\n"
@@ -622,6 +624,52 @@ public abstract class ObservationGroupTests extends AbstractStaPlusTestClass {
         }
     }
 
+    /*
+     * SAME_USER_SHOULD_BE_ABLE_TO_ADD_OBSERVATIONS_BY_ID Success: 200 Fail: n/a
+     */
+    @Test
+    public void test15SameUserAddObservationsById() throws ClientProtocolException, IOException {
+        LOGGER.info("  test15SameUserAddObservationsById");
+        String groupUrl = createObservationGroupParty(LJS);
+        String first = createObservation(LJS);
+        String second = createObservation(LJS);
+
+        String request = "{\"Observations\": [{\"@iot.id\": " + first + "}, {\"@iot.id\": " + second + "}]}";
+        HttpPatch httpPatch = new HttpPatch(groupUrl);
+        httpPatch.setEntity(new StringEntity(request, ContentType.APPLICATION_JSON));
+        setAuth(httpPatch, LJS, "");
+
+        try (CloseableHttpResponse response = serviceSTAplus.execute(httpPatch)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_200) {
+                fail(response, SAME_USER_SHOULD_BE_ABLE_TO_ADD_OBSERVATIONS_BY_ID);
+            }
+        }
+        Assertions.assertEquals(2, countObservations(groupUrl), SAME_USER_SHOULD_BE_ABLE_TO_ADD_OBSERVATIONS_BY_ID);
+    }
+
+    /*
+     * UNKNOWN_OBSERVATION_SHOULD_NOT_BE_ADDED Success: 400 Fail: n/a
+     */
+    @Test
+    public void test16SameUserAddUnknownObservationById() throws ClientProtocolException, IOException {
+        LOGGER.info("  test16SameUserAddUnknownObservationById");
+        String groupUrl = createObservationGroupParty(LJS);
+        String known = createObservation(LJS);
+
+        String request = "{\"Observations\": [{\"@iot.id\": " + known + "}, {\"@iot.id\": " + Long.MAX_VALUE + "}]}";
+        HttpPatch httpPatch = new HttpPatch(groupUrl);
+        httpPatch.setEntity(new StringEntity(request, ContentType.APPLICATION_JSON));
+        setAuth(httpPatch, LJS, "");
+
+        try (CloseableHttpResponse response = serviceSTAplus.execute(httpPatch)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_400) {
+                fail(response, UNKNOWN_OBSERVATION_SHOULD_NOT_BE_ADDED);
+            }
+        }
+        // The known Observation is not added either
+        Assertions.assertEquals(0, countObservations(groupUrl), UNKNOWN_OBSERVATION_SHOULD_NOT_BE_ADDED);
+    }
+
     /*
      * DELETE Tests
      */
@@ -711,6 +759,26 @@ public abstract class ObservationGroupTests extends AbstractStaPlusTestClass {
         Assertions.fail(assertion, new Throwable(msg));
     }
 
+    private String createObservation(String userId) throws IOException {
+        HttpPost httpPost = new HttpPost(serverSettings.getServiceUrl(version) + "/Observations");
+        httpPost.setEntity(new StringEntity(OBSERVATION_LJS, ContentType.APPLICATION_JSON));
+        setAuth(httpPost, userId, "");
+
+        try (CloseableHttpResponse response = serviceSTAplus.execute(httpPost)) {
+            String location = response.getFirstHeader("Location").getValue();
+            return location.substring(location.lastIndexOf('(') + 1, location.lastIndexOf(')'));
+        }
+    }
+
+    private long countObservations(String groupUrl) throws IOException {
+        HttpGet httpGet = new HttpGet(groupUrl + "/Observations?$count=true&$top=0");
+        setAuth(httpGet, ADMIN, "");
+
+        try (CloseableHttpResponse response = serviceSTAplus.execute(httpGet)) {
+            return new ObjectMapper().readTree(response.getEntity().getContent()).get("@iot.count").asLong();
+        }
+    }
+
     private String createParty(String userId) throws IOException {
         String request = String.format(PARTY, userId);
         HttpPost httpPost = new HttpPost(serverSettings.getServiceUrl(version) + "/Parties");
@@ -0,0 +1,527 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.test;
+
+import static de.fraunhofer.iosb.ilt.frostserver.property.SpecialNames.AT_IOT_ID;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fraunhofer.iosb.ilt.frostclient.SensorThingsService;
+import de.fraunhofer.iosb.ilt.frostclient.exception.ServiceFailureException;
+import de.fraunhofer.iosb.ilt.frostclient.models.SensorThingsPlus;
+import de.fraunhofer.iosb.ilt.frostclient.models.SensorThingsV11Sensing;
+import de.fraunhofer.iosb.ilt.statests.ServerVersion;
+import de.securedimensions.frostserver.plugin.staplus.PluginPLUS;
+import de.securedimensions.frostserver.plugin.staplus.test.auth.PrincipalAuthProvider;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.http.HttpEntity;
+import org.apache.http.ParseException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests for the service endpoints of the plugin. The Observations 1 to 4 are
+ * in a licensed, public Datastream of LJS, the Observation 11 in a Datastream
+ * of LJS without License, which only LJS can read.
+ * <p>
+ * The Relations are {@code 1 -> 2 -> 3 -> 4}, {@code 1 -> 3} and the private
+ * {@code 11 -> 1}. The BulkRelations tests add {@code 2 -> 4} and a Relation
+ * from 3 to an external Object, the Export tests add ObservationGroups and a
+ * Campaign. The Relation Closure tests delete {@code 1 -> 3} and add the
+ * Observations 21 to 23.
+ */
+@TestMethodOrder(MethodOrderer.MethodName.class)
+public abstract class PluginServiceTests extends AbstractStaPlusTestClass {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(PluginServiceTests.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int HTTP_CODE_200 = 200;
+    private static final int HTTP_CODE_201 = 201;
+    private static final int HTTP_CODE_400 = 400;
+    private static final int HTTP_CODE_403 = 403;
+    private static final int HTTP_CODE_404 = 404;
+    private static final String DATASTREAM = "{\n"
+            + "    \"unitOfMeasurement\": {\"name\": \"n/a\", \"symbol\": \"\", \"definition\": \"https://www.merriam-webster.com/dictionary/picture\"},\n"
+            + "    \"name\": \"photo datastream\",\n"
+            + "    \"description\": \"this datastream is about pictures\",\n"
+            + "    \"observationType\": \"http://www.opengis.net/def/observationType/OGC-OM/2.0/OM_Measurement\",\n"
+            + "    \"ObservedProperty\": {\"name\": \"Picture\", \"definition\": \"https://www.merriam-webster.com/dictionary/picture\", \"description\": \"The image taken by the camera (the sensor)\"},\n"
+            + "    \"Sensor\": {\"name\": \"Pi NoIR\", \"description\": \"Raspberry Pi Infrared Camera Module\", \"encodingType\": \"application/pdf\", \"metadata\": \"https://cdn-reichelt.de/documents/datenblatt/A300/RASP_CAN_2.pdf\"},\n"
+            + "    %s"
+            + "    \"Party\": {\"displayName\": \"Long John Silver Citizen Scientist\", \"role\": \"individual\", \"authId\": \"%s\"},\n"
+            + "    \"Thing\": {\"name\": \"Raspberry Pi 4 B\", \"description\": \"Raspberry Pi 4 Model B\", \"Party\": {\"displayName\": \"Long John Silver Citizen Scientist\", \"role\": \"individual\", \"authId\": \"%s\"}}\n"
+            + "}";
+    private static final String LICENSE = "\"License\": {\"@iot.id\": \"CC_BY\"},\n";
+    private static final String RELATION = "{\"role\": \"derivedFrom\", \"Subject\": {\"@iot.id\": %d}, \"Object\": {\"@iot.id\": %d}}";
+    private static final String PARTY = "\"Party\": {\"displayName\": \"Long John Silver Citizen Scientist\", \"role\": \"individual\", \"authId\": \"%s\"}";
+    private static final String GROUP = "{\"name\": \"Export\", \"description\": \"export test\", \"creationTime\": \"2021-12-12T12:12:12Z\", %s" + PARTY + ", \"Observations\": [%s]}";
+    private static final String CAMPAIGN = "{\"name\": \"Export\", \"description\": \"export test\", \"creationTime\": \"2021-12-12T12:12:12Z\", \"termsOfUse\": \"none\", %s" + PARTY + ", \"Datastreams\": [{\"@iot.id\": %s}]}";
+    private static final Map<String, String> SERVER_PROPERTIES = new LinkedHashMap<>();
+
+    static {
+        SERVER_PROPERTIES.put("plugins.plugins", PluginPLUS.class.getName());
+        SERVER_PROPERTIES.put("plugins.staplus.enable", "true");
+        SERVER_PROPERTIES.put("plugins.staplus.enable.enforceOwnership", "true");
+        SERVER_PROPERTIES.put("plugins.staplus.enable.enforceLicensing", "false");
+        SERVER_PROPERTIES.put("plugins.staplus.enable.enforceReadOwnership", "true");
+        SERVER_PROPERTIES.put("plugins.staplus.enable.relationGraph", "true");
+        SERVER_PROPERTIES.put("plugins.staplus.enable.bulkRelations", "true");
+        SERVER_PROPERTIES.put("plugins.staplus.enable.export", "true");
+        SERVER_PROPERTIES.put("plugins.staplus.enable.relationsClosure", "true");
+        SERVER_PROPERTIES.put("plugins.staplus.idType.license", "String");
+        SERVER_PROPERTIES.put("auth.provider", PrincipalAuthProvider.class.getName());
+        SERVER_PROPERTIES.put("auth.allowAnonymousRead", "true");
+        SERVER_PROPERTIES.put("persistence.idGenerationMode", "ServerAndClientGenerated");
+        SERVER_PROPERTIES.put("plugins.coreModel.idType", "LONG");
+        SERVER_PROPERTIES.put("plugins.multiDatastream.enable", "true");
+    }
+
+    public PluginServiceTests(ServerVersion version) {
+        super(version, SERVER_PROPERTIES);
+    }
+
+    @AfterAll
+    public static void tearDown() throws ServiceFailureException {
+        LOGGER.info("Tearing down.");
+        cleanup();
+    }
+
+    @Override
+    protected void setUpVersion() {
+        LOGGER.info("Setting up for version {}.", version.urlPart);
+        try {
+            sMdl = new SensorThingsV11Sensing();
+            pMdl = new SensorThingsPlus();
+            serviceSTAplus = new SensorThingsService(sMdl, pMdl).setBaseUrl(new URL(serverSettings.getServiceUrl(version))).init();
+
+            final String publicDatastream = createDatastream(LICENSE);
+            for (int id = 1; id <= 4; id++) {
+                createObservation(publicDatastream, id);
+            }
+            final String privateDatastream = createDatastream("");
+            createObservation(privateDatastream, 11);
+
+            createRelation(1, 2);
+            createRelation(2, 3);
+            createRelation(3, 4);
+            createRelation(1, 3);
+            createRelation(11, 1);
+        } catch (MalformedURLException ex) {
+            LOGGER.error("Failed to create URL", ex);
+        } catch (IOException e) {
+            LOGGER.error("Failed to create Entity", e);
+        }
+    }
+
+    @Override
+    protected void tearDownVersion() {
+        try {
+            cleanup();
+        } catch (ServiceFailureException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private String createDatastream(String license) throws IOException {
+        try (CloseableHttpResponse response = post(serverSettings.getServiceUrl(version) + "/Datastreams", String.format(DATASTREAM, license, LJS, LJS), LJS)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_201) {
+                LOGGER.error("Failed to create Datastream");
+                return null;
+            }
+            return response.getFirstHeader("Location").getValue();
+        }
+    }
+
+    private void createObservation(String datastreamUrl, int id) throws IOException {
+        try (CloseableHttpResponse response = post(datastreamUrl + "/Observations", String.format(DatastreamTests.OBSERVATION_ID, id), LJS)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_201) {
+                LOGGER.error("Failed to create Observation no. {}", id);
+            }
+        }
+    }
+
+    private void createRelation(int subjectId, int objectId) throws IOException {
+        try (CloseableHttpResponse response = post(serverSettings.getServiceUrl(version) + "/Relations", String.format(RELATION, subjectId, objectId), LJS)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_201) {
+                LOGGER.error("Failed to create Relation {} -> {}", subjectId, objectId);
+            }
+        }
+    }
+
+    private CloseableHttpResponse post(String url, String request, String userId) throws IOException {
+        HttpPost httpPost = new HttpPost(url);
+        HttpEntity stringEntity = new StringEntity(request, ContentType.APPLICATION_JSON);
+        httpPost.setEntity(stringEntity);
+
+        if (userId != null) {
+            setAuth(httpPost, userId, "");
+        }
+
+        return serviceSTAplus.execute(httpPost);
+    }
+
+    private CloseableHttpResponse get(String path, String userId) throws IOException {
+        HttpGet httpGet = new HttpGet(serverSettings.getServiceUrl(version) + path);
+
+        if (userId != null) {
+            setAuth(httpGet, userId, "");
+        }
+
+        return serviceSTAplus.execute(httpGet);
+    }
+
+    private JsonNode getJson(String path, String userId, String assertion) throws IOException {
+        try (CloseableHttpResponse response = get(path, userId)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_200) {
+                fail(response, assertion);
+            }
+            return MAPPER.readTree(org.apache.http.util.EntityUtils.toString(response.getEntity()));
+        }
+    }
+
+    /**
+     * Returns the depth of each Relation of a RelationGraph response, keyed by
+     * "Subject->Object".
+     */
+    private static Map<String, Integer> edges(JsonNode graph) {
+        final Map<String, Integer> edges = new HashMap<>();
+        for (JsonNode edge : graph.get("value")) {
+            edges.put(edge.get("Subject").asText() + "->" + edge.get("Object").asText(), edge.get("depth").asInt());
+        }
+        return edges;
+    }
+
+    /*
+     * RelationGraph Tests
+     */
+    @Test
+    public void test10RelationGraphObjects() throws IOException {
+        LOGGER.info("  test10RelationGraphObjects");
+        final String assertion = "RelationGraph should return all Relations reachable from the Observation, each once with its smallest depth.";
+        final Map<String, Integer> edges = edges(getJson("/RelationGraph?observation=1", LJS, assertion));
+        Assertions.assertEquals(Map.of("1->2", 1, "1->3", 1, "2->3", 2, "3->4", 2), edges, assertion);
+    }
+
+    @Test
+    public void test10RelationGraphDepth() throws IOException {
+        LOGGER.info("  test10RelationGraphDepth");
+        final String assertion = "RelationGraph should not follow more hops than requested.";
+        final Map<String, Integer> edges = edges(getJson("/RelationGraph?observation=1&depth=1", LJS, assertion));
+        Assertions.assertEquals(Map.of("1->2", 1, "1->3", 1), edges, assertion);
+    }
+
+    @Test
+    public void test10RelationGraphSubjects() throws IOException {
+        LOGGER.info("  test10RelationGraphSubjects");
+        final String assertion = "RelationGraph should follow the Relations from Object to Subject.";
+        final Map<String, Integer> edges = edges(getJson("/RelationGraph?observation=4&direction=Subjects", LJS, assertion));
+        Assertions.assertEquals(Map.of("3->4", 1, "2->3", 2, "1->3", 2, "1->2", 3, "11->1", 3), edges, assertion);
+    }
+
+    @Test
+    public void test10RelationGraphNoObservation() throws IOException {
+        LOGGER.info("  test10RelationGraphNoObservation");
+        final String assertion = "RelationGraph without an Observation should fail.";
+        try (CloseableHttpResponse response = get("/RelationGraph", LJS)) {
+            Assertions.assertEquals(HTTP_CODE_400, response.getStatusLine().getStatusCode(), assertion);
+        }
+    }
+
+    @Test
+    public void test11RelationGraphReadOwnership() throws IOException {
+        LOGGER.info("  test11RelationGraphReadOwnership");
+        final String assertion = "RelationGraph should not return Relations the acting user cannot read.";
+        final Map<String, Integer> expected = Map.of("3->4", 1, "2->3", 2, "1->3", 2, "1->2", 3);
+        Assertions.assertEquals(expected, edges(getJson("/RelationGraph?observation=4&direction=Subjects", ALICE, assertion)), assertion);
+        Assertions.assertEquals(expected, edges(getJson("/RelationGraph?observation=4&direction=Subjects", null, assertion)), assertion);
+        Assertions.assertTrue(edges(getJson("/RelationGraph?observation=11", ALICE, assertion)).isEmpty(), assertion);
+        Assertions.assertEquals(Map.of("11->1", 1), edges(getJson("/RelationGraph?observation=1&direction=Subjects", ADMIN, assertion)), assertion);
+    }
+
+    /*
+     * BulkRelations Tests
+     */
+    @Test
+    public void test20BulkRelations() throws IOException {
+        LOGGER.info("  test20BulkRelations");
+        final String assertion = "BulkRelations should create the Relations and return their ids in the given order.";
+        final String request = "["
+                + "{\"Subject\": 2, \"Object\": {\"@iot.id\": 4}, \"role\": \"bulk\"},"
+                + "{\"Subject\": {\"@iot.id\": 3}, \"externalObject\": \"https://example.org/bulk\", \"role\": \"bulk\"}"
+                + "]";
+        final int before = countRelations(assertion);
+        final JsonNode ids;
+        try (CloseableHttpResponse response = post(serverSettings.getServiceUrl(version) + "/BulkRelations", request, LJS)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_201) {
+                fail(response, assertion);
+            }
+            ids = MAPPER.readTree(org.apache.http.util.EntityUtils.toString(response.getEntity())).get("value");
+        }
+        Assertions.assertEquals(2, ids.size(), assertion);
+        Assertions.assertEquals(before + 2, countRelations(assertion), assertion);
+
+        final JsonNode first = getJson("/Relations(" + ids.get(0).asText() + ")?$expand=Subject,Object", LJS, assertion);
+        Assertions.assertEquals(2, first.get("Subject").get(AT_IOT_ID).asInt(), assertion);
+        Assertions.assertEquals(4, first.get("Object").get(AT_IOT_ID).asInt(), assertion);
+        final JsonNode second = getJson("/Relations(" + ids.get(1).asText() + ")", LJS, assertion);
+        Assertions.assertEquals("https://example.org/bulk", second.get("externalObject").asText(), assertion);
+    }
+
+    @Test
+    public void test20BulkRelationsForbidden() throws IOException {
+        LOGGER.info("  test20BulkRelationsForbidden");
+        final String assertion = "BulkRelations should fail as a whole if one Subject is not owned by the acting user.";
+        final String request = "[{\"Subject\": 1, \"Object\": 4}, {\"Subject\": 2, \"Object\": 4}]";
+        final int before = countRelations(assertion);
+        try (CloseableHttpResponse response = post(serverSettings.getServiceUrl(version) + "/BulkRelations", request, ALICE)) {
+            Assertions.assertEquals(HTTP_CODE_403, response.getStatusLine().getStatusCode(), assertion);
+        }
+        Assertions.assertEquals(before, countRelations(assertion), assertion);
+    }
+
+    @Test
+    public void test20BulkRelationsInvalid() throws IOException {
+        LOGGER.info("  test20BulkRelationsInvalid");
+        final String assertion = "BulkRelations should reject invalid content and create no Relation.";
+        final int before = countRelations(assertion);
+        final String[] requests = {
+            "{\"Subject\": 1, \"Object\": 4}",
+            "[{\"Object\": 4}]",
+            "[{\"Subject\": 1}]",
+            "[{\"Subject\": 1, \"Object\": 4, \"externalObject\": \"https://example.org/bulk\"}]",
+            "[{\"Subject\": \"one\", \"Object\": 4}]",
+            "[{\"Subject\": 1, \"Object\": 4}, {\"Subject\": 1, \"Object\": 999999}]"
+        };
+        for (String request : requests) {
+            try (CloseableHttpResponse response = post(serverSettings.getServiceUrl(version) + "/BulkRelations", request, LJS)) {
+                Assertions.assertEquals(HTTP_CODE_400, response.getStatusLine().getStatusCode(), assertion + " " + request);
+            }
+        }
+        Assertions.assertEquals(before, countRelations(assertion), assertion);
+    }
+
+    private int countRelations(String assertion) throws IOException {
+        return getJson("/Relations?$count=true&$top=0", ADMIN, assertion).get("@iot.count").asInt();
+    }
+
+    /*
+     * Export Tests
+     */
+    @Test
+    public void test30ExportGroup() throws IOException {
+        LOGGER.info("  test30ExportGroup");
+        final String assertion = "Export should return the ObservationGroup followed by its Observations with the License of their Datastream.";
+        final String groupId = create("/ObservationGroups", String.format(GROUP, LICENSE, LJS, "{\"@iot.id\": 2}, {\"@iot.id\": 1}"), LJS, assertion);
+
+        final List<JsonNode> records = export("/Export?group=" + groupId, ALICE, assertion);
+        Assertions.assertEquals(3, records.size(), assertion);
+        assertRecord(records.get(0), "ObservationGroup", groupId, assertion);
+        assertRecord(records.get(1), "Observation", "1", assertion);
+        assertRecord(records.get(2), "Observation", "2", assertion);
+        Assertions.assertEquals("CC_BY", records.get(1).get("License").asText(), assertion);
+    }
+
+    @Test
+    public void test30ExportCampaign() throws IOException {
+        LOGGER.info("  test30ExportCampaign");
+        final String assertion = "Export should return the Campaign followed by its Datastreams, each followed by its Observations.";
+        final String datastreamId = getJson("/Observations(1)/Datastream", LJS, assertion).get(AT_IOT_ID).asText();
+        final String campaignId = create("/Campaigns", String.format(CAMPAIGN, LICENSE, LJS, datastreamId), LJS, assertion);
+
+        final List<JsonNode> records = export("/Export?campaign=" + campaignId, LJS, assertion);
+        Assertions.assertEquals(6, records.size(), assertion);
+        assertRecord(records.get(0), "Campaign", campaignId, assertion);
+        assertRecord(records.get(1), "Datastream", datastreamId, assertion);
+        for (int id = 1; id <= 4; id++) {
+            assertRecord(records.get(id + 1), "Observation", Integer.toString(id), assertion);
+            Assertions.assertEquals(datastreamId, records.get(id + 1).get("Datastream").asText(), assertion);
+        }
+    }
+
+    @Test
+    public void test30ExportReadOwnership() throws IOException {
+        LOGGER.info("  test30ExportReadOwnership");
+        final String assertion = "Export of an ObservationGroup without License should only be possible for its Party.";
+        final String groupId = create("/ObservationGroups", String.format(GROUP, "", LJS, "{\"@iot.id\": 11}"), LJS, assertion);
+
+        try (CloseableHttpResponse response = get("/Export?group=" + groupId, ALICE)) {
+            Assertions.assertEquals(HTTP_CODE_404, response.getStatusLine().getStatusCode(), assertion);
+        }
+        final List<JsonNode> records = export("/Export?group=" + groupId, LJS, assertion);
+        Assertions.assertEquals(2, records.size(), assertion);
+        assertRecord(records.get(1), "Observation", "11", assertion);
+        Assertions.assertTrue(records.get(1).get("License").isNull(), assertion);
+    }
+
+    @Test
+    public void test30ExportInvalid() throws IOException {
+        LOGGER.info("  test30ExportInvalid");
+        final String assertion = "Export should require exactly one existing Campaign or ObservationGroup.";
+        try (CloseableHttpResponse response = get("/Export", LJS)) {
+            Assertions.assertEquals(HTTP_CODE_400, response.getStatusLine().getStatusCode(), assertion);
+        }
+        try (CloseableHttpResponse response = get("/Export?campaign=1&group=1", LJS)) {
+            Assertions.assertEquals(HTTP_CODE_400, response.getStatusLine().getStatusCode(), assertion);
+        }
+        try (CloseableHttpResponse response = get("/Export?group=999999", LJS)) {
+            Assertions.assertEquals(HTTP_CODE_404, response.getStatusLine().getStatusCode(), assertion);
+        }
+    }
+
+    private String create(String path, String entity, String userId, String assertion) throws IOException {
+        try (CloseableHttpResponse response = post(serverSettings.getServiceUrl(version) + path, entity, userId)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_201) {
+                fail(response, assertion);
+            }
+            final String location = response.getFirstHeader("Location").getValue();
+            return location.substring(location.lastIndexOf('(') + 1, location.lastIndexOf(')'));
+        }
+    }
+
+    private List<JsonNode> export(String path, String userId, String assertion) throws IOException {
+        try (CloseableHttpResponse response = get(path, userId)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_200) {
+                fail(response, assertion);
+            }
+            Assertions.assertTrue(response.getFirstHeader("Content-Type").getValue().startsWith("application/x-ndjson"), assertion);
+            final List<JsonNode> records = new ArrayList<>();
+            for (String line : org.apache.http.util.EntityUtils.toString(response.getEntity()).split("\n")) {
+                if (!line.isEmpty()) {
+                    records.add(MAPPER.readTree(line));
+                }
+            }
+            return records;
+        }
+    }
+
+    private static void assertRecord(JsonNode record, String type, String id, String assertion) {
+        Assertions.assertEquals(type, record.get("type").asText(), assertion);
+        Assertions.assertEquals(id, record.get(AT_IOT_ID).asText(), assertion);
+    }
+
+    /*
+     * Relation Closure Tests
+     */
+    @Test
+    public void test40RelationClosure() throws IOException {
+        LOGGER.info("  test40RelationClosure");
+        final String assertion = "TransitiveObjects and TransitiveSubjects should return the Observations connected by a chain of Relations.";
+        Assertions.assertEquals(Set.of(2, 3, 4), ids(getJson("/Observations(1)/TransitiveObjects", ADMIN, assertion)), assertion);
+        Assertions.assertEquals(Set.of(1, 2, 3, 4), ids(getJson("/Observations(11)/TransitiveObjects", ADMIN, assertion)), assertion);
+        Assertions.assertEquals(Set.of(1, 2, 3, 11), ids(getJson("/Observations(4)/TransitiveSubjects", ADMIN, assertion)), assertion);
+        Assertions.assertEquals(Set.of(3), ids(getJson("/Observations(1)/TransitiveObjects?$filter=id%20eq%203", ADMIN, assertion)), assertion);
+    }
+
+    @Test
+    public void test41RelationClosureDeleteRelation() throws IOException {
+        LOGGER.info("  test41RelationClosureDeleteRelation");
+        final String assertion = "Deleting a Relation should keep the pairs that are still connected by another chain.";
+        final JsonNode relations = getJson("/Relations?$filter=Subject/id%20eq%201%20and%20Object/id%20eq%203", ADMIN, assertion).get("value");
+        Assertions.assertEquals(1, relations.size(), assertion);
+        delete("/Relations(" + relations.get(0).get(AT_IOT_ID).asText() + ")", LJS, assertion);
+
+        Assertions.assertEquals(Set.of(2, 3, 4), ids(getJson("/Observations(1)/TransitiveObjects", ADMIN, assertion)), assertion);
+    }
+
+    @Test
+    public void test42RelationClosureDeleteObservation() throws IOException {
+        LOGGER.info("  test42RelationClosureDeleteObservation");
+        final String assertion = "Deleting an Observation should remove the pairs that were only connected through it.";
+        final String datastreamId = getJson("/Observations(1)/Datastream", LJS, assertion).get(AT_IOT_ID).asText();
+        for (int id = 21; id <= 23; id++) {
+            createObservation(serverSettings.getServiceUrl(version) + "/Datastreams(" + datastreamId + ")", id);
+        }
+        createRelation(21, 22);
+        createRelation(22, 23);
+        Assertions.assertEquals(Set.of(22, 23), ids(getJson("/Observations(21)/TransitiveObjects", ADMIN, assertion)), assertion);
+
+        delete("/Observations(22)", LJS, assertion);
+
+        Assertions.assertEquals(Set.of(), ids(getJson("/Observations(21)/TransitiveObjects", ADMIN, assertion)), assertion);
+        Assertions.assertEquals(Set.of(), ids(getJson("/Observations(23)/TransitiveSubjects", ADMIN, assertion)), assertion);
+    }
+
+    private void delete(String path, String userId, String assertion) throws IOException {
+        HttpDelete httpDelete = new HttpDelete(serverSettings.getServiceUrl(version) + path);
+        setAuth(httpDelete, userId, "");
+        try (CloseableHttpResponse response = serviceSTAplus.execute(httpDelete)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_200) {
+                fail(response, assertion);
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of the entities of a collection response.
+     */
+    private static Set<Integer> ids(JsonNode collection) {
+        final Set<Integer> ids = new TreeSet<>();
+        for (JsonNode entity : collection.get("value")) {
+            ids.add(entity.get(AT_IOT_ID).asInt());
+        }
+        return ids;
+    }
+
+    private void fail(CloseableHttpResponse response, String assertion) throws ParseException, IOException {
+        HttpEntity entity = response.getEntity();
+        String msg = "";
+        if (entity != null) {
+            msg = org.apache.http.util.EntityUtils.toString(entity);
+        }
+
+        Assertions.fail(assertion, new Throwable(msg));
+    }
+
+    public static class Imp10Tests extends PluginServiceTests {
+
+        public Imp10Tests() {
+            super(ServerVersion.v_1_0);
+        }
+    }
+
+    public static class Imp11Tests extends PluginServiceTests {
+
+        public Imp11Tests() {
+            super(ServerVersion.v_1_1);
+        }
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2021-2024 Secure Dimensions GmbH, D-81377
+ * Munich, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.securedimensions.frostserver.plugin.staplus.test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fraunhofer.iosb.ilt.frostclient.SensorThingsService;
+import de.fraunhofer.iosb.ilt.frostclient.exception.ServiceFailureException;
+import de.fraunhofer.iosb.ilt.frostclient.models.SensorThingsPlus;
+import de.fraunhofer.iosb.ilt.frostclient.models.SensorThingsV11Sensing;
+import de.fraunhofer.iosb.ilt.statests.ServerVersion;
+import de.securedimensions.frostserver.plugin.staplus.PluginPLUS;
+import de.securedimensions.frostserver.plugin.staplus.test.auth.PrincipalAuthProvider;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.http.HttpEntity;
+import org.apache.http.ParseException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests for the read filter of ObservationGroups, Campaigns and Relations.
+ * ALICE owns one public (licensed) and one private entity of each type: LJS
+ * and anonymous users only see the public one, ALICE and the admin see both.
+ * The Relation {@code 1 -> 2} has its Subject in a licensed Datastream, the
+ * Relation {@code 11 -> 1} in a Datastream without License.
+ */
+@TestMethodOrder(MethodOrderer.MethodName.class)
+public abstract class ReadOwnershipTests extends AbstractStaPlusTestClass {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadOwnershipTests.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int HTTP_CODE_200 = 200;
+    private static final int HTTP_CODE_201 = 201;
+    private static final String QUERY = "?$count=true&$top=1";
+    private static final String LICENSE = "\"License\": {\"@iot.id\": \"CC_BY\"}, ";
+    private static final String PARTY = "\"Party\": {\"displayName\": \"Alice in Wonderland\", \"role\": \"individual\", \"authId\": \"%s\"}";
+    private static final String DATASTREAM = "{\n"
+            + "    \"unitOfMeasurement\": {\"name\": \"n/a\", \"symbol\": \"\", \"definition\": \"https://www.merriam-webster.com/dictionary/picture\"},\n"
+            + "    \"name\": \"photo datastream\",\n"
+            + "    \"description\": \"this datastream is about pictures\",\n"
+            + "    \"observationType\": \"http://www.opengis.net/def/observationType/OGC-OM/2.0/OM_Measurement\",\n"
+            + "    \"ObservedProperty\": {\"name\": \"Picture\", \"definition\": \"https://www.merriam-webster.com/dictionary/picture\", \"description\": \"The image taken by the camera (the sensor)\"},\n"
+            + "    \"Sensor\": {\"name\": \"Pi NoIR\", \"description\": \"Raspberry Pi Infrared Camera Module\", \"encodingType\": \"application/pdf\", \"metadata\": \"https://cdn-reichelt.de/documents/datenblatt/A300/RASP_CAN_2.pdf\"},\n"
+            + "    %s"
+            + "    " + PARTY + ",\n"
+            + "    \"Thing\": {\"name\": \"Raspberry Pi 4 B\", \"description\": \"Raspberry Pi 4 Model B\", " + PARTY + "}\n"
+            + "}";
+    private static final String GROUP = "{\"name\": \"Read filter\", \"description\": \"read filter test\", \"creationTime\": \"2021-12-12T12:12:12Z\", %s" + PARTY + "}";
+    private static final String CAMPAIGN = "{\"name\": \"Read filter\", \"description\": \"read filter test\", \"creationTime\": \"2021-12-12T12:12:12Z\", \"termsOfUse\": \"none\", %s" + PARTY + "}";
+    private static final String RELATION = "{\"role\": \"derivedFrom\", \"Subject\": {\"@iot.id\": %d}, \"Object\": {\"@iot.id\": %d}}";
+    private static final Map<String, String> SERVER_PROPERTIES = new LinkedHashMap<>();
+
+    static {
+        SERVER_PROPERTIES.put("plugins.plugins", PluginPLUS.class.getName());
+        SERVER_PROPERTIES.put("plugins.staplus.enable", "true");
+        SERVER_PROPERTIES.put("plugins.staplus.enable.enforceOwnership", "true");
+        SERVER_PROPERTIES.put("plugins.staplus.enable.enforceLicensing", "false");
+        SERVER_PROPERTIES.put("plugins.staplus.enable.enforceReadOwnership", "true");
+        SERVER_PROPERTIES.put("plugins.staplus.idType.license", "String");
+        SERVER_PROPERTIES.put("auth.provider", PrincipalAuthProvider.class.getName());
+        SERVER_PROPERTIES.put("auth.allowAnonymousRead", "true");
+        SERVER_PROPERTIES.put("persistence.idGenerationMode", "ServerAndClientGenerated");
+        SERVER_PROPERTIES.put("plugins.coreModel.idType", "LONG");
+        SERVER_PROPERTIES.put("plugins.multiDatastream.enable", "true");
+    }
+
+    public ReadOwnershipTests(ServerVersion version) {
+        super(version, SERVER_PROPERTIES);
+    }
+
+    @AfterAll
+    public static void tearDown() throws ServiceFailureException {
+        LOGGER.info("Tearing down.");
+        cleanup();
+    }
+
+    @Override
+    protected void setUpVersion() {
+        LOGGER.info("Setting up for version {}.", version.urlPart);
+        try {
+            sMdl = new SensorThingsV11Sensing();
+            pMdl = new SensorThingsPlus();
+            serviceSTAplus = new SensorThingsService(sMdl, pMdl).setBaseUrl(new URL(serverSettings.getServiceUrl(version))).init();
+
+            create("/ObservationGroups", String.format(GROUP, LICENSE, ALICE));
+            create("/ObservationGroups", String.format(GROUP, "", ALICE));
+            create("/Campaigns", String.format(CAMPAIGN, LICENSE, ALICE));
+            create("/Campaigns", String.format(CAMPAIGN, "", ALICE));
+
+            final String publicDatastream = create("/Datastreams", String.format(DATASTREAM, LICENSE, ALICE, ALICE));
+            create(publicDatastream + "/Observations", String.format(DatastreamTests.OBSERVATION_ID, 1));
+            create(publicDatastream + "/Observations", String.format(DatastreamTests.OBSERVATION_ID, 2));
+            final String privateDatastream = create("/Datastreams", String.format(DATASTREAM, "", ALICE, ALICE));
+            create(privateDatastream + "/Observations", String.format(DatastreamTests.OBSERVATION_ID, 11));
+
+            create("/Relations", String.format(RELATION, 1, 2));
+            create("/Relations", String.format(RELATION, 11, 1));
+        } catch (MalformedURLException ex) {
+            LOGGER.error("Failed to create URL", ex);
+        } catch (IOException e) {
+            LOGGER.error("Failed to create Entity", e);
+        }
+    }
+
+    @Override
+    protected void tearDownVersion() {
+        try {
+            cleanup();
+        } catch (ServiceFailureException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void test01ObservationGroups() throws IOException {
+        assertVisible("/ObservationGroups");
+    }
+
+    @Test
+    public void test02Campaigns() throws IOException {
+        assertVisible("/Campaigns");
+    }
+
+    @Test
+    public void test03Relations() throws IOException {
+        assertVisible("/Relations");
+    }
+
+    /**
+     * Asserts that the owner and the admin count both entities of the
+     * collection, LJS and anonymous users only the public one, and that
+     * {@code $top} pages over the visible entities only.
+     */
+    private void assertVisible(String path) throws IOException {
+        assertCount(path, ALICE, 2, "The owner must see the public and the private " + path + ".");
+        assertCount(path, LJS, 1, "Another user must only see the public " + path + ".");
+        assertCount(path, null, 1, "An anonymous user must only see the public " + path + ".");
+        assertCount(path, ADMIN, 2, "The admin must see the public and the private " + path + ".");
+    }
+
+    private void assertCount(String path, String userId, int expected, String assertion) throws IOException {
+        HttpGet httpGet = new HttpGet(serverSettings.getServiceUrl(version) + path + QUERY);
+        if (userId != null) {
+            setAuth(httpGet, userId, "");
+        }
+
+        try (CloseableHttpResponse response = serviceSTAplus.execute(httpGet)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_200) {
+                fail(response, assertion);
+            }
+            final JsonNode collection = MAPPER.readTree(org.apache.http.util.EntityUtils.toString(response.getEntity()));
+            Assertions.assertEquals(expected, collection.get("@iot.count").asInt(), assertion);
+            Assertions.assertEquals(Math.min(expected, 1), collection.get("value").size(), assertion);
+            if (expected > 1) {
+                Assertions.assertTrue(collection.has("@iot.nextLink"), assertion);
+            } else {
+                Assertions.assertFalse(collection.has("@iot.nextLink"), assertion);
+            }
+        }
+    }
+
+    private String create(String path, String entity) throws IOException {
+        final String url = path.startsWith("http") ? path : serverSettings.getServiceUrl(version) + path;
+        HttpPost httpPost = new HttpPost(url);
+        HttpEntity stringEntity = new StringEntity(entity, ContentType.APPLICATION_JSON);
+        httpPost.setEntity(stringEntity);
+        setAuth(httpPost, ALICE, "");
+
+        try (CloseableHttpResponse response = serviceSTAplus.execute(httpPost)) {
+            if (response.getStatusLine().getStatusCode() != HTTP_CODE_201) {
+                LOGGER.error("Failed to create {}", path);
+                return null;
+            }
+            return response.getFirstHeader("Location").getValue();
+        }
+    }
+
+    private void fail(CloseableHttpResponse response, String assertion) throws ParseException, IOException {
+        HttpEntity entity = response.getEntity();
+        String msg = "";
+        if (entity != null) {
+            msg = org.apache.http.util.EntityUtils.toString(entity);
+        }
+
+        Assertions.fail(assertion, new Throwable(msg));
+    }
+
+    public static class Imp10Tests extends ReadOwnershipTests {
+
+        public Imp10Tests() {
+            super(ServerVersion.v_1_0);
+        }
+    }
+
+    public static class Imp11Tests extends ReadOwnershipTests {
+
+        public Imp11Tests() {
+            super(ServerVersion.v_1_1);
+        }
+    }
+
+}
@@ -39,6 +39,7 @@ import de.fraunhofer.iosb.ilt.statests.ServerVersion;
 import de.fraunhofer.iosb.ilt.statests.util.HTTPMethods;
 import de.fraunhofer.iosb.ilt.statests.util.HTTPMethods.HttpResponse;
 import de.fraunhofer.iosb.ilt.statests.util.Utils;
+import de.securedimensions.frostserver.plugin.staplus.PluginPlusContextListener;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.nio.file.Files;
@@ -92,7 +93,11 @@ import org.testcontainers.junit.jupiter.Testcontainers;
     RelationTests.Imp10Tests.class,
     RelationTests.Imp11Tests.class,
     StorageCRSTests.Imp10Tests.class,
-    StorageCRSTests.Imp11Tests.class
+    StorageCRSTests.Imp11Tests.class,
+    ReadOwnershipTests.Imp10Tests.class,
+    ReadOwnershipTests.Imp11Tests.class,
+    PluginServiceTests.Imp10Tests.class,
+    PluginServiceTests.Imp11Tests.class
 })
 @Suite
 @Testcontainers
@@ -294,6 +299,7 @@ public class TestSuite {
         handler.getInitParams().putAll(paramsMap);
 
         handler.addEventListener(new HttpContextListener());
+        handler.addEventListener(new PluginPlusContextListener());
         handler.addServlet(DatabaseStatus.class, "/DatabaseStatus");
         handler.addServlet(ServletMain.class, "/*");
         contextHandlerCollection.addHandler(handler);